@@ -8,6 +8,7 @@ import java.util.regex.Pattern;
 
 import org.springframework.stereotype.Component;
 
+import com.medallia.references.speechapi.concurrency.WorkerExecutors;
 import com.medallia.references.speechapi.publish.PublishCommand;
 import com.medallia.references.speechapi.transfer.TransferCommand;
 
@@ -45,6 +46,10 @@ public class TopMostCommand {
     public static final String DEFAULT_NUM_WORKERS = "4";
     public static final String DEFAULT_EXECUTION_TIMEOUT = "1h";
     public static final Integer MAX_WORKERS = 50;
+    public static final Integer MAX_VIRTUAL_WORKERS = 5000;
+    public static final String DEFAULT_METRICS_ADDRESS = "127.0.0.1";
+    public static final String DEFAULT_METRICS_PORT = "0";
+    public static final Integer MAX_PORT = 65535;
     public static final Pattern EXECUTION_TIMEOUT_PATTERN = Pattern.compile("[ ]*([0-9]+)[ ]*([smhd])[ ]*");
 
     @Spec
@@ -53,6 +58,88 @@ public class TopMostCommand {
     private Integer numWorkers;
     private Duration executionTimeout;
 
+    @Option(
+        names = {"--adaptive"},
+        defaultValue = "false",
+        required = false,
+        description = ""
+            + "Adapts the number of requests in flight to how the remote "
+            + "service responds, starting low and growing up to the value "
+            + "of --parallel (or --max-in-flight with --async), and backing "
+            + "off when the service throttles or slows down. "
+            + "(default=${DEFAULT-VALUE})"
+    )
+    private boolean adaptive;
+
+    @Option(
+        names = {"--virtual-threads"},
+        defaultValue = "false",
+        required = false,
+        description = ""
+            + "Runs each worker task on a virtual thread of its own, which "
+            + "allows a --parallel of up to 5000 for work that mostly waits "
+            + "on the network. Requires Java 21 or later; platform "
+            + "threads are used otherwise. (default=${DEFAULT-VALUE})"
+    )
+    private boolean virtualThreads;
+
+    @Option(
+        names = {"--metrics-jmx"},
+        negatable = true,
+        defaultValue = "true",
+        required = false,
+        description = ""
+            + "Registers the metrics of the run as MBeans under the "
+            + "\"speechapi\" JMX domain. (default=${DEFAULT-VALUE})"
+    )
+    private boolean metricsJmx;
+
+    @Option(
+        names = {"--metrics-address"},
+        defaultValue = DEFAULT_METRICS_ADDRESS,
+        required = false,
+        description = ""
+            + "The address the Prometheus endpoint listens on. "
+            + "(default=${DEFAULT-VALUE})"
+    )
+    private String metricsAddress;
+
+    @Option(
+        names = {"--metrics-file"},
+        required = false,
+        description = ""
+            + "Writes the metrics of the run to this file in the "
+            + "Prometheus text format, every 15 seconds and once more "
+            + "at the end."
+    )
+    private String metricsFilename;
+
+    private Integer metricsPort;
+
+    /**
+     * Sets the port of the Prometheus endpoint.
+     * @param metricsPort the port to serve the metrics on, or 0 for none
+     */
+    @Option(
+        names = {"--metrics-port"},
+        defaultValue = DEFAULT_METRICS_PORT,
+        required = false,
+        description = ""
+            + "Serves the metrics of the run for Prometheus to scrape at "
+            + "/metrics on this port, or not at all if 0. "
+            + "(default=${DEFAULT-VALUE})"
+    )
+    public void setMetricsPort(final Integer metricsPort) {
+        if (metricsPort < 0 || metricsPort > MAX_PORT) {
+            throw new ParameterException(
+                spec.commandLine(),
+                String.format("Invalid value for --metrics-port: must be between 0 and %s (inclusive)", MAX_PORT)
+            );
+        }
+
+        this.metricsPort = metricsPort;
+    }
+
     /**
      * Sets the number of workers (threads) to be used.
      * @param numWorkers the number of workers to use
@@ -61,16 +148,17 @@ public class TopMostCommand {
         names = {"-p", "--parallel"},
         defaultValue = DEFAULT_NUM_WORKERS,
         required = false,
-        description = "The number of concurrent workers to use. (default=${DEFAULT-VALUE})"
+        description = ""
+            + "The number of concurrent workers to use, up to 50, or more "
+            + "with --virtual-threads. (default=${DEFAULT-VALUE})"
     )
     public void setNumWorkers(final Integer numWorkers) {
-        if (numWorkers <= 0 || numWorkers > MAX_WORKERS) {
+        if (numWorkers <= 0 || numWorkers > MAX_VIRTUAL_WORKERS) {
             throw new ParameterException(
                 spec.commandLine(),
                 String.format(
                     "Invalid concurrency value: must be between 1 and %s (inclusive)",
-                    numWorkers,
-                    DEFAULT_NUM_WORKERS
+                    MAX_VIRTUAL_WORKERS
                 )
             );
         }
@@ -78,6 +166,46 @@ public class TopMostCommand {
         this.numWorkers = numWorkers;
     }
 
+    /**
+     * Checks the options that depend on each other, which cannot be
+     * checked while they are set because they may be given in any order.
+     * Subcommands call this before they start.  Without virtual threads,
+     * every worker is a platform thread, so --virtual-threads is dropped
+     * on a JVM that has none, and the usual limit on workers applies.
+     */
+    public void validate() {
+        if (virtualThreads && !WorkerExecutors.hasVirtualThreads()) {
+            LOGGER.warning(String.format(
+                "Virtual threads are not available in Java %d, using platform threads instead",
+                Runtime.version().feature()
+            ));
+
+            virtualThreads = false;
+
+            if (numWorkers > MAX_WORKERS) {
+                throw new ParameterException(
+                    spec.commandLine(),
+                    String.format(
+                        "Invalid concurrency value: must be between 1 and %s (inclusive), "
+                            + "as virtual threads are not available in Java %d",
+                        MAX_WORKERS,
+                        Runtime.version().feature()
+                    )
+                );
+            }
+        }
+
+        if (!virtualThreads && numWorkers > MAX_WORKERS) {
+            throw new ParameterException(
+                spec.commandLine(),
+                String.format(
+                    "Invalid concurrency value: must be between 1 and %s (inclusive) without --virtual-threads",
+                    MAX_WORKERS
+                )
+            );
+        }
+    }
+
     /**
      * Sets the maximum time that the process is allowed to run.  The value
      * is encoded in a {@code _d_h_m_s} format, such as {@code 5h30m} to
@@ -102,12 +230,12 @@ public class TopMostCommand {
     }
 
     /**
-     * Parses the time specifier from {@link #setExecutionTimeout} into a
-     * {@link Duration} instance.
+     * Parses a time specifier such as the one from
+     * {@link #setExecutionTimeout} into a {@link Duration} instance.
      * @param timeSpecifier the time specifier
      * @return the Duration
      */
-    private Duration parseTimeSpecifier(final String timeSpecifier) {
+    public static Duration parseTimeSpecifier(final String timeSpecifier) {
         if (timeSpecifier == null) {
             throw new DateTimeException("No time specifier provided");
         }
@@ -136,9 +264,8 @@ public class TopMostCommand {
                     duration = duration.plusDays(num);
                     break;
                 default:
-                    throw new ParameterException(
-                        spec.commandLine(),
-                        String.format("Invalid value for --timeout: %s", timeSpecifier)
+                    throw new DateTimeException(
+                        String.format("Invalid time specifier: %s", timeSpecifier)
                     );
             }
         }
@@ -0,0 +1,120 @@
+package com.medallia.references.speechapi.concurrency;
+
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A limiter that looks for the number of operations in flight that gets
+ * the most out of the remote service, in the spirit of TCP congestion
+ * control.
+ *
+ * <p>While the operations in flight keep up with the limit, it grows by
+ * one for every limit's worth of successful operations.  It is halved as
+ * soon as the service throttles an operation, or any attempt of one that
+ * is then retried, and shrinks by a tenth when the recent latency per unit
+ * of work drifts well above the long-term latency, which is a sign that
+ * requests are queueing up somewhere.  After every decrease the limit is
+ * left alone for a while, so that operations started under the old limit
+ * do not shrink it again.
+ */
+@Slf4j
+public class AdaptiveConcurrencyLimiter extends ConcurrencyLimiter {
+
+    public static final int INITIAL_LIMIT = 4;
+
+    private static final double THROTTLED_DECREASE = 0.5;
+    private static final double LATENCY_DECREASE = 0.9;
+
+    /** How far the recent latency may drift above the long-term latency. */
+    private static final double LATENCY_TOLERANCE = 2.0;
+
+    private static final double SHORT_SMOOTHING = 0.2;
+    private static final double LONG_SMOOTHING = 0.02;
+
+    /** The number of samples needed before latency is trusted. */
+    private static final int WARMUP_SAMPLES = 10;
+
+    private static final long COOLDOWN_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private final int maxLimit;
+
+    private double limit;
+
+    private double shortLatency = 0;
+    private double longLatency = 0;
+    private long samples = 0;
+
+    private long lastDecrease;
+
+    /**
+     * Creates a limiter.
+     * @param maxLimit the highest the limit may go
+     */
+    public AdaptiveConcurrencyLimiter(final int maxLimit) {
+        this.maxLimit = maxLimit;
+        this.limit = Math.min(INITIAL_LIMIT, maxLimit);
+        this.lastDecrease = System.nanoTime() - COOLDOWN_NANOS;
+    }
+
+    @Override
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    @Override
+    protected synchronized void onRelease(final Outcome outcome, final long unitLatencyNanos, final int inFlight) {
+        switch (outcome) {
+            case THROTTLED:
+                decrease(THROTTLED_DECREASE, "throttled");
+                break;
+
+            case SUCCESS:
+                sample(unitLatencyNanos);
+
+                if (samples > WARMUP_SAMPLES && shortLatency > longLatency * LATENCY_TOLERANCE) {
+                    decrease(LATENCY_DECREASE, "latency rising");
+                } else if (inFlight >= (int) limit) {
+                    // Adds up to one for every limit's worth of operations
+                    limit = Math.min(limit + 1 / limit, maxLimit);
+                }
+                break;
+
+            default:
+                // Other failures and skipped operations say nothing about load
+                break;
+        }
+    }
+
+    @Override
+    protected synchronized void onThrottled() {
+        decrease(THROTTLED_DECREASE, "throttled");
+    }
+
+    private void sample(final long unitLatencyNanos) {
+        if (samples++ == 0) {
+            shortLatency = unitLatencyNanos;
+            longLatency = unitLatencyNanos;
+        } else {
+            shortLatency += SHORT_SMOOTHING * (unitLatencyNanos - shortLatency);
+            longLatency += LONG_SMOOTHING * (unitLatencyNanos - longLatency);
+        }
+    }
+
+    private void decrease(final double factor, final String reason) {
+        final long now = System.nanoTime();
+
+        if (now - lastDecrease < COOLDOWN_NANOS) {
+            return;
+        }
+
+        lastDecrease = now;
+        limit = Math.max(limit * factor, 1);
+
+        // Starts over from the latency seen under the new limit
+        longLatency = shortLatency;
+
+        LOGGER.debug("Concurrency limit lowered to {} ({})", (int) limit, reason);
+    }
+
+}
@@ -0,0 +1,162 @@
+package com.medallia.references.speechapi.concurrency;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits how many operations are in flight at once.  Every operation
+ * admitted with {@link #acquire(long)} must be reported back with
+ * {@link #release(Outcome, long, long)}, which lets subclasses adjust the
+ * limit based on how the operations went.
+ */
+public abstract class ConcurrencyLimiter {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+
+    private int inFlight = 0;
+
+    /**
+     * Creates the limiter for the requested mode.
+     * @param adaptive whether the limit adapts to how operations go
+     * @param maxLimit the fixed limit, or the highest the limit may go
+     * @return the limiter
+     */
+    public static ConcurrencyLimiter create(final boolean adaptive, final int maxLimit) {
+        return adaptive
+            ? new AdaptiveConcurrencyLimiter(maxLimit)
+            : new FixedConcurrencyLimiter(maxLimit);
+    }
+
+    /**
+     * Waits until another operation may start.
+     * @param deadline the {@link System#nanoTime()} after which to give up
+     * @return true if the operation may start, false if the deadline passed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean acquire(final long deadline) throws InterruptedException {
+        lock.lock();
+        try {
+            while (inFlight >= getLimit()) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+
+                released.awaitNanos(remaining);
+            }
+
+            inFlight++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Lets another operation start only if it can do so right away.
+     * @return true if the operation may start
+     */
+    public boolean tryAcquire() {
+        lock.lock();
+        try {
+            if (inFlight >= getLimit()) {
+                return false;
+            }
+
+            inFlight++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reports that an operation has ended.
+     * @param outcome how the operation ended
+     * @param latencyNanos how long the operation took
+     * @param units how much work the operation was, such as the number of
+     *              requests it took, so that latencies can be compared
+     */
+    public void release(final Outcome outcome, final long latencyNanos, final long units) {
+        lock.lock();
+        try {
+            onRelease(outcome, latencyNanos / Math.max(units, 1), inFlight);
+
+            inFlight--;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reports that the remote service throttled one attempt of an operation
+     * still in flight, such as a request that is about to be retried, so
+     * the limit can react before the operation itself ends.
+     */
+    public void throttled() {
+        lock.lock();
+        try {
+            onThrottled();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until every operation has ended.
+     * @param deadline the {@link System#nanoTime()} after which to give up
+     * @return true if every operation ended, false if the deadline passed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitIdle(final long deadline) throws InterruptedException {
+        lock.lock();
+        try {
+            while (inFlight > 0) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+
+                released.await(remaining, TimeUnit.NANOSECONDS);
+            }
+
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of operations in flight
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the current limit
+     */
+    public abstract int getLimit();
+
+    /**
+     * Called with the lock held whenever an operation ends.
+     * @param outcome how the operation ended
+     * @param unitLatencyNanos how long the operation took per unit of work
+     * @param inFlight the number of operations in flight, including this one
+     */
+    protected abstract void onRelease(Outcome outcome, long unitLatencyNanos, int inFlight);
+
+    /**
+     * Called with the lock held whenever an attempt is throttled.
+     */
+    protected abstract void onThrottled();
+
+}
@@ -0,0 +1,29 @@
+package com.medallia.references.speechapi.concurrency;
+
+/**
+ * A limiter whose limit never changes.
+ */
+public class FixedConcurrencyLimiter extends ConcurrencyLimiter {
+
+    private final int limit;
+
+    public FixedConcurrencyLimiter(final int limit) {
+        this.limit = limit;
+    }
+
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    protected void onRelease(final Outcome outcome, final long unitLatencyNanos, final int inFlight) {
+        // The limit is fixed
+    }
+
+    @Override
+    protected void onThrottled() {
+        // The limit is fixed
+    }
+
+}
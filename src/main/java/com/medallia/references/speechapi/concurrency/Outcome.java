@@ -0,0 +1,56 @@
+package com.medallia.references.speechapi.concurrency;
+
+import com.medallia.references.speechapi.exceptions.ThrottledException;
+
+import software.amazon.awssdk.core.exception.SdkServiceException;
+
+/**
+ * How an operation admitted by a {@link ConcurrencyLimiter} ended.
+ */
+public enum Outcome {
+
+    /** The operation succeeded. */
+    SUCCESS,
+
+    /** The remote service refused the operation for being overloaded. */
+    THROTTLED,
+
+    /** The operation failed for some other reason. */
+    FAILED,
+
+    /** The operation ended without reaching the remote service. */
+    SKIPPED;
+
+    public static final int HTTP_TOO_MANY_REQUESTS = 429;
+    public static final int HTTP_SERVICE_UNAVAILABLE = 503;
+
+    /**
+     * Classifies how an operation ended.
+     * @param error what the operation failed with, or null if it succeeded
+     * @return the outcome
+     */
+    public static Outcome of(final Throwable error) {
+        if (error == null) {
+            return SUCCESS;
+        }
+
+        // The throttling error is usually wrapped by retries or futures
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ThrottledException) {
+                return THROTTLED;
+            }
+
+            if (cause instanceof SdkServiceException) {
+                final SdkServiceException serviceException = (SdkServiceException) cause;
+
+                if (serviceException.isThrottlingException()
+                        || serviceException.statusCode() == HTTP_SERVICE_UNAVAILABLE) {
+                    return THROTTLED;
+                }
+            }
+        }
+
+        return FAILED;
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.medallia.references.speechapi.concurrency;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Creates the executors that run the workers of a command.
+ *
+ * <p>Workers spend nearly all of their time waiting on SFTP, MMFT or the
+ * Medallia Speech API.  On a JVM with virtual threads (Java 21 and later),
+ * each task can run on a virtual thread of its own, which costs little
+ * more than the task itself, so far more tasks can be in flight than
+ * there could be platform threads.  The number in flight is then bounded
+ * only by the {@link ConcurrencyLimiter} the caller acquires before each
+ * task.
+ */
+@Slf4j
+public final class WorkerExecutors {
+
+    private WorkerExecutors() {
+    }
+
+    /**
+     * Creates the executor for the requested mode.
+     * @param virtualThreads whether each task runs on a virtual thread of
+     *                       its own, if the JVM supports them
+     * @param threads the number of platform threads otherwise
+     * @return the executor
+     */
+    public static ExecutorService create(final boolean virtualThreads, final int threads) {
+        if (virtualThreads) {
+            final Optional<ExecutorService> executorService = newVirtualThreadPerTaskExecutor();
+            if (executorService.isPresent()) {
+                return executorService.get();
+            }
+
+            LOGGER.warn("Virtual threads are not available in Java {}, using {} platform thread(s) instead",
+                Runtime.version().feature(),
+                threads
+            );
+        }
+
+        return Executors.newWorkStealingPool(threads);
+    }
+
+    /**
+     * Whether the JVM has virtual threads, which decides how many workers
+     * may be asked for.
+     * @return true if {@link #newVirtualThreadPerTaskExecutor()} succeeds
+     */
+    public static boolean hasVirtualThreads() {
+        return newVirtualThreadPerTaskExecutor()
+            .map(executorService -> {
+                executorService.shutdown();
+                return true;
+            })
+            .orElse(false);
+    }
+
+    /**
+     * Creates an executor that starts a virtual thread per task.  The
+     * application is built for an older Java release, so the factory is
+     * looked up at run time.
+     * @return the executor, or empty if the JVM has no virtual threads
+     */
+    public static Optional<ExecutorService> newVirtualThreadPerTaskExecutor() {
+        try {
+            final Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return Optional.of((ExecutorService) factory.invoke(null));
+        } catch (NoSuchMethodException e) {
+            return Optional.empty();
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            // Virtual threads were a preview feature before Java 21
+            LOGGER.debug("Unable to create a virtual thread executor", e);
+            return Optional.empty();
+        }
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.medallia.references.speechapi.configuration;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+/**
+ * The configuration related to Micrometer.  Everything records into a
+ * single composite registry, which discards what it is given until the
+ * registries that export the metrics are added to it.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public CompositeMeterRegistry meterRegistry() {
+        return new CompositeMeterRegistry();
+    }
+
+}
@@ -3,10 +3,18 @@ package com.medallia.references.speechapi.configuration;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.retry.RetryCallback;
+import org.springframework.retry.RetryContext;
 import org.springframework.retry.backoff.ExponentialRandomBackOffPolicy;
+import org.springframework.retry.listener.RetryListenerSupport;
 import org.springframework.retry.policy.SimpleRetryPolicy;
 import org.springframework.retry.support.RetryTemplate;
 
+import com.medallia.references.speechapi.metrics.MetricNames;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
 /**
  * The configuration related to Spring Retry.
  */
@@ -18,7 +26,8 @@ public class SpringRetryConfig {
             @Value("${retry.maxAttempts}") final int maxAttempts,
             @Value("${retry.backoffMultiplier}") final int backoffMultiplier,
             @Value("${retry.initialDelay}") final long initialDelay,
-            @Value("${retry.maxDelay}") final long maxDelay
+            @Value("${retry.maxDelay}") final long maxDelay,
+            final MeterRegistry meterRegistry
     ) {
         final RetryTemplate retryTemplate = new RetryTemplate();
 
@@ -32,6 +41,26 @@ public class SpringRetryConfig {
         retryPolicy.setMaxAttempts(maxAttempts);
         retryTemplate.setRetryPolicy(retryPolicy);
 
+        // The template is only used for MMFT requests.  Every failed
+        // attempt but the last is retried.
+        final Counter retries = Counter.builder(MetricNames.RETRIES)
+            .description("Requests sent again after failing")
+            .tag(MetricNames.TAG_PIPELINE, MetricNames.PIPELINE_TRANSFER)
+            .register(meterRegistry);
+
+        retryTemplate.registerListener(new RetryListenerSupport() {
+            @Override
+            public <T, E extends Throwable> void onError(
+                    final RetryContext context,
+                    final RetryCallback<T, E> callback,
+                    final Throwable throwable
+            ) {
+                if (context.getRetryCount() < maxAttempts) {
+                    retries.increment();
+                }
+            }
+        });
+
         return retryTemplate;
     }
 
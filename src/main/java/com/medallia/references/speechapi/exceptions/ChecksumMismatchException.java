@@ -0,0 +1,13 @@
+package com.medallia.references.speechapi.exceptions;
+
+/**
+ * This exception is thrown when a remote service reports a checksum for
+ * stored data that differs from the checksum of the data sent.
+ */
+public class ChecksumMismatchException extends IllegalStateException {
+
+    public ChecksumMismatchException(final String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,13 @@
+package com.medallia.references.speechapi.exceptions;
+
+/**
+ * This exception is thrown when a single operation, such as the transfer
+ * of one file, runs past the time it was allowed.
+ */
+public class DeadlineExceededException extends IllegalStateException {
+
+    public DeadlineExceededException(final String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,13 @@
+package com.medallia.references.speechapi.exceptions;
+
+/**
+ * This exception is thrown when a remote service refuses a request
+ * because too many requests are being sent to it.
+ */
+public class ThrottledException extends IllegalStateException {
+
+    public ThrottledException(final String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.medallia.references.speechapi.metrics;
+
+/**
+ * The names and tags of the metrics recorded by the transfer and publish
+ * pipelines.  Names are dotted, as Micrometer expects; each registry
+ * renders them in its own convention, such as
+ * {@code speechapi_transfer_upload_seconds} for Prometheus.
+ */
+public final class MetricNames {
+
+    public static final String TRANSFER_LISTING = "speechapi.transfer.listing";
+    public static final String TRANSFER_DOWNLOAD = "speechapi.transfer.download";
+    public static final String TRANSFER_UPLOAD = "speechapi.transfer.upload";
+    public static final String TRANSFER_BYTES_IN = "speechapi.transfer.in";
+    public static final String TRANSFER_BYTES_OUT = "speechapi.transfer.out";
+    public static final String TRANSFER_QUEUED = "speechapi.transfer.queued";
+    public static final String TRANSFER_IN_FLIGHT = "speechapi.transfer.in.flight";
+    public static final String TRANSFER_BYTES_IN_FLIGHT = "speechapi.transfer.in.flight.size";
+
+    public static final String PUBLISH_BATCH = "speechapi.publish.batch";
+    public static final String PUBLISH_RECORDS = "speechapi.publish.records";
+    public static final String PUBLISH_IN_FLIGHT = "speechapi.publish.in.flight";
+
+    public static final String OAUTH_TOKEN = "speechapi.oauth.token";
+
+    public static final String RETRIES = "speechapi.retries";
+
+    public static final String TAG_OUTCOME = "outcome";
+    public static final String TAG_STATUS = "status";
+    public static final String TAG_TYPE = "type";
+    public static final String TAG_PIPELINE = "pipeline";
+
+    public static final String BYTES = "bytes";
+
+    public static final String OUTCOME_SUCCESS = "success";
+    public static final String OUTCOME_FAILURE = "failure";
+    public static final String OUTCOME_TRANSFERRED = "transferred";
+    public static final String OUTCOME_SKIPPED = "skipped";
+
+    public static final String STATUS_ACCEPTED = "accepted";
+    public static final String STATUS_REJECTED = "rejected";
+
+    public static final String TYPE_FILE = "file";
+    public static final String TYPE_SEGMENT = "segment";
+
+    public static final String PIPELINE_TRANSFER = "transfer";
+    public static final String PIPELINE_PUBLISH = "publish";
+
+    private MetricNames() {
+        // Constants only
+    }
+
+}
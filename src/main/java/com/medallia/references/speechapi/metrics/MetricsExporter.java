@@ -0,0 +1,215 @@
+package com.medallia.references.speechapi.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.jmx.JmxConfig;
+import io.micrometer.jmx.JmxMeterRegistry;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.prometheus.client.exporter.common.TextFormat;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Exports the metrics recorded by the pipelines.  Nothing is exported
+ * until {@link #start} adds the registries asked for to the composite
+ * registry that everything records into: JMX, where the metrics show up
+ * as MBeans under the {@value #JMX_DOMAIN} domain, and Prometheus, whose
+ * text format is either served for scraping or written to a file now and
+ * then, such as for the node exporter's textfile collector.
+ */
+@Component
+@Slf4j
+public class MetricsExporter {
+
+    public static final String JMX_DOMAIN = "speechapi";
+    public static final String SCRAPE_PATH = "/metrics";
+    public static final long FILE_INTERVAL_SECS = 15;
+
+    @Autowired
+    private CompositeMeterRegistry meterRegistry;
+
+    private JmxMeterRegistry jmxMeterRegistry;
+
+    private volatile PrometheusMeterRegistry prometheusMeterRegistry;
+
+    private HttpServer server;
+
+    private ScheduledExecutorService fileWriterService;
+
+    private Path file;
+
+    /**
+     * Starts exporting the metrics.
+     * @param jmx whether to register the metrics as MBeans
+     * @param address the address to serve the Prometheus endpoint on
+     * @param port the port to serve the Prometheus endpoint on, or 0 to
+     *             not serve it
+     * @param filename the file to write the Prometheus text format to, or
+     *                 null to not write it
+     */
+    public synchronized void start(final boolean jmx, final String address, final int port, final String filename) {
+        if (jmx && jmxMeterRegistry == null) {
+            jmxMeterRegistry = new JmxMeterRegistry(new JmxConfig() {
+                @Override
+                public String get(final String key) {
+                    return null;
+                }
+
+                @Override
+                public String domain() {
+                    return JMX_DOMAIN;
+                }
+            }, Clock.SYSTEM);
+
+            meterRegistry.add(jmxMeterRegistry);
+        }
+
+        if ((port > 0 || StringUtils.isNotBlank(filename)) && prometheusMeterRegistry == null) {
+            prometheusMeterRegistry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+            meterRegistry.add(prometheusMeterRegistry);
+        }
+
+        if (port > 0 && server == null) {
+            serve(address, port);
+        }
+
+        if (StringUtils.isNotBlank(filename) && fileWriterService == null) {
+            file = Paths.get(filename);
+
+            fileWriterService = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder()
+                    .setNameFormat("metrics-file-%d")
+                    .setDaemon(true)
+                    .build()
+            );
+
+            fileWriterService.scheduleWithFixedDelay(this::writeFile, 0, FILE_INTERVAL_SECS, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Writes the metrics one last time and stops exporting them.
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        if (fileWriterService != null) {
+            fileWriterService.shutdownNow();
+            fileWriterService = null;
+
+            // The final values are the ones that matter most for a run
+            writeFile();
+        }
+
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+
+        if (prometheusMeterRegistry != null) {
+            meterRegistry.remove(prometheusMeterRegistry);
+            prometheusMeterRegistry.close();
+            prometheusMeterRegistry = null;
+        }
+
+        if (jmxMeterRegistry != null) {
+            meterRegistry.remove(jmxMeterRegistry);
+            jmxMeterRegistry.close();
+            jmxMeterRegistry = null;
+        }
+    }
+
+    private void serve(final String address, final int port) {
+        try {
+            server = HttpServer.create(new InetSocketAddress(address, port), 0);
+        } catch (IOException e) {
+            throw new IllegalStateException(String.format("Unable to serve metrics on %s:%d", address, port), e);
+        }
+
+        server.createContext(SCRAPE_PATH, this::handleScrape);
+        server.setExecutor(Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder()
+                .setNameFormat("metrics-http-%d")
+                .setDaemon(true)
+                .build()
+        ));
+        server.start();
+
+        System.out.println(String.format("Serving metrics at http://%s:%d%s", address, port, SCRAPE_PATH));
+    }
+
+    private void handleScrape(final HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_BAD_METHOD, -1);
+                return;
+            }
+
+            // A scrape may still come in while the exporter is stopping
+            final PrometheusMeterRegistry registry = prometheusMeterRegistry;
+
+            if (registry == null) {
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_UNAVAILABLE, -1);
+                return;
+            }
+
+            final byte[] body = registry.scrape().getBytes(StandardCharsets.UTF_8);
+
+            exchange.getResponseHeaders().set("Content-Type", TextFormat.CONTENT_TYPE_004);
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, body.length);
+
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Replaces the metrics file, so whoever reads it never sees it half
+     * written.
+     */
+    private synchronized void writeFile() {
+        if (prometheusMeterRegistry == null) {
+            return;
+        }
+
+        final Path absoluteFile = file.toAbsolutePath();
+
+        try {
+            final Path tempFile = Files.createTempFile(absoluteFile.getParent(), absoluteFile.getFileName().toString(), ".tmp");
+
+            try {
+                Files.writeString(tempFile, prometheusMeterRegistry.scrape());
+                Files.move(tempFile, absoluteFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Unable to write the metrics to {}", file, e);
+        }
+    }
+
+}
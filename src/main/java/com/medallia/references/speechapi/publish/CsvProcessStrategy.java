@@ -15,6 +15,7 @@ import com.opencsv.bean.CsvToBeanBuilder;
 import com.opencsv.exceptions.CsvValidationException;
 // import com.opencsv.bean.HeaderColumnNameMappingStrategy;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -27,9 +28,10 @@ public class CsvProcessStrategy extends GenericProcessStrategy<CsvMemento> {
 
     @Autowired
     public CsvProcessStrategy(
-            final MecSpeechService mecSpeechService
+            final MecSpeechService mecSpeechService,
+            final MeterRegistry meterRegistry
     ) {
-        super(mecSpeechService);
+        super(mecSpeechService, meterRegistry);
     }
 
     protected Long getNumRecords(final String dataFilename) {
@@ -6,15 +6,22 @@ import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang3.time.DurationFormatUtils;
 
+import com.medallia.references.speechapi.concurrency.ConcurrencyLimiter;
+import com.medallia.references.speechapi.concurrency.Outcome;
+import com.medallia.references.speechapi.concurrency.WorkerExecutors;
 import com.medallia.references.speechapi.exceptions.ExecutionNotFinishedException;
+import com.medallia.references.speechapi.metrics.MetricNames;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import me.tongfei.progressbar.ProgressBar;
 import me.tongfei.progressbar.ProgressBarBuilder;
@@ -31,17 +38,25 @@ import me.tongfei.progressbar.ProgressBarStyle;
 public abstract class GenericProcessStrategy<MementoType> {
 
     public static final int MILLIS_PER_SEC = 1000;
+    public static final int PENDING_BATCHES_PER_WORKER = 2;
 
     private final MecSpeechService mecSpeechService;
 
-    protected GenericProcessStrategy(final MecSpeechService mecSpeechService) {
+    private final MeterRegistry meterRegistry;
+
+    protected GenericProcessStrategy(final MecSpeechService mecSpeechService, final MeterRegistry meterRegistry) {
         this.mecSpeechService = mecSpeechService;
+        this.meterRegistry = meterRegistry;
     }
 
     /**
      * The entry point of the processing strategy.
      * @param threads the number of workers to use
      * @param timeout the maximum duration for the execution
+     * @param adaptive whether the number of batches in flight adapts to
+     *                 how the Medallia Speech API responds
+     * @param virtualThreads whether each batch is published on a virtual
+     *                       thread of its own
      * @param mecApi the options related to the Medallia Speech API
      * @param dataFilename the file that contains the metadata to publish
      * @param batchSize the max number of records per batch
@@ -49,10 +64,14 @@ public abstract class GenericProcessStrategy<MementoType> {
     final void process(
             final Integer threads,
             final Duration timeout,
+            final boolean adaptive,
+            final boolean virtualThreads,
             final MecApiOptions mecApi,
             final String dataFilename,
             final Integer batchSize
     ) {
+        final long deadline = System.nanoTime() + timeout.toNanos();
+
         // Step 1: Get metadata about the data file itself and open a
         // memento tracker object so the parser can manage state
         final Long numRecords = getNumRecords(dataFilename);
@@ -69,7 +88,17 @@ public abstract class GenericProcessStrategy<MementoType> {
         progressBar.maxHint(numRecords);
 
         // Step 3: Create a thread pool for parallel execution
-        final ExecutorService executorService = Executors.newWorkStealingPool(threads);
+        final ExecutorService executorService = WorkerExecutors.create(virtualThreads, threads);
+
+        // A fixed limit keeps a couple of batches queued per worker; an
+        // adaptive one only counts the batches being published.  Virtual
+        // threads start every batch at once, so none are queued and the
+        // limit alone bounds the batches in flight.
+        final ConcurrencyLimiter limiter = ConcurrencyLimiter.create(
+            adaptive,
+            adaptive || virtualThreads ? threads : threads * PENDING_BATCHES_PER_WORKER
+        );
+        mecSpeechService.reportThrottlingTo(limiter);
 
         // Step 4: Submit a job to the thread pool for each batch
         final MementoType memento = getMemento(dataFilename, numRecords);
@@ -81,121 +110,71 @@ public abstract class GenericProcessStrategy<MementoType> {
 
         final List<String> errors = new ArrayList<>();
 
-        List<SpeechRecordMetadata> page = null;
-        while ((page = getNextPage(memento, batchSize)) != null && !page.isEmpty()) {
-            LOGGER.debug("Processing page with {} record(s) in it", page.size());
-
-            // This is needed to allow the lambda expression below to work
-            final List<SpeechRecordMetadata> pageFinal = page;
+        final Gauge inFlight = Gauge.builder(MetricNames.PUBLISH_IN_FLIGHT, limiter, ConcurrencyLimiter::getInFlight)
+            .description("Batches being published")
+            .strongReference(true)
+            .register(meterRegistry);
 
-            final Future<Void> task = executorService.submit(() -> {
-                final SpeechPublishResults results = mecSpeechService.publish(
-                    pageFinal,
-                    mecApi
-                );
-
-                if (results == null) {
-                    throw new IllegalStateException("Received no response from Medallia Speech API");
+        try {
+            List<SpeechRecordMetadata> page = null;
+            while ((page = getNextPage(memento, batchSize)) != null && !page.isEmpty()) {
+                LOGGER.debug("Processing page with {} record(s) in it", page.size());
+
+                // This is needed to allow the lambda expression below to work
+                final List<SpeechRecordMetadata> pageFinal = page;
+
+                // Reading a page waits for a slot, so pages are not read
+                // much faster than they are published
+                if (!limiter.acquire(deadline)) {
+                    executorService.shutdownNow();
+                    throw getTimeoutException(timeout);
                 }
 
-                switch (results.getJobStatus()) {
-                    case ACCEPTED:
-                        // Everything in the job was accepted
-                        numAccepted.addAndGet(pageFinal.size());
-                        break;
-                    case REJECTED:
-                        // Everything in the job was rejected
-                        numRejected.addAndGet(pageFinal.size());
-
-                        if (results.getDetails() == null) {
-                            pageFinal.stream().forEach(metadata -> {
-                                errors.add(String.format(
-                                    "%s: unspecified rejection",
-                                    metadata.getSpeechFileName()
-                                ));
-                            });
-                        } else {
-                            results.getDetails().stream()
-                                .filter(details -> SpeechPublishTaskDetails.TaskStatus.REJECTED.equals(details.getStatus()))
-                                .forEach(details -> {
-                                    errors.add(String.format(
-                                        "%s: %s",
-                                        details.getSpeechFileName(),
-                                        Optional.ofNullable(details.getErrorMessage())
-                                            .orElse("unspecified rejection")
-                                    ));
-                                });
-                        }
-
-                        break;
-                    case PARTIALLY_ACCEPTED:
-                        if (results.getDetails() == null) {
-                            throw new IllegalStateException(
-                                "Received no partially accepted details from Medallia Speech API"
-                            );
-                        }
-
-                        results.getDetails().stream().forEach(details -> {
-                            switch (details.getStatus()) {
-                                case ACCEPTED:
-                                    // This one record was accepted
-                                    numAccepted.addAndGet(1);
-                                    break;
-                                case REJECTED:
-                                    // This one record was rejected
-                                    numRejected.addAndGet(1);
-
-                                    errors.add(String.format(
-                                        "%s: %s",
-                                        details.getSpeechFileName(),
-                                        Optional.ofNullable(details.getErrorMessage())
-                                            .orElse("unspecified rejection")
-                                    ));
-
-                                    break;
-                                default:
-                                    throw new RuntimeException("Unknown details status");
-                            }
-                        });
-                        break;
-                    default:
-                        throw new RuntimeException("Unknown job status");
-                }
+                final Future<Void> task = executorService.submit(() -> {
+                    final long startTime = System.nanoTime();
 
-                // TODO: filenameStream.println(filename);
+                    // Anything other than a return or a runtime exception
+                    // counts as a failure, and still gives the slot back
+                    Outcome outcome = Outcome.FAILED;
 
-                progressBar.stepBy(pageFinal.size());
+                    try {
+                        publishPage(pageFinal, mecApi, numAccepted, numRejected, errors, progressBar);
+                        outcome = Outcome.SUCCESS;
+                    } catch (RuntimeException e) {
+                        outcome = Outcome.of(e);
+                        throw e;
+                    } finally {
+                        final long latency = System.nanoTime() - startTime;
 
-                return null;
-            });
+                        limiter.release(outcome, latency, 1);
+                        getBatchTimer(outcome == Outcome.SUCCESS ? MetricNames.OUTCOME_SUCCESS : MetricNames.OUTCOME_FAILURE)
+                            .record(latency, TimeUnit.NANOSECONDS);
+                    }
 
-            tasks.add(task);
-        }
+                    return null;
+                });
+
+                tasks.add(task);
+            }
 
-        try {
             // Trigger a shutdown, which is blocked until the worker threads
             // terminate or the executor service interrupts due to a timeout.
             executorService.shutdown();
 
             // Setup the timeout
             final boolean finished = executorService.awaitTermination(
-                timeout.getSeconds(),
-                TimeUnit.SECONDS
+                deadline - System.nanoTime(),
+                TimeUnit.NANOSECONDS
             );
 
             if (!finished) {
-                throw new ExecutionNotFinishedException(String.format(
-                    "Process exceeded max allowed time of %s",
-                    DurationFormatUtils.formatDuration(
-                        timeout.getSeconds() * MILLIS_PER_SEC,
-                        "dHms"
-                    )
-                ));
+                throw getTimeoutException(timeout);
             }
         } catch (InterruptedException e) {
             executorService.shutdownNow();
             throw new ExecutionNotFinishedException("The process was interrupted", e);
         } finally {
+            meterRegistry.remove(inFlight);
             progressBar.close();
 
             closeMemento(memento);
@@ -205,6 +184,11 @@ public abstract class GenericProcessStrategy<MementoType> {
             System.out.println(String.format("Records rejected: %d", numRejected.get()));
             System.out.println();
 
+            if (adaptive) {
+                System.out.println(String.format("Finished with %d batch(es) allowed in flight", limiter.getLimit()));
+                System.out.println();
+            }
+
             tasks.forEach(task -> {
                 try {
                     // Calling "get()" will propagate the thread's thrown exceptions.
@@ -225,6 +209,132 @@ public abstract class GenericProcessStrategy<MementoType> {
         }
     }
 
+    /**
+     * Publishes a single page and tallies the results.
+     * @param page the records to publish
+     * @param mecApi the options related to the Medallia Speech API
+     * @param numAccepted counts the accepted records
+     * @param numRejected counts the rejected records
+     * @param errors collects the reasons records were rejected
+     * @param progressBar the progress bar to update
+     */
+    private void publishPage(
+            final List<SpeechRecordMetadata> page,
+            final MecApiOptions mecApi,
+            final AtomicInteger numAccepted,
+            final AtomicInteger numRejected,
+            final List<String> errors,
+            final ProgressBar progressBar
+    ) {
+        final Counter recordsAccepted = getRecordsCounter(MetricNames.STATUS_ACCEPTED);
+        final Counter recordsRejected = getRecordsCounter(MetricNames.STATUS_REJECTED);
+
+        final SpeechPublishResults results = mecSpeechService.publish(
+            page,
+            mecApi
+        );
+
+        if (results == null) {
+            throw new IllegalStateException("Received no response from Medallia Speech API");
+        }
+
+        switch (results.getJobStatus()) {
+            case ACCEPTED:
+                // Everything in the job was accepted
+                numAccepted.addAndGet(page.size());
+                recordsAccepted.increment(page.size());
+                break;
+            case REJECTED:
+                // Everything in the job was rejected
+                numRejected.addAndGet(page.size());
+                recordsRejected.increment(page.size());
+
+                if (results.getDetails() == null) {
+                    page.stream().forEach(metadata -> {
+                        errors.add(String.format(
+                            "%s: unspecified rejection",
+                            metadata.getSpeechFileName()
+                        ));
+                    });
+                } else {
+                    results.getDetails().stream()
+                        .filter(details -> SpeechPublishTaskDetails.TaskStatus.REJECTED.equals(details.getStatus()))
+                        .forEach(details -> {
+                            errors.add(String.format(
+                                "%s: %s",
+                                details.getSpeechFileName(),
+                                Optional.ofNullable(details.getErrorMessage())
+                                    .orElse("unspecified rejection")
+                            ));
+                        });
+                }
+
+                break;
+            case PARTIALLY_ACCEPTED:
+                if (results.getDetails() == null) {
+                    throw new IllegalStateException(
+                        "Received no partially accepted details from Medallia Speech API"
+                    );
+                }
+
+                results.getDetails().stream().forEach(details -> {
+                    switch (details.getStatus()) {
+                        case ACCEPTED:
+                            // This one record was accepted
+                            numAccepted.addAndGet(1);
+                            recordsAccepted.increment();
+                            break;
+                        case REJECTED:
+                            // This one record was rejected
+                            numRejected.addAndGet(1);
+                            recordsRejected.increment();
+
+                            errors.add(String.format(
+                                "%s: %s",
+                                details.getSpeechFileName(),
+                                Optional.ofNullable(details.getErrorMessage())
+                                    .orElse("unspecified rejection")
+                            ));
+
+                            break;
+                        default:
+                            throw new RuntimeException("Unknown details status");
+                    }
+                });
+                break;
+            default:
+                throw new RuntimeException("Unknown job status");
+        }
+
+        // TODO: filenameStream.println(filename);
+
+        progressBar.stepBy(page.size());
+    }
+
+    private Counter getRecordsCounter(final String status) {
+        return Counter.builder(MetricNames.PUBLISH_RECORDS)
+            .description("Records published to the Medallia Speech API")
+            .tag(MetricNames.TAG_STATUS, status)
+            .register(meterRegistry);
+    }
+
+    private Timer getBatchTimer(final String outcome) {
+        return Timer.builder(MetricNames.PUBLISH_BATCH)
+            .description("Time taken to publish a batch, including its retries")
+            .tag(MetricNames.TAG_OUTCOME, outcome)
+            .register(meterRegistry);
+    }
+
+    private static ExecutionNotFinishedException getTimeoutException(final Duration timeout) {
+        return new ExecutionNotFinishedException(String.format(
+            "Process exceeded max allowed time of %s",
+            DurationFormatUtils.formatDuration(
+                timeout.getSeconds() * MILLIS_PER_SEC,
+                "dHms"
+            )
+        ));
+    }
+
     private ProgressBar getProgressBar() {
         return new ProgressBarBuilder()
             .setStyle(ProgressBarStyle.COLORFUL_UNICODE_BLOCK) // ASCII?
@@ -14,6 +14,7 @@ import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -29,9 +30,10 @@ public class JsonProcessStrategy extends GenericProcessStrategy<JsonMemento> {
     @Autowired
     public JsonProcessStrategy(
             final MecSpeechService mecSpeechService,
-            final ObjectMapper objectMapper
+            final ObjectMapper objectMapper,
+            final MeterRegistry meterRegistry
     ) {
-        super(mecSpeechService);
+        super(mecSpeechService, meterRegistry);
         this.objectMapper = objectMapper;
     }
 
@@ -9,6 +9,13 @@ import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
 
+import com.medallia.references.speechapi.concurrency.ConcurrencyLimiter;
+import com.medallia.references.speechapi.concurrency.Outcome;
+import com.medallia.references.speechapi.exceptions.ThrottledException;
+import com.medallia.references.speechapi.metrics.MetricNames;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import reactor.util.retry.Retry;
 
@@ -24,9 +31,15 @@ public class MecSpeechService {
     public static final Duration RETRY_BACKOFF_MSECS = Duration.ofMillis(3000);
     public static final Integer RETRY_MAX_ATTEMPTS = 3;
 
+    /** Told about every throttled attempt, not only the last one. */
+    private volatile ConcurrencyLimiter limiter;
+
     @Autowired
     private MecWebClientService mecWebClientService;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     public SpeechPublishResults publish(
             final List<SpeechRecordMetadata> page,
             final MecApiOptions mecApi
@@ -69,14 +82,48 @@ public class MecSpeechService {
 
                         LOGGER.warn("{}", message);
 
+                        // Lets the caller slow down instead of only retrying
+                        if (errorResponse.statusCode() == HttpStatus.TOO_MANY_REQUESTS
+                                || errorResponse.statusCode() == HttpStatus.SERVICE_UNAVAILABLE) {
+                            throw new ThrottledException(message);
+                        }
+
                         throw new IllegalStateException(message);
                     });
             })
             .bodyToMono(SpeechPublishResults.class)
             // Retry if needed
-            .retryWhen(Retry.backoff(RETRY_MAX_ATTEMPTS, RETRY_BACKOFF_MSECS))
+            .retryWhen(Retry.backoff(RETRY_MAX_ATTEMPTS, RETRY_BACKOFF_MSECS)
+                .doBeforeRetry(signal -> {
+                    Counter.builder(MetricNames.RETRIES)
+                        .description("Requests sent again after failing")
+                        .tag(MetricNames.TAG_PIPELINE, MetricNames.PIPELINE_PUBLISH)
+                        .register(meterRegistry)
+                        .increment();
+
+                    onAttemptFailed(signal.failure());
+                })
+            )
             // Block until the call is done
             .block();
     }
 
+    /**
+     * Reports every throttled attempt to the given limiter as it happens,
+     * rather than only once the retries are used up.  To be called before
+     * anything is published.
+     * @param limiter the limiter of the current run
+     */
+    public void reportThrottlingTo(final ConcurrencyLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    private void onAttemptFailed(final Throwable error) {
+        final ConcurrencyLimiter current = limiter;
+
+        if (current != null && Outcome.of(error) == Outcome.THROTTLED) {
+            current.throttled();
+        }
+    }
+
 }
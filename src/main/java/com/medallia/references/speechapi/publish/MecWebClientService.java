@@ -5,6 +5,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.oauth2.client.AuthorizedClientServiceReactiveOAuth2AuthorizedClientManager;
 import org.springframework.security.oauth2.client.InMemoryReactiveOAuth2AuthorizedClientService;
 import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientProvider;
@@ -19,8 +20,12 @@ import org.springframework.web.reactive.function.client.ExchangeStrategies;
 import org.springframework.web.reactive.function.client.WebClient;
 
 import com.google.common.hash.Hashing;
+import com.medallia.references.speechapi.metrics.MetricNames;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
 
 import static org.springframework.security.oauth2.core.AuthorizationGrantType.CLIENT_CREDENTIALS;
 
@@ -38,6 +43,9 @@ public class MecWebClientService {
 
     private final Map<String, WebClient> registry = new HashMap<>();
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     /**
      * Returns the web client Id for the given parameters.
      *
@@ -173,7 +181,7 @@ public class MecWebClientService {
                 clientService
             );
 
-        authorizedClientManager.setAuthorizedClientProvider(authorizedClientProvider);
+        authorizedClientManager.setAuthorizedClientProvider(timed(authorizedClientProvider));
 
         final ServerOAuth2AuthorizedClientExchangeFilterFunction oauth =
             new ServerOAuth2AuthorizedClientExchangeFilterFunction(authorizedClientManager);
@@ -203,4 +211,29 @@ public class MecWebClientService {
         return oauth;
     }
 
+    /**
+     * Times the token requests made by the given provider.  A provider
+     * completes empty when the token it holds is still valid, which is
+     * not timed, as no request was made.
+     *
+     * @param provider the provider to time
+     * @return the timed provider
+     */
+    private ReactiveOAuth2AuthorizedClientProvider timed(final ReactiveOAuth2AuthorizedClientProvider provider) {
+        return context -> Mono.defer(() -> {
+            final Timer.Sample sample = Timer.start(meterRegistry);
+
+            return provider.authorize(context)
+                .doOnNext(client -> sample.stop(getTokenTimer(MetricNames.OUTCOME_SUCCESS)))
+                .doOnError(error -> sample.stop(getTokenTimer(MetricNames.OUTCOME_FAILURE)));
+        });
+    }
+
+    private Timer getTokenTimer(final String outcome) {
+        return Timer.builder(MetricNames.OAUTH_TOKEN)
+            .description("Time taken to fetch an OAuth 2.0 access token")
+            .tag(MetricNames.TAG_OUTCOME, outcome)
+            .register(meterRegistry);
+    }
+
 }
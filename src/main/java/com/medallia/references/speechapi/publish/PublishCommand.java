@@ -9,6 +9,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.medallia.references.speechapi.TopMostCommand;
+import com.medallia.references.speechapi.metrics.MetricsExporter;
 
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -46,6 +47,9 @@ public class PublishCommand implements Callable {
     @Autowired
     private CsvProcessStrategy csvProcessStrategy;
 
+    @Autowired
+    private MetricsExporter metricsExporter;
+
     @ParentCommand
     private TopMostCommand parent;
 
@@ -99,12 +103,23 @@ public class PublishCommand implements Callable {
 
     @Override
     public Integer call() {
+        parent.validate();
+
         // Create the process strategy that will be used to execute the job
         final GenericProcessStrategy strategy = getProcessStrategy();
 
+        metricsExporter.start(
+            parent.isMetricsJmx(),
+            parent.getMetricsAddress(),
+            parent.getMetricsPort(),
+            parent.getMetricsFilename()
+        );
+
         strategy.process(
             parent.getNumWorkers(),
             parent.getExecutionTimeout(),
+            parent.isAdaptive(),
+            parent.isVirtualThreads(),
             mecApi,
             dataFilename,
             batchSize
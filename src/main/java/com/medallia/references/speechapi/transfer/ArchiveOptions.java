@@ -0,0 +1,81 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.nio.file.Path;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import picocli.CommandLine;
+import picocli.CommandLine.Model.CommandSpec;
+import picocli.CommandLine.ParameterException;
+import picocli.CommandLine.Spec;
+
+/**
+ * Command line options related to transfers straight out of an archive.
+ */
+@Getter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ArchiveOptions {
+
+    public static final String DEFAULT_ARCHIVE_READ_AHEAD = "256MB";
+
+    @Spec
+    private CommandSpec spec;
+
+    private Path archive;
+
+    private ArchiveType type;
+
+    /**
+     * Sets the archive to transfer the entries of, whose format is told by
+     * its extension.
+     * @param archive the archive
+     */
+    @CommandLine.Option(
+        names = {"--archive"},
+        required = true,
+        description = ""
+            + "Local .zip, .tar, .tar.gz or .tgz archive that contains the "
+            + "files to be uploaded, which are read without extracting them."
+    )
+    public void setArchive(final Path archive) {
+        this.type = ArchiveType.of(archive).orElseThrow(() -> new ParameterException(
+            spec.commandLine(),
+            "Invalid archive: must end with .zip, .tar, .tar.gz or .tgz"
+        ));
+
+        this.archive = archive;
+    }
+
+    private Long readAhead;
+
+    /**
+     * Sets how many bytes of a compressed tar archive are read ahead of
+     * the transfers.
+     * @param readAhead the number of bytes
+     */
+    @CommandLine.Option(
+        names = {"--archive-read-ahead"},
+        defaultValue = DEFAULT_ARCHIVE_READ_AHEAD,
+        required = false,
+        converter = ByteSizeConverter.class,
+        description = ""
+            + "How many bytes of entries of a .tar.gz archive are held in "
+            + "memory, read ahead of their transfer, such as 256MB. "
+            + "(default=${DEFAULT-VALUE})"
+    )
+    public void setReadAhead(final Long readAhead) {
+        if (readAhead <= 0) {
+            throw new ParameterException(
+                spec.commandLine(),
+                "Invalid read-ahead: must be at least 1 byte"
+            );
+        }
+
+        this.readAhead = readAhead;
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The implementation of the transfer process as it relates to archives,
+ * whose entries are transferred without extracting them first.
+ */
+@Slf4j
+@Component
+public class ArchiveProcessStrategy extends GenericProcessStrategy {
+
+    /** The open archives, kept for the whole run. */
+    private final Map<ArchiveOptions, ArchiveReader> readers = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ArchiveProcessStrategy(final MmftService mmftService, final MeterRegistry meterRegistry) {
+        super(mmftService, meterRegistry);
+    }
+
+    protected void listFiles(final SourceOptions source, final SourceFileFilter filter, final Consumer<SourceFile> consumer) {
+        try {
+            getReader(source).listEntries(filter, consumer);
+        } catch (IOException | UncheckedIOException e) {
+            throw new RuntimeException("Unable to list archive entries", e);
+        }
+    }
+
+    @Override
+    protected boolean canSort(final SourceOptions source) {
+        // Entries of a compressed archive are held in memory until they
+        // are transferred, so they cannot wait for the listing to finish
+        return source.getArchive().getType().isIndexed();
+    }
+
+    @Override
+    protected void onFileSkipped(final SourceFile file, final SourceOptions source) {
+        getReader(source).release(file);
+    }
+
+    @Override
+    protected void onTransferFinished(final SourceFile file, final SourceOptions source, final boolean isTransferred) {
+        getReader(source).release(file);
+    }
+
+    @Override
+    protected void closeSource(final SourceOptions source) {
+        final ArchiveReader reader = readers.remove(source.getArchive());
+
+        if (reader == null) {
+            return;
+        }
+
+        try {
+            reader.close();
+        } catch (IOException e) {
+            LOGGER.warn("Unable to close {}", source.getArchive().getArchive(), e);
+        }
+    }
+
+    protected TransferPayload getPayloadFromSource(
+        final SourceFile file,
+        final SourceOptions source
+    ) {
+        try {
+            return getReader(source).getEntry(file);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to get contents of archive entry", e);
+        }
+    }
+
+    private ArchiveReader getReader(final SourceOptions source) {
+        return readers.computeIfAbsent(source.getArchive(), options -> {
+            try {
+                return ArchiveReader.open(options);
+            } catch (IOException e) {
+                throw new UncheckedIOException(String.format("Unable to open %s", options.getArchive()), e);
+            }
+        });
+    }
+
+}
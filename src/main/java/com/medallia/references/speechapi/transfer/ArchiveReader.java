@@ -0,0 +1,77 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Reads the entries of an archive as if they were the files of a folder,
+ * without extracting them first.  Entries are named by their path within
+ * the archive, which is both what the glob matches and what ends up in
+ * the MMFT key.
+ */
+public abstract class ArchiveReader implements Closeable {
+
+    /**
+     * Opens an archive for reading.
+     * @param options the options related to the archive
+     * @return the reader for the format of the archive
+     * @throws IOException if the archive cannot be opened
+     */
+    public static ArchiveReader open(final ArchiveOptions options) throws IOException {
+        switch (options.getType()) {
+            case ZIP:
+                return new ZipArchiveReader(options.getArchive());
+            case TAR:
+                return new TarArchiveReader(options.getArchive());
+            case TAR_GZ:
+                return new CompressedTarReader(options.getArchive(), options.getReadAhead());
+            default:
+                throw new IllegalStateException(String.format("Unsupported archive type %s", options.getType()));
+        }
+    }
+
+    /**
+     * Lists the files in the archive that the filter selects, handing each
+     * one to the consumer.
+     * @param filter selects the files to hand over
+     * @param consumer receives each file selected
+     * @throws IOException if the archive cannot be read
+     */
+    public abstract void listEntries(SourceFileFilter filter, Consumer<SourceFile> consumer) throws IOException;
+
+    /**
+     * Opens an entry for reading.  It may be opened more than once until
+     * it is released.
+     * @param file a file handed over by {@link #listEntries(SourceFileFilter, Consumer)}
+     * @return the contents of the entry
+     * @throws IOException if the entry cannot be read
+     */
+    public abstract TransferPayload getEntry(SourceFile file) throws IOException;
+
+    /**
+     * Releases whatever is held for an entry once it is no longer needed.
+     * @param file a file handed over by {@link #listEntries(SourceFileFilter, Consumer)}
+     */
+    public void release(final SourceFile file) {
+        // Nothing is held by default
+    }
+
+    /**
+     * Turns the name of an entry into the name of the file, dropping a
+     * leading {@code ./} or {@code /}, which archives created from within
+     * a folder often have.
+     * @param entryName the name of the entry in the archive
+     * @return the filename
+     */
+    protected static String getFilename(final String entryName) {
+        String filename = entryName;
+
+        while (filename.startsWith("./") || filename.startsWith("/")) {
+            filename = filename.substring(filename.indexOf('/') + 1);
+        }
+
+        return filename;
+    }
+
+}
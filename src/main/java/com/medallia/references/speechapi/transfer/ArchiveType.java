@@ -0,0 +1,56 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * The archive formats recordings can be transferred from, as told apart
+ * by the extension of the archive.
+ */
+public enum ArchiveType {
+
+    /** Entries are found through the central directory and read in parallel. */
+    ZIP(true, ".zip"),
+
+    /** Entries are found through their headers and read in parallel. */
+    TAR(true, ".tar"),
+
+    /**
+     * Entries can only be reached by decompressing everything before them,
+     * so they are read one after another, ahead of their transfer.
+     */
+    TAR_GZ(false, ".tar.gz", ".tgz");
+
+    private final boolean isIndexed;
+
+    private final String[] extensions;
+
+    ArchiveType(final boolean isIndexed, final String... extensions) {
+        this.isIndexed = isIndexed;
+        this.extensions = extensions;
+    }
+
+    /**
+     * @return whether any entry can be read without reading the ones
+     *         before it
+     */
+    public boolean isIndexed() {
+        return isIndexed;
+    }
+
+    /**
+     * Finds the format of an archive from its extension.
+     * @param path the archive
+     * @return the format, or empty if the extension is not supported
+     */
+    public static Optional<ArchiveType> of(final Path path) {
+        final String filename = path.getFileName().toString().toLowerCase(Locale.ROOT);
+
+        return Arrays.stream(values())
+            .filter(type -> Arrays.stream(type.extensions).anyMatch(filename::endsWith))
+            .findFirst();
+    }
+
+}
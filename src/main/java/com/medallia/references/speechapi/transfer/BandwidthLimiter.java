@@ -0,0 +1,170 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket limiting the bytes per second moved by every stream that
+ * shares it.  The bucket holds up to a burst of bytes, so a transfer
+ * starting after a quiet period goes at full speed for a moment.
+ *
+ * <p>Bytes are reserved up front and the reservation may leave the bucket
+ * in debt; callers then wait for the debt to be repaid.  Each caller waits
+ * behind everyone who reserved before it, so workers get their turns in
+ * order and a single large request cannot starve the small ones.
+ */
+public class BandwidthLimiter {
+
+    /** A limiter that never waits. */
+    public static final BandwidthLimiter UNLIMITED = new BandwidthLimiter(0, 0);
+
+    private static final double NANOS_PER_SEC = TimeUnit.SECONDS.toNanos(1);
+
+    private final double bytesPerNano;
+
+    private final double burst;
+
+    private double tokens;
+
+    private long lastRefill = System.nanoTime();
+
+    /**
+     * Creates a limiter.
+     * @param bytesPerSecond the sustained rate, or 0 for no limit
+     * @param burst the number of bytes that may be moved at once after a
+     *              quiet period
+     */
+    public BandwidthLimiter(final long bytesPerSecond, final long burst) {
+        this.bytesPerNano = bytesPerSecond / NANOS_PER_SEC;
+        this.burst = burst;
+        this.tokens = burst;
+    }
+
+    /**
+     * @return true if this limiter ever waits
+     */
+    public boolean isLimited() {
+        return bytesPerNano > 0;
+    }
+
+    /**
+     * Reserves bytes, waiting until the bucket has paid for them.
+     * @param bytes the number of bytes about to be moved
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquire(final long bytes) throws InterruptedException {
+        final long delay = reserve(bytes);
+
+        if (delay > 0) {
+            TimeUnit.NANOSECONDS.sleep(delay);
+        }
+    }
+
+    /**
+     * Reserves bytes without blocking a thread, for non-blocking uploads.
+     * @param bytes the number of bytes about to be moved
+     * @return completes once the bucket has paid for the bytes
+     */
+    public CompletableFuture<Void> acquireAsync(final long bytes) {
+        final long delay = reserve(bytes);
+
+        if (delay <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return CompletableFuture.runAsync(() -> { }, CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * Wraps a stream so that its reads are paid for by this limiter.
+     * @param inputStream the stream to wrap
+     * @return the limited stream, or the same stream if there is no limit
+     */
+    public InputStream limit(final InputStream inputStream) {
+        if (!isLimited()) {
+            return inputStream;
+        }
+
+        return new FilterInputStream(inputStream) {
+            @Override
+            public int read() throws IOException {
+                final int b = super.read();
+                if (b >= 0) {
+                    acquireInterruptibly(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+                final int count = super.read(bytes, offset, length);
+                if (count > 0) {
+                    acquireInterruptibly(count);
+                }
+                return count;
+            }
+        };
+    }
+
+    /**
+     * Wraps a stream so that its writes are paid for by this limiter.
+     * @param outputStream the stream to wrap
+     * @return the limited stream, or the same stream if there is no limit
+     */
+    public OutputStream limit(final OutputStream outputStream) {
+        if (!isLimited()) {
+            return outputStream;
+        }
+
+        return new FilterOutputStream(outputStream) {
+            @Override
+            public void write(final int b) throws IOException {
+                acquireInterruptibly(1);
+                out.write(b);
+            }
+
+            @Override
+            public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+                acquireInterruptibly(length);
+                out.write(bytes, offset, length);
+            }
+        };
+    }
+
+    /**
+     * Takes bytes from the bucket, refilling it first for the time that
+     * has passed.
+     * @param bytes the number of bytes to take
+     * @return how long to wait before moving them, in nanoseconds
+     */
+    private synchronized long reserve(final long bytes) {
+        if (!isLimited()) {
+            return 0;
+        }
+
+        final long now = System.nanoTime();
+
+        tokens = Math.min(burst, tokens + (now - lastRefill) * bytesPerNano);
+        lastRefill = now;
+
+        tokens -= bytes;
+
+        return tokens >= 0 ? 0 : (long) (-tokens / bytesPerNano);
+    }
+
+    private void acquireInterruptibly(final long bytes) throws InterruptedIOException {
+        try {
+            acquire(bytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for bandwidth");
+        }
+    }
+
+}
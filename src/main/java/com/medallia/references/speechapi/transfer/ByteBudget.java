@@ -0,0 +1,111 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A budget of bytes shared by concurrent transfers, like a semaphore whose
+ * permits are bytes.  A request larger than the whole budget is granted
+ * the whole budget instead, so it runs once everything else has finished
+ * and nothing else starts until it is done.
+ */
+public class ByteBudget {
+
+    /** Returned by {@link #tryAcquire(long)} when the bytes are not available. */
+    public static final long NOT_GRANTED = -1;
+
+    private final long capacity;
+
+    private long available;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+
+    /**
+     * Creates a budget.
+     * @param capacity the number of bytes that may be in use at once
+     */
+    public ByteBudget(final long capacity) {
+        this.capacity = capacity;
+        this.available = capacity;
+    }
+
+    /**
+     * Takes bytes from the budget, waiting until enough are available.
+     * @param bytes the number of bytes needed
+     * @param deadline the {@link System#nanoTime()} after which to give up
+     * @return the number of bytes taken, to be handed back with {@link #release(long)}
+     * @throws InterruptedException if interrupted while waiting
+     * @throws TimeoutException if the deadline passed while waiting
+     */
+    public long acquire(final long bytes, final long deadline) throws InterruptedException, TimeoutException {
+        final long granted = Math.min(bytes, capacity);
+
+        lock.lock();
+        try {
+            while (available < granted) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new TimeoutException("Timed out waiting for bytes in flight to be released");
+                }
+
+                released.awaitNanos(remaining);
+            }
+
+            available -= granted;
+            return granted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes bytes from the budget only if enough are available right away.
+     * @param bytes the number of bytes needed
+     * @return the number of bytes taken, to be handed back with
+     *         {@link #release(long)}, or {@link #NOT_GRANTED}
+     */
+    public long tryAcquire(final long bytes) {
+        final long granted = Math.min(bytes, capacity);
+
+        lock.lock();
+        try {
+            if (available < granted) {
+                return NOT_GRANTED;
+            }
+
+            available -= granted;
+            return granted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Hands bytes back to the budget.
+     * @param bytes the number of bytes returned by {@link #acquire(long, long)}
+     */
+    public void release(final long bytes) {
+        lock.lock();
+        try {
+            available += bytes;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of bytes currently taken from the budget
+     */
+    public long getInUse() {
+        lock.lock();
+        try {
+            return capacity - available;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
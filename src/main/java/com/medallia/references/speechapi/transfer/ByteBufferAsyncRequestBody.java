@@ -0,0 +1,60 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+
+/**
+ * An {@link AsyncRequestBody} that publishes a buffer as-is.  The SDK's own
+ * {@code AsyncRequestBody.fromByteBuffer} copies the buffer first, which
+ * would pull memory mapped file ranges onto the heap.  Each subscriber
+ * gets its own view of the buffer, so the body can be sent again when a
+ * request is retried.
+ */
+public class ByteBufferAsyncRequestBody implements AsyncRequestBody {
+
+    private final ByteBuffer buffer;
+
+    public ByteBufferAsyncRequestBody(final ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public Optional<Long> contentLength() {
+        return Optional.of((long) buffer.remaining());
+    }
+
+    @Override
+    public void subscribe(final Subscriber<? super ByteBuffer> subscriber) {
+        final AtomicBoolean done = new AtomicBoolean(false);
+
+        subscriber.onSubscribe(new Subscription() {
+            @Override
+            public void request(final long n) {
+                if (!done.compareAndSet(false, true)) {
+                    return;
+                }
+
+                if (n <= 0) {
+                    // Required by rule 3.9 of the Reactive Streams specification
+                    subscriber.onError(new IllegalArgumentException("Demand must be positive"));
+                    return;
+                }
+
+                subscriber.onNext(buffer.asReadOnlyBuffer());
+                subscriber.onComplete();
+            }
+
+            @Override
+            public void cancel() {
+                done.set(true);
+            }
+        });
+    }
+
+}
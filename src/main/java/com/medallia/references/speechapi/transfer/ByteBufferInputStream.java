@@ -0,0 +1,57 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An {@link InputStream} that reads from a {@link ByteBuffer} without
+ * copying it first, which keeps memory mapped file ranges off the heap.
+ */
+public class ByteBufferInputStream extends InputStream {
+
+    private static final int BYTE_MASK = 0xFF;
+
+    private final ByteBuffer buffer;
+
+    /**
+     * Creates a stream over the remaining bytes of the buffer.  Reading
+     * from the stream advances the position of the buffer.
+     * @param buffer the buffer to read from
+     */
+    public ByteBufferInputStream(final ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+        return buffer.hasRemaining() ? buffer.get() & BYTE_MASK : -1;
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length) {
+        if (length == 0) {
+            return 0;
+        }
+
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+
+        final int count = Math.min(length, buffer.remaining());
+        buffer.get(bytes, offset, count);
+        return count;
+    }
+
+    @Override
+    public long skip(final long n) {
+        final int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + count);
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+
+}
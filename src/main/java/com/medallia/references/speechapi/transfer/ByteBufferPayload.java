@@ -0,0 +1,55 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A payload whose contents are already in memory.  Each payload reads
+ * from its own view of the buffer, so the same contents can be handed to
+ * several payloads, such as when a transfer is retried or hedged.
+ */
+public class ByteBufferPayload extends TransferPayload {
+
+    private final ByteBuffer buffer;
+
+    private final InputStream inputStream;
+
+    /**
+     * Creates a payload over the remaining bytes of the buffer, which is
+     * left untouched.
+     * @param buffer the contents
+     */
+    public ByteBufferPayload(final ByteBuffer buffer) {
+        this.buffer = buffer.asReadOnlyBuffer().slice();
+        this.inputStream = new ByteBufferInputStream(this.buffer.duplicate());
+    }
+
+    @Override
+    public long getContentLength() {
+        return buffer.remaining();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    @Override
+    public boolean isRandomAccess() {
+        return true;
+    }
+
+    @Override
+    public ByteBuffer getRange(final long offset, final int length) {
+        return buffer.duplicate()
+            .position((int) offset)
+            .limit((int) offset + length)
+            .slice();
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release, the buffer belongs to whoever filled it
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import picocli.CommandLine.ITypeConverter;
+import picocli.CommandLine.TypeConversionException;
+
+/**
+ * A Picocli converter for byte sizes given in a human friendly format,
+ * such as {@code 512}, {@code 64KB}, {@code 8MB} or {@code 2GB}.  Units
+ * are binary, so {@code 1KB} is 1024 bytes.
+ */
+public class ByteSizeConverter implements ITypeConverter<Long> {
+
+    public static final Pattern BYTE_SIZE_PATTERN = Pattern.compile("[ ]*([0-9]+)[ ]*([kmg]?)b?[ ]*");
+
+    private static final String UNITS = "kmg";
+    private static final int BITS_PER_UNIT = 10;
+
+    @Override
+    public Long convert(final String value) {
+        return parse(value);
+    }
+
+    /**
+     * Parses the byte size specifier into a number of bytes.
+     * @param value the byte size specifier
+     * @return the number of bytes
+     */
+    public static long parse(final String value) {
+        if (value == null) {
+            throw new TypeConversionException("No byte size provided");
+        }
+
+        final Matcher matcher = BYTE_SIZE_PATTERN.matcher(value.toLowerCase(Locale.ENGLISH));
+
+        if (!matcher.matches()) {
+            throw new TypeConversionException(String.format("Invalid byte size: %s", value));
+        }
+
+        final long num = Long.parseLong(matcher.group(1));
+        final String unit = matcher.group(2);
+
+        // Each unit is 1024 times larger than the one before it
+        final int exponent = unit.isEmpty() ? 0 : UNITS.indexOf(unit) + 1;
+
+        return num << (BITS_PER_UNIT * exponent);
+    }
+
+}
@@ -0,0 +1,19 @@
+package com.medallia.references.speechapi.transfer;
+
+/**
+ * The checksums computed while files are uploaded, which MMFT checks as
+ * it receives each part and which are then checked against what MMFT
+ * reports having stored.
+ */
+public enum ChecksumType {
+
+    /** Nothing is checked beyond what the transport does. */
+    NONE,
+
+    /** Each part is sent with its MD5, which its ETag must match. */
+    MD5,
+
+    /** Like {@link #MD5}, and each part is also sent with its SHA-256. */
+    SHA256
+
+}
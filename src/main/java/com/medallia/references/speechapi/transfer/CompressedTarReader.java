@@ -0,0 +1,292 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reads the entries of a gzip compressed tar archive.  An entry can only
+ * be reached by decompressing everything before it, so the archive is
+ * read once from start to end while it is listed, and each entry is read
+ * into memory before it is handed over.  The bytes held in memory are
+ * bounded by the read-ahead, so the listing waits for transfers to finish
+ * once it is far enough ahead of them.
+ *
+ * <p>An entry larger than the read-ahead is instead streamed to its
+ * transfer through a bounded pipe, with the listing waiting until the
+ * transfer has read it.  Such an entry can only be read once.
+ */
+@Slf4j
+public class CompressedTarReader extends ArchiveReader {
+
+    /** The largest entry that fits in a single buffer. */
+    public static final long MAX_ENTRY_SIZE = Integer.MAX_VALUE;
+
+    /** The most bytes of a streamed entry held in its pipe. */
+    public static final int STREAM_BUFFER_SIZE = 8 * 1024 * 1024;
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final Path path;
+
+    private final long readAheadSize;
+
+    private final ByteBudget readAhead;
+
+    private final Map<String, Entry> buffered = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the reader.  The archive is only opened once it is listed.
+     * @param path the archive
+     * @param readAhead the number of bytes of entries held in memory
+     */
+    public CompressedTarReader(final Path path, final long readAhead) {
+        this.path = path;
+        this.readAheadSize = readAhead;
+        this.readAhead = new ByteBudget(readAhead);
+    }
+
+    @Override
+    public void listEntries(final SourceFileFilter filter, final Consumer<SourceFile> consumer) throws IOException {
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(
+            new GzipCompressorInputStream(new BufferedInputStream(Files.newInputStream(path)), true)
+        )) {
+            for (TarArchiveEntry entry = tar.getNextTarEntry(); entry != null; entry = tar.getNextTarEntry()) {
+                if (!entry.isFile()) {
+                    continue;
+                }
+
+                final String filename = getFilename(entry.getName());
+
+                // Entries left out are skipped over without keeping them
+                if (!filter.matches(filename, entry.getSize(), entry.getLastModifiedDate().getTime())) {
+                    continue;
+                }
+
+                if (buffered.containsKey(filename)) {
+                    LOGGER.warn("Skipping {}, which is in the archive more than once", filename);
+                    continue;
+                }
+
+                if (entry.getSize() > Math.min(readAheadSize, MAX_ENTRY_SIZE)) {
+                    streamEntry(tar, filename, entry, consumer);
+                    continue;
+                }
+
+                final long budgeted = acquire(entry.getSize());
+
+                final byte[] contents;
+                try {
+                    contents = tar.readNBytes((int) entry.getSize());
+                } catch (IOException e) {
+                    readAhead.release(budgeted);
+                    throw e;
+                }
+
+                if (contents.length != entry.getSize()) {
+                    readAhead.release(budgeted);
+                    throw new IOException(String.format("Archive ended in the middle of %s", filename));
+                }
+
+                buffered.put(filename, new BufferedEntry(ByteBuffer.wrap(contents), budgeted));
+
+                consumer.accept(new SourceFile(filename, entry.getSize(), entry.getLastModifiedDate().getTime()));
+            }
+        }
+    }
+
+    /**
+     * Hands over an entry that does not fit in the read-ahead, then copies
+     * it into a pipe that its transfer reads from.  This returns once the
+     * whole entry has been copied, or once the transfer has given up on
+     * it, so the archive can be read on.
+     * @param tar the archive, positioned at the start of the entry
+     * @param filename the name of the entry
+     * @param entry the entry
+     * @param consumer receives the entry
+     * @throws IOException if the archive cannot be read
+     */
+    private void streamEntry(
+            final TarArchiveInputStream tar,
+            final String filename,
+            final TarArchiveEntry entry,
+            final Consumer<SourceFile> consumer
+    ) throws IOException {
+        final int capacity = (int) Math.min(readAheadSize, STREAM_BUFFER_SIZE);
+        final long budgeted = acquire(capacity);
+
+        final StreamingPipe pipe = new StreamingPipe(capacity);
+
+        buffered.put(filename, new StreamedEntry(pipe, entry.getSize(), budgeted));
+
+        consumer.accept(new SourceFile(filename, entry.getSize(), entry.getLastModifiedDate().getTime()));
+
+        final OutputStream outputStream = pipe.getOutputStream();
+
+        final byte[] chunk = new byte[COPY_BUFFER_SIZE];
+        long copied = 0;
+
+        try {
+            for (int count = tar.read(chunk); count >= 0; count = tar.read(chunk)) {
+                try {
+                    outputStream.write(chunk, 0, count);
+                } catch (IOException e) {
+                    // The transfer was skipped or failed, so the rest of
+                    // the entry is skipped over when moving to the next
+                    LOGGER.debug("Stopped streaming {}, which is no longer read", filename);
+                    return;
+                }
+
+                copied += count;
+            }
+
+            if (copied != entry.getSize()) {
+                throw new IOException(String.format("Archive ended in the middle of %s", filename));
+            }
+        } catch (IOException | RuntimeException e) {
+            pipe.fail(e);
+            throw e;
+        }
+
+        outputStream.close();
+    }
+
+    @Override
+    public TransferPayload getEntry(final SourceFile file) {
+        final Entry entry = buffered.get(file.getName());
+
+        if (entry == null) {
+            throw new IllegalStateException(String.format("%s is no longer held in memory", file.getName()));
+        }
+
+        return entry.getPayload(file.getName());
+    }
+
+    @Override
+    public void release(final SourceFile file) {
+        final Entry entry = buffered.remove(file.getName());
+
+        if (entry != null) {
+            entry.close();
+            readAhead.release(entry.budgeted);
+        }
+    }
+
+    @Override
+    public void close() {
+        buffered.clear();
+    }
+
+    /**
+     * Waits until an entry fits in the read-ahead.
+     * @param size the size of the entry
+     * @return the number of bytes taken from the read-ahead
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    private long acquire(final long size) throws InterruptedIOException {
+        try {
+            return readAhead.acquire(size, System.nanoTime() + GenericProcessStrategy.UNBOUNDED_NANOS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for entries to be transferred");
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Entries were never transferred", e);
+        }
+    }
+
+    /**
+     * An entry handed over, along with the bytes of the read-ahead it
+     * holds.
+     */
+    private abstract static class Entry {
+
+        private final long budgeted;
+
+        Entry(final long budgeted) {
+            this.budgeted = budgeted;
+        }
+
+        abstract TransferPayload getPayload(String filename);
+
+        void close() {
+            // Nothing to close by default
+        }
+
+    }
+
+    /**
+     * The contents of an entry held in memory.
+     */
+    private static final class BufferedEntry extends Entry {
+
+        private final ByteBuffer contents;
+
+        BufferedEntry(final ByteBuffer contents, final long budgeted) {
+            super(budgeted);
+            this.contents = contents;
+        }
+
+        @Override
+        TransferPayload getPayload(final String filename) {
+            return new ByteBufferPayload(contents);
+        }
+
+    }
+
+    /**
+     * An entry streamed through a pipe, which can only be read once.
+     */
+    private static final class StreamedEntry extends Entry {
+
+        private final StreamingPipe pipe;
+
+        private final long size;
+
+        private final AtomicBoolean isTaken = new AtomicBoolean(false);
+
+        StreamedEntry(final StreamingPipe pipe, final long size, final long budgeted) {
+            super(budgeted);
+            this.pipe = pipe;
+            this.size = size;
+        }
+
+        @Override
+        TransferPayload getPayload(final String filename) {
+            if (isTaken.getAndSet(true)) {
+                throw new IllegalStateException(String.format(
+                    "%s is larger than the read-ahead, so it is streamed and can only be read once",
+                    filename
+                ));
+            }
+
+            return new StreamPayload(pipe.getInputStream(), size);
+        }
+
+        @Override
+        void close() {
+            // Lets the listing move on if the entry was not read in full
+            try {
+                pipe.getInputStream().close();
+            } catch (IOException e) {
+                LOGGER.debug("Unable to close pipe", e);
+            }
+        }
+
+    }
+
+}
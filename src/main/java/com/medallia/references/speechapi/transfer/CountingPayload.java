@@ -0,0 +1,102 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import io.micrometer.core.instrument.Counter;
+
+/**
+ * A payload that counts the bytes read from the one it wraps, whether
+ * they are read from its stream or as ranges.  Ranges read again, such as
+ * for a retried part, are counted again, as they are read from the source
+ * again.
+ */
+public class CountingPayload extends TransferPayload {
+
+    private final TransferPayload payload;
+
+    private final Counter counter;
+
+    private final InputStream inputStream;
+
+    /**
+     * Wraps a payload.
+     * @param payload the payload to read from
+     * @param counter counts the bytes read
+     */
+    public CountingPayload(final TransferPayload payload, final Counter counter) {
+        this.payload = payload;
+        this.counter = counter;
+        this.inputStream = new CountingInputStream(payload.getInputStream());
+    }
+
+    @Override
+    public long getContentLength() {
+        return payload.getContentLength();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    @Override
+    public boolean isRandomAccess() {
+        return payload.isRandomAccess();
+    }
+
+    @Override
+    public ByteBuffer getRange(final long offset, final int length) throws IOException {
+        final ByteBuffer range = payload.getRange(offset, length);
+        counter.increment(range.remaining());
+        return range;
+    }
+
+    @Override
+    public void close() throws IOException {
+        payload.close();
+    }
+
+    /**
+     * Counts the bytes read through it.
+     */
+    private final class CountingInputStream extends FilterInputStream {
+
+        CountingInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int value = super.read();
+
+            if (value >= 0) {
+                counter.increment();
+            }
+
+            return value;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int count = super.read(b, off, len);
+
+            if (count > 0) {
+                counter.increment(count);
+            }
+
+            return count;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = super.skip(n);
+            counter.increment(skipped);
+            return skipped;
+        }
+
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * A payload backed by a local file.  The file size is known up front, and
+ * ranges are read straight from the {@link FileChannel}: large ranges are
+ * memory mapped so their bytes never pass through the Java heap, while
+ * small ranges are simply read, as mapping has a fixed cost of its own.
+ */
+public class FileChannelPayload extends TransferPayload {
+
+    public static final long MAP_THRESHOLD = 1024 * 1024;
+
+    private final FileChannel channel;
+
+    private final long offset;
+
+    private final long contentLength;
+
+    private final InputStream inputStream;
+
+    /**
+     * Opens the file for reading.
+     * @param path the file to read
+     * @throws IOException if the file cannot be opened
+     */
+    public FileChannelPayload(final Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.offset = 0;
+        this.contentLength = channel.size();
+        this.inputStream = Channels.newInputStream(channel);
+    }
+
+    /**
+     * Opens a slice of the file for reading, such as an entry stored
+     * uncompressed in an archive.
+     * @param path the file to read
+     * @param offset where the slice starts in the file
+     * @param length the length of the slice
+     * @throws IOException if the file cannot be opened
+     */
+    public FileChannelPayload(final Path path, final long offset, final long length) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.offset = offset;
+        this.contentLength = length;
+        this.inputStream = ByteStreams.limit(Channels.newInputStream(channel.position(offset)), length);
+    }
+
+    @Override
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    @Override
+    public boolean isRandomAccess() {
+        return true;
+    }
+
+    @Override
+    public ByteBuffer getRange(final long rangeOffset, final int length) throws IOException {
+        final long position = offset + rangeOffset;
+
+        if (length >= MAP_THRESHOLD) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        }
+
+        // Positional reads leave the channel's own position untouched,
+        // so ranges can be read from several threads at once
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("File was truncated while being transferred");
+            }
+        }
+
+        return buffer.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
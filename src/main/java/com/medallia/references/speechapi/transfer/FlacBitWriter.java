@@ -0,0 +1,119 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.util.Arrays;
+
+/**
+ * Writes values of any width up to 32 bits, most significant bit first,
+ * into a growing byte array, as needed by the FLAC bitstream.
+ */
+class FlacBitWriter {
+
+    private static final int INITIAL_CAPACITY = 16 * 1024;
+    private static final int BITS_PER_BYTE = 8;
+    private static final int MAX_BITS = 32;
+    private static final int BYTE_MASK = 0xFF;
+
+    private byte[] buffer;
+
+    private int length = 0;
+
+    /** Bits not yet written to the buffer, fewer than a byte's worth. */
+    private long pending = 0;
+    private int pendingBits = 0;
+
+    FlacBitWriter() {
+        this(INITIAL_CAPACITY);
+    }
+
+    FlacBitWriter(final int capacity) {
+        this.buffer = new byte[capacity];
+    }
+
+    /**
+     * Writes the lowest bits of a value.
+     * @param bits the number of bits, at most 32
+     * @param value the value, of which higher bits are ignored
+     */
+    void writeBits(final int bits, final long value) {
+        if (bits == 0) {
+            return;
+        }
+
+        pending = pending << bits | value & ((1L << bits) - 1);
+        pendingBits += bits;
+
+        while (pendingBits >= BITS_PER_BYTE) {
+            pendingBits -= BITS_PER_BYTE;
+            append((byte) (pending >>> pendingBits));
+        }
+
+        pending &= (1L << pendingBits) - 1;
+    }
+
+    /**
+     * Writes a value as a number of zeroes followed by a one.
+     * @param value the value
+     */
+    void writeUnary(final long value) {
+        long zeroes = value;
+        while (zeroes >= MAX_BITS) {
+            writeBits(MAX_BITS, 0);
+            zeroes -= MAX_BITS;
+        }
+
+        writeBits((int) zeroes + 1, 1);
+    }
+
+    /**
+     * Writes a residual with the given Rice parameter.
+     * @param parameter the Rice parameter
+     * @param value the residual
+     */
+    void writeRice(final int parameter, final int value) {
+        // Folds negative values in between the positive ones
+        final long folded = value >= 0 ? (long) value << 1 : ((long) -value << 1) - 1;
+
+        writeUnary(folded >>> parameter);
+        writeBits(parameter, folded);
+    }
+
+    /**
+     * Writes zeroes up to the next byte boundary.
+     */
+    void alignToByte() {
+        if (pendingBits > 0) {
+            writeBits(BITS_PER_BYTE - pendingBits, 0);
+        }
+    }
+
+    /**
+     * @return the number of whole bytes written
+     */
+    int length() {
+        return length;
+    }
+
+    /**
+     * @param index the index of a whole byte written
+     * @return the byte, as an unsigned value
+     */
+    int getByte(final int index) {
+        return buffer[index] & BYTE_MASK;
+    }
+
+    /**
+     * @return a copy of the whole bytes written
+     */
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, length);
+    }
+
+    private void append(final byte b) {
+        if (length == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+
+        buffer[length++] = b;
+    }
+
+}
@@ -0,0 +1,502 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A FLAC encoder for PCM samples.  Frames are independent of each other,
+ * so runs of frames can be encoded on several threads and concatenated.
+ *
+ * <p>Each channel of a frame is encoded with whichever of the fixed
+ * polynomial predictors leaves the smallest residual, which is then Rice
+ * coded with partitions chosen to fit how the residual varies.  Stereo
+ * frames also try coding the difference between the channels.  Silence is
+ * stored as a constant, and noise that does not compress is stored as is.
+ */
+final class FlacEncoder {
+
+    /** "fLaC" in ASCII. */
+    private static final int STREAM_MARKER = 0x664C6143;
+    private static final int STREAMINFO_LENGTH = 34;
+    private static final int MAX_FIXED_ORDER = 4;
+    private static final int MAX_PARTITION_ORDER = 8;
+    private static final int MAX_RICE_PARAMETER = 14;
+    private static final int MAX_RICE2_PARAMETER = 30;
+
+    private static final int SYNC_CODE = 0xFFF8;
+    private static final int BLOCK_SIZE_16_BIT = 0b0111;
+    private static final int FROM_STREAMINFO = 0;
+
+    private static final int CHANNEL_LEFT_SIDE = 0b1000;
+    private static final int CHANNEL_SIDE_RIGHT = 0b1001;
+    private static final int CHANNEL_MID_SIDE = 0b1010;
+
+    private static final int SUBFRAME_CONSTANT = 0b000000;
+    private static final int SUBFRAME_VERBATIM = 0b000001;
+    private static final int SUBFRAME_FIXED = 0b001000;
+
+    private static final int RESIDUAL_RICE = 0b00;
+    private static final int RESIDUAL_RICE2 = 0b01;
+
+    private static final int CRC8_POLYNOMIAL = 0x07;
+    private static final int CRC8_HIGH_BIT = 0x80;
+    private static final int CRC16_POLYNOMIAL = 0x8005;
+    private static final int BYTE_MASK = 0xFF;
+    private static final int SHORT_MASK = 0xFFFF;
+    private static final int BITS_PER_BYTE = 8;
+
+    /** The widths of the fields that make up a FLAC header. */
+    private static final int WIDTH_1 = 1;
+    private static final int WIDTH_2 = 2;
+    private static final int WIDTH_3 = 3;
+    private static final int WIDTH_4 = 4;
+    private static final int WIDTH_5 = 5;
+    private static final int WIDTH_6 = 6;
+    private static final int WIDTH_7 = 7;
+    private static final int WIDTH_16 = 16;
+    private static final int WIDTH_20 = 20;
+    private static final int WIDTH_24 = 24;
+    private static final int WIDTH_32 = 32;
+
+    /** The UTF-8-like coding of frame numbers. */
+    private static final int UTF8_CONTINUATION = 0x80;
+    private static final int UTF8_PAYLOAD_BITS = 6;
+    private static final int UTF8_MAX_BYTES = 7;
+
+    private FlacEncoder() {
+    }
+
+    /**
+     * Writes the stream marker and the STREAMINFO block.  The MD5 signature
+     * is left unset, since it would only be known once every sample had
+     * been read.
+     * @param outputStream where to write
+     * @param format the format of the samples
+     * @param blockSize the number of samples per frame
+     * @throws IOException if the header cannot be written
+     */
+    static void writeStreamHeader(
+            final OutputStream outputStream,
+            final WavFormat format,
+            final int blockSize
+    ) throws IOException {
+        final FlacBitWriter writer = new FlacBitWriter();
+
+        writer.writeBits(WIDTH_32, STREAM_MARKER);
+
+        writer.writeBits(WIDTH_1, 1); // last metadata block
+        writer.writeBits(WIDTH_7, 0); // STREAMINFO
+        writer.writeBits(WIDTH_24, STREAMINFO_LENGTH);
+
+        writer.writeBits(WIDTH_16, blockSize);
+        writer.writeBits(WIDTH_16, blockSize);
+        writer.writeBits(WIDTH_24, 0); // minimum frame size unknown
+        writer.writeBits(WIDTH_24, 0); // maximum frame size unknown
+        writer.writeBits(WIDTH_20, format.getSampleRate());
+        writer.writeBits(WIDTH_3, format.getChannels() - 1);
+        writer.writeBits(WIDTH_5, format.getBitsPerSample() - 1);
+
+        // The total number of samples takes 36 bits
+        final long totalSamples = format.getTotalSamples();
+        writer.writeBits(WIDTH_4, totalSamples >>> WIDTH_32);
+        writer.writeBits(WIDTH_32, totalSamples);
+
+        for (int i = 0; i < WIDTH_16; i++) {
+            writer.writeBits(BITS_PER_BYTE, 0); // MD5 unset
+        }
+
+        outputStream.write(writer.toByteArray());
+    }
+
+    /**
+     * Encodes interleaved little-endian PCM samples as a run of frames.
+     * Every frame but the last holds {@code blockSize} samples.
+     * @param data the interleaved samples
+     * @param samples the number of samples per channel in {@code data}
+     * @param firstFrame the number of the first frame
+     * @param format the format of the samples
+     * @param blockSize the number of samples per frame
+     * @return the encoded frames
+     */
+    static byte[] encodeFrames(
+            final byte[] data,
+            final int samples,
+            final long firstFrame,
+            final WavFormat format,
+            final int blockSize
+    ) {
+        final int[][] channels = deinterleave(data, samples, format);
+
+        final ByteArrayOutputStream frames = new ByteArrayOutputStream();
+
+        long frameNumber = firstFrame;
+        for (int offset = 0; offset < samples; offset += blockSize) {
+            final int count = Math.min(blockSize, samples - offset);
+            frames.writeBytes(encodeFrame(channels, offset, count, frameNumber++, format.getBitsPerSample()));
+        }
+
+        return frames.toByteArray();
+    }
+
+    private static int[][] deinterleave(final byte[] data, final int samples, final WavFormat format) {
+        final int numChannels = format.getChannels();
+        final int bytesPerSample = format.getBitsPerSample() / BITS_PER_BYTE;
+
+        final int[][] channels = new int[numChannels][samples];
+
+        int position = 0;
+        for (int i = 0; i < samples; i++) {
+            for (int channel = 0; channel < numChannels; channel++) {
+                int value = 0;
+                for (int b = 0; b < bytesPerSample; b++) {
+                    value |= (data[position++] & BYTE_MASK) << (b * BITS_PER_BYTE);
+                }
+
+                // 8-bit samples are unsigned, wider ones are signed
+                channels[channel][i] = bytesPerSample == 1
+                    ? value - (1 << (BITS_PER_BYTE - 1))
+                    : value << (Integer.SIZE - bytesPerSample * BITS_PER_BYTE) >> (Integer.SIZE - bytesPerSample * BITS_PER_BYTE);
+            }
+        }
+
+        return channels;
+    }
+
+    private static byte[] encodeFrame(
+            final int[][] channels,
+            final int offset,
+            final int count,
+            final long frameNumber,
+            final int bitsPerSample
+    ) {
+        final int[][] block = new int[channels.length][];
+        for (int channel = 0; channel < channels.length; channel++) {
+            block[channel] = Arrays.copyOfRange(channels[channel], offset, offset + count);
+        }
+
+        int assignment = channels.length - 1;
+        int[][] subframes = block;
+        int[] subframeBits = new int[channels.length];
+        Arrays.fill(subframeBits, bitsPerSample);
+
+        if (channels.length == 2) {
+            // Pick the pair of left, right, mid and side that predicts best
+            final int[] side = new int[count];
+            final int[] mid = new int[count];
+            for (int i = 0; i < count; i++) {
+                side[i] = block[0][i] - block[1][i];
+                mid[i] = (block[0][i] + block[1][i]) >> 1;
+            }
+
+            final long left = estimateCost(block[0]);
+            final long right = estimateCost(block[1]);
+            final long sideCost = estimateCost(side);
+            final long midCost = estimateCost(mid);
+
+            final long independent = left + right;
+            final long leftSide = left + sideCost;
+            final long sideRight = sideCost + right;
+            final long midSide = midCost + sideCost;
+
+            final long best = Math.min(Math.min(independent, leftSide), Math.min(sideRight, midSide));
+
+            if (best == midSide) {
+                assignment = CHANNEL_MID_SIDE;
+                subframes = new int[][] {mid, side};
+                subframeBits = new int[] {bitsPerSample, bitsPerSample + 1};
+            } else if (best == leftSide) {
+                assignment = CHANNEL_LEFT_SIDE;
+                subframes = new int[][] {block[0], side};
+                subframeBits = new int[] {bitsPerSample, bitsPerSample + 1};
+            } else if (best == sideRight) {
+                assignment = CHANNEL_SIDE_RIGHT;
+                subframes = new int[][] {side, block[1]};
+                subframeBits = new int[] {bitsPerSample + 1, bitsPerSample};
+            }
+        }
+
+        final FlacBitWriter writer = new FlacBitWriter();
+
+        writer.writeBits(WIDTH_16, SYNC_CODE);
+        writer.writeBits(WIDTH_4, BLOCK_SIZE_16_BIT);
+        writer.writeBits(WIDTH_4, FROM_STREAMINFO); // sample rate
+        writer.writeBits(WIDTH_4, assignment);
+        writer.writeBits(WIDTH_3, FROM_STREAMINFO); // sample size
+        writer.writeBits(WIDTH_1, 0);
+        writeFrameNumber(writer, frameNumber);
+        writer.writeBits(WIDTH_16, count - 1);
+        writer.writeBits(BITS_PER_BYTE, crc8(writer, writer.length()));
+
+        for (int channel = 0; channel < subframes.length; channel++) {
+            writeSubframe(writer, subframes[channel], subframeBits[channel]);
+        }
+
+        writer.alignToByte();
+        writer.writeBits(WIDTH_16, crc16(writer, writer.length()));
+
+        return writer.toByteArray();
+    }
+
+    private static void writeFrameNumber(final FlacBitWriter writer, final long frameNumber) {
+        if (frameNumber < UTF8_CONTINUATION) {
+            writer.writeBits(BITS_PER_BYTE, frameNumber);
+            return;
+        }
+
+        // The leading byte holds a 1 per byte, then as many bits as fit
+        int bytes = 2;
+        while (bytes < UTF8_MAX_BYTES
+                && frameNumber >= 1L << (UTF8_PAYLOAD_BITS * (bytes - 1) + (BITS_PER_BYTE - bytes - 1))) {
+            bytes++;
+        }
+
+        final int leadingBits = BITS_PER_BYTE - bytes - 1;
+        final long leadingMarker = (BYTE_MASK << (BITS_PER_BYTE - bytes)) & BYTE_MASK;
+
+        final long leadingPayload = frameNumber >>> (UTF8_PAYLOAD_BITS * (bytes - 1)) & ((1L << leadingBits) - 1);
+
+        writer.writeBits(BITS_PER_BYTE, leadingMarker | leadingPayload);
+
+        for (int i = bytes - 2; i >= 0; i--) {
+            writer.writeBits(BITS_PER_BYTE, UTF8_CONTINUATION | frameNumber >>> (UTF8_PAYLOAD_BITS * i) & ((1 << UTF8_PAYLOAD_BITS) - 1));
+        }
+    }
+
+    private static void writeSubframe(final FlacBitWriter writer, final int[] samples, final int bitsPerSample) {
+        final int count = samples.length;
+
+        boolean isConstant = true;
+        for (int i = 1; i < count && isConstant; i++) {
+            isConstant = samples[i] == samples[0];
+        }
+
+        if (isConstant) {
+            writer.writeBits(BITS_PER_BYTE, SUBFRAME_CONSTANT << 1);
+            writer.writeBits(bitsPerSample, samples[0]);
+            return;
+        }
+
+        final int order = getBestOrder(samples);
+        final int[] residual = getResidual(samples, order);
+        final RicePartitioning partitioning = RicePartitioning.choose(residual, count, order);
+
+        final long fixedBits = (long) order * bitsPerSample + partitioning.getBits();
+        final long verbatimBits = (long) count * bitsPerSample;
+
+        if (fixedBits >= verbatimBits) {
+            writer.writeBits(BITS_PER_BYTE, SUBFRAME_VERBATIM << 1);
+            for (int sample : samples) {
+                writer.writeBits(bitsPerSample, sample);
+            }
+            return;
+        }
+
+        writer.writeBits(BITS_PER_BYTE, (SUBFRAME_FIXED | order) << 1);
+        for (int i = 0; i < order; i++) {
+            writer.writeBits(bitsPerSample, samples[i]);
+        }
+
+        partitioning.write(writer, residual, count, order);
+    }
+
+    /**
+     * @param samples the samples of a channel
+     * @return a rough number of bits needed to code them
+     */
+    private static long estimateCost(final int[] samples) {
+        final long[] sums = getResidualSums(samples);
+
+        long best = Long.MAX_VALUE;
+        for (long sum : sums) {
+            best = Math.min(best, sum);
+        }
+
+        return best;
+    }
+
+    private static int getBestOrder(final int[] samples) {
+        final long[] sums = getResidualSums(samples);
+
+        int best = 0;
+        for (int order = 1; order < sums.length; order++) {
+            if (sums[order] < sums[best]) {
+                best = order;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * @param samples the samples of a channel
+     * @return the sum of the absolute residuals of each fixed predictor
+     *         that can be used for this many samples
+     */
+    private static long[] getResidualSums(final int[] samples) {
+        final int maxOrder = Math.min(MAX_FIXED_ORDER, samples.length - 1);
+        final long[] sums = new long[Math.max(maxOrder, 0) + 1];
+
+        // Each order is the difference of the previous one, and the sums
+        // skip the same warm-up samples so they can be compared
+        final long[] difference = new long[samples.length];
+        for (int i = 0; i < samples.length; i++) {
+            difference[i] = samples[i];
+        }
+
+        for (int order = 0; order < sums.length; order++) {
+            for (int i = MAX_FIXED_ORDER; i < samples.length; i++) {
+                sums[order] += Math.abs(difference[i]);
+            }
+
+            for (int i = samples.length - 1; i > order; i--) {
+                difference[i] -= difference[i - 1];
+            }
+        }
+
+        return sums;
+    }
+
+    /**
+     * Computes the residual of a fixed predictor, which is the difference
+     * of the samples taken {@code order} times.
+     * @param samples the samples of a channel
+     * @param order the order of the predictor
+     * @return the residual, of which the first {@code order} values are unused
+     */
+    private static int[] getResidual(final int[] samples, final int order) {
+        final int[] residual = samples.clone();
+
+        for (int pass = 0; pass < order; pass++) {
+            for (int i = samples.length - 1; i > pass; i--) {
+                residual[i] -= residual[i - 1];
+            }
+        }
+
+        return residual;
+    }
+
+    /**
+     * How a residual is split into partitions, each with its own Rice
+     * parameter.
+     */
+    private static final class RicePartitioning {
+
+        private final int partitionOrder;
+        private final int[] parameters;
+        private final long bits;
+
+        private RicePartitioning(final int partitionOrder, final int[] parameters, final long bits) {
+            this.partitionOrder = partitionOrder;
+            this.parameters = parameters;
+            this.bits = bits;
+        }
+
+        long getBits() {
+            return bits;
+        }
+
+        static RicePartitioning choose(final int[] residual, final int count, final int order) {
+            RicePartitioning best = null;
+
+            for (int partitionOrder = 0; partitionOrder <= MAX_PARTITION_ORDER; partitionOrder++) {
+                final int partitions = 1 << partitionOrder;
+
+                // Every partition must hold the same number of samples, and
+                // the first one must hold more than the warm-up samples
+                if (count % partitions != 0 || count / partitions <= order) {
+                    break;
+                }
+
+                final int partitionSize = count / partitions;
+                final int[] parameters = new int[partitions];
+                long bits = WIDTH_2 + WIDTH_4;
+
+                for (int partition = 0; partition < partitions; partition++) {
+                    final int start = partition == 0 ? order : partition * partitionSize;
+                    final int end = (partition + 1) * partitionSize;
+
+                    long sum = 0;
+                    for (int i = start; i < end; i++) {
+                        sum += residual[i] >= 0 ? (long) residual[i] << 1 : ((long) -residual[i] << 1) - 1;
+                    }
+
+                    final int samples = end - start;
+
+                    int bestParameter = 0;
+                    long bestBits = Long.MAX_VALUE;
+                    for (int parameter = 0; parameter <= MAX_RICE2_PARAMETER; parameter++) {
+                        final long candidate = (long) samples * (parameter + 1) + (sum >>> parameter);
+                        if (candidate < bestBits) {
+                            bestBits = candidate;
+                            bestParameter = parameter;
+                        }
+                    }
+
+                    parameters[partition] = bestParameter;
+                    bits += WIDTH_5 + bestBits;
+                }
+
+                if (best == null || bits < best.bits) {
+                    best = new RicePartitioning(partitionOrder, parameters, bits);
+                }
+            }
+
+            return best;
+        }
+
+        void write(final FlacBitWriter writer, final int[] residual, final int count, final int order) {
+            boolean isRice2 = false;
+            for (int parameter : parameters) {
+                isRice2 |= parameter > MAX_RICE_PARAMETER;
+            }
+
+            writer.writeBits(WIDTH_2, isRice2 ? RESIDUAL_RICE2 : RESIDUAL_RICE);
+            writer.writeBits(WIDTH_4, partitionOrder);
+
+            final int partitionSize = count >> partitionOrder;
+
+            for (int partition = 0; partition < parameters.length; partition++) {
+                writer.writeBits(isRice2 ? WIDTH_5 : WIDTH_4, parameters[partition]);
+
+                final int start = partition == 0 ? order : partition * partitionSize;
+                final int end = (partition + 1) * partitionSize;
+
+                for (int i = start; i < end; i++) {
+                    writer.writeRice(parameters[partition], residual[i]);
+                }
+            }
+        }
+
+    }
+
+    private static int crc8(final FlacBitWriter writer, final int length) {
+        int crc = 0;
+
+        for (int i = 0; i < length; i++) {
+            crc ^= writer.getByte(i);
+            for (int bit = 0; bit < BITS_PER_BYTE; bit++) {
+                crc = (crc & CRC8_HIGH_BIT) != 0 ? (crc << 1) ^ CRC8_POLYNOMIAL : crc << 1;
+            }
+            crc &= BYTE_MASK;
+        }
+
+        return crc;
+    }
+
+    private static int crc16(final FlacBitWriter writer, final int length) {
+        int crc = 0;
+
+        for (int i = 0; i < length; i++) {
+            crc ^= writer.getByte(i) << BITS_PER_BYTE;
+            for (int bit = 0; bit < BITS_PER_BYTE; bit++) {
+                crc = (crc & (1 << (WIDTH_16 - 1))) != 0 ? (crc << 1) ^ CRC16_POLYNOMIAL : crc << 1;
+            }
+            crc &= SHORT_MASK;
+        }
+
+        return crc;
+    }
+
+}
@@ -0,0 +1,196 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Component;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Compresses WAV files to FLAC on the way to MMFT, uploading them with a
+ * {@code .flac} extension instead.  Other files are uploaded as they are.
+ *
+ * <p>The file is streamed: a writer thread per file reads runs of samples
+ * and hands them to a pool with a thread per core, which encodes runs of
+ * different files, or of the same file, in parallel.  The encoded runs are
+ * written in order to a pipe the upload reads from, so neither the WAV nor
+ * the FLAC file is ever held in memory as a whole.
+ *
+ * <p>Only integer PCM WAV files are supported.  Other WAV files, such as
+ * those in mu-law, fail to transfer.  Chunks of the WAV file other than
+ * the samples, such as {@code LIST} metadata, are not kept.
+ */
+@Component
+@Slf4j
+public class FlacTransform implements PayloadTransform {
+
+    public static final String SOURCE_EXTENSION = ".wav";
+    public static final String TARGET_EXTENSION = ".flac";
+
+    /** The number of samples per frame, the default of the reference encoder. */
+    public static final int BLOCK_SIZE = 4096;
+
+    /** The number of frames encoded by each task. */
+    public static final int FRAMES_PER_TASK = 16;
+
+    /** The number of tasks per file queued or running at once. */
+    public static final int TASKS_IN_FLIGHT_PER_FILE = 4;
+
+    public static final int READ_BUFFER_SIZE = 64 * 1024;
+    public static final int PIPE_BUFFER_SIZE = 1024 * 1024;
+
+    private final ExecutorService encoderService = Executors.newFixedThreadPool(
+        Runtime.getRuntime().availableProcessors(),
+        new ThreadFactoryBuilder()
+            .setNameFormat("flac-encoder-%d")
+            .setDaemon(true)
+            .build()
+    );
+
+    private final ExecutorService writerService = Executors.newCachedThreadPool(
+        new ThreadFactoryBuilder()
+            .setNameFormat("flac-writer-%d")
+            .setDaemon(true)
+            .build()
+    );
+
+    @Override
+    public String getTargetName(final String filename) {
+        if (!StringUtils.endsWithIgnoreCase(filename, SOURCE_EXTENSION)) {
+            return filename;
+        }
+
+        return filename.substring(0, filename.length() - SOURCE_EXTENSION.length()) + TARGET_EXTENSION;
+    }
+
+    @Override
+    public TransferPayload apply(final String filename, final TransferPayload payload) {
+        if (!StringUtils.endsWithIgnoreCase(filename, SOURCE_EXTENSION)) {
+            return payload;
+        }
+
+        final StreamingPipe pipe = new StreamingPipe(PIPE_BUFFER_SIZE);
+
+        try {
+            writerService.execute(() -> {
+                try (TransferPayload source = payload; OutputStream outputStream = pipe.getOutputStream()) {
+                    encode(filename, source.getInputStream(), outputStream);
+                } catch (Throwable e) {
+                    pipe.fail(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            try {
+                payload.close();
+            } catch (IOException closeException) {
+                e.addSuppressed(closeException);
+            }
+            throw e;
+        }
+
+        return new StreamPayload(pipe.getInputStream());
+    }
+
+    /**
+     * Encodes a WAV file as FLAC.
+     * @param filename the name of the file, for logging
+     * @param wavStream the WAV file
+     * @param flacStream where to write the FLAC file
+     * @throws IOException if the file cannot be read, is not supported, or
+     *         the FLAC file cannot be written
+     */
+    private void encode(
+            final String filename,
+            final InputStream wavStream,
+            final OutputStream flacStream
+    ) throws IOException {
+        final InputStream inputStream = new BufferedInputStream(wavStream, READ_BUFFER_SIZE);
+
+        final WavFormat format;
+        try {
+            format = WavFormat.read(inputStream);
+        } catch (IOException e) {
+            throw new IOException(String.format("Unable to compress %s: %s", filename, e.getMessage()), e);
+        }
+
+        FlacEncoder.writeStreamHeader(flacStream, format, BLOCK_SIZE);
+
+        final byte[] buffer = new byte[BLOCK_SIZE * FRAMES_PER_TASK * format.getBlockAlign()];
+        final Deque<Future<byte[]>> tasks = new ArrayDeque<>();
+
+        long remaining = format.getDataLength() == WavFormat.UNKNOWN_LENGTH
+            ? Long.MAX_VALUE
+            : format.getDataLength();
+        long frameNumber = 0;
+
+        try {
+            while (remaining > 0) {
+                final int length = inputStream.readNBytes(buffer, 0, (int) Math.min(buffer.length, remaining));
+
+                if (length > 0) {
+                    final int samples = length / format.getBlockAlign();
+                    final byte[] data = buffer.clone();
+                    final long firstFrame = frameNumber;
+
+                    tasks.add(encoderService.submit(() -> {
+                        return FlacEncoder.encodeFrames(data, samples, firstFrame, format, BLOCK_SIZE);
+                    }));
+
+                    frameNumber += (samples + BLOCK_SIZE - 1) / BLOCK_SIZE;
+                    remaining -= length;
+                }
+
+                // Every run but the last is whole, so frames keep the same size
+                if (length < buffer.length) {
+                    if (format.getDataLength() != WavFormat.UNKNOWN_LENGTH && remaining > 0) {
+                        throw new EOFException(String.format("%s is shorter than its WAV header says", filename));
+                    }
+                    break;
+                }
+
+                while (tasks.size() >= TASKS_IN_FLIGHT_PER_FILE) {
+                    flacStream.write(tasks.remove().get());
+                }
+            }
+
+            while (!tasks.isEmpty()) {
+                flacStream.write(tasks.remove().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(String.format("Interrupted while compressing %s", filename));
+        } catch (ExecutionException e) {
+            throw new IOException(String.format("Unable to compress %s", filename), e.getCause());
+        } finally {
+            tasks.forEach(task -> task.cancel(true));
+        }
+
+        LOGGER.debug("Compressed {} into {} FLAC frame(s)", filename, frameNumber);
+    }
+
+    /**
+     * Stops the threads used for encoding.
+     */
+    @PreDestroy
+    public void shutdown() {
+        writerService.shutdownNow();
+        encoderService.shutdownNow();
+    }
+
+}
@@ -1,23 +1,37 @@
 package com.medallia.references.speechapi.transfer;
 
-import java.io.PrintStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import org.apache.commons.lang3.time.DurationFormatUtils;
 
-import com.hrakaroo.glob.GlobPattern;
-import com.hrakaroo.glob.MatchingEngine;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.medallia.references.speechapi.concurrency.ConcurrencyLimiter;
+import com.medallia.references.speechapi.concurrency.Outcome;
+import com.medallia.references.speechapi.concurrency.WorkerExecutors;
 import com.medallia.references.speechapi.exceptions.ExecutionNotFinishedException;
+import com.medallia.references.speechapi.metrics.MetricNames;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
 import me.tongfei.progressbar.ProgressBar;
 import me.tongfei.progressbar.ProgressBarBuilder;
 import me.tongfei.progressbar.ProgressBarStyle;
@@ -27,109 +41,538 @@ import me.tongfei.progressbar.ProgressBarStyle;
  * Media File Transfer server.  Subclasses provide concrete implementations
  * for getting the list of files, the file data, etc.
  */
+@Slf4j
 public abstract class GenericProcessStrategy {
 
     public static final int MILLIS_PER_SEC = 1000;
+    public static final int LISTING_QUEUE_SIZE = 10000;
+    public static final int PENDING_FILES_PER_WORKER = 2;
+
+    /** Far enough away to never be reached, yet safe to subtract from. */
+    public static final long UNBOUNDED_NANOS = Long.MAX_VALUE / 2;
 
     private final MmftService mmftService;
 
-    protected GenericProcessStrategy(final MmftService mmftService) {
+    private final MeterRegistry meterRegistry;
+
+    protected GenericProcessStrategy(final MmftService mmftService, final MeterRegistry meterRegistry) {
         this.mmftService = mmftService;
+        this.meterRegistry = meterRegistry;
     }
 
     /**
      * The entry point of the processing strategy.
-     * @param threads the number of workers to use
-     * @param timeout the maximum duration for the execution
+     * @param settings the settings that control the execution
      * @param source the options related to the file source
      * @param mmft the options related to MMFT
-     * @param globPattern the glob pattern to use for filtering source files
-     * @param filenameStream the stream for printing processed filenames
      */
     final void process(
-            final Integer threads,
-            final Duration timeout,
+            final TransferSettings settings,
             final SourceOptions source,
-            final MmftOptions mmft,
-            final String globPattern,
-            final PrintStream filenameStream
+            final MmftOptions mmft
+    ) {
+        try {
+            transfer(settings, source, mmft);
+        } finally {
+            closeSource(source);
+        }
+    }
+
+    private void transfer(
+            final TransferSettings settings,
+            final SourceOptions source,
+            final MmftOptions mmft
     ) {
-        // Step 1: Get the list of filenames from the source
+        final Duration timeout = settings.getTimeout();
+        final long deadline = System.nanoTime() + (isContinuous(source) ? UNBOUNDED_NANOS : timeout.toNanos());
+
+        // Step 1: Setup a progress bar to help show progress
+        final ProgressBar progressBar = getProgressBar();
+
+        // Step 2: List the files from the source on a separate thread, so
+        // transfers can start while the listing is still in progress
         System.out.println("Getting a list of filenames from the source");
 
-        final MatchingEngine globMatchingEngine = GlobPattern.compile(globPattern);
+        final SourceFileQueue files = new SourceFileQueue(LISTING_QUEUE_SIZE);
 
-        final Collection<String> filenames = getFilenames(source)
-            .stream()
-            .filter(filename -> globMatchingEngine.matches(filename))
-            .collect(Collectors.toSet());
+        final TransferJournal journal = settings.getJournal();
+        final MmftBucketIndex bucketIndex = settings.getBucketIndex();
 
-        System.out.println(String.format("Found %d file(s) to process", filenames.size()));
+        final AtomicInteger inJournal = new AtomicInteger();
+        final AtomicInteger unchanged = new AtomicInteger();
 
-        // Step 2: Setup a progress bar to help show progress
-        final ProgressBar progressBar = getProgressBar();
-        progressBar.maxHint(filenames.size());
+        final ExecutorService listingService = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder()
+                .setNameFormat("source-listing-%d")
+                .setDaemon(true)
+                .build()
+        );
 
-        // Step 3: Create a thread pool for parallel execution
-        final ExecutorService executorService = Executors.newWorkStealingPool(threads);
+        // Unless files go in the order they are found, they are held back
+        // until the listing is complete, then sorted
+        final boolean isSorted = settings.getOrder() != TransferOrder.LISTING && canSort(source);
+        final List<SourceFile> heldBack = Collections.synchronizedList(new ArrayList<>());
 
-        // Step 4: Submit a job to the thread pool for each filename
-        final List<Future<Void>> tasks = new ArrayList<>(filenames.size());
+        listingService.execute(() -> {
+            try {
+                // Sources only hand over the files the filter selects.  A
+                // continuous source times each of its passes itself.
+                final Consumer<SourceFile> consumer = file -> {
+                    // Files transferred by an earlier run, or already in
+                    // MMFT, are skipped before any of their bytes are read
+                    final String key = mmftService.getKey(getTargetName(file, settings), mmft);
 
-        for (String filename : filenames) {
-            final Future<Void> task = executorService.submit(() -> {
-                mmftService.upload(
-                    filename,
-                    getBytesFromSource(filename, source),
-                    mmft
-                );
+                    if (journal != null && journal.contains(key)) {
+                        inJournal.incrementAndGet();
+                        onFileSkipped(file, source);
+                        return;
+                    }
 
-                filenameStream.println(filename);
+                    if (settings.getSkipUnchanged() == SkipUnchanged.SIZE && bucketIndex.hasSameSize(key, file.getSize())) {
+                        unchanged.incrementAndGet();
+                        onFileSkipped(file, source);
+                        return;
+                    }
 
-                progressBar.stepBy(1);
+                    if (isSorted) {
+                        heldBack.add(file);
+                    } else {
+                        progressBar.maxHint(files.put(file));
+                    }
+                };
 
-                return null;
-            });
+                if (isContinuous(source)) {
+                    listFiles(source, settings.getFilter(), consumer);
+                } else {
+                    timeListing(() -> listFiles(source, settings.getFilter(), consumer));
+                }
 
-            tasks.add(task);
+                if (isSorted) {
+                    progressBar.maxHint(heldBack.size());
+                    settings.getOrder().sort(heldBack).forEach(files::put);
+                }
+
+                files.finish(null);
+            } catch (RuntimeException e) {
+                files.finish(e);
+            }
+        });
+
+        // Step 3: Transfer the files, either with a blocking worker per
+        // file or with non-blocking uploads
+        try {
+            transferFromQueue(files, deadline, settings, source, mmft, progressBar, unchanged);
+        } finally {
+            listingService.shutdownNow();
+            progressBar.close();
+        }
+
+        System.out.println(String.format("Processed %d file(s)", files.getCount()));
+
+        if (journal != null) {
+            System.out.println(String.format("Skipped %d file(s) already in the journal", inJournal.get()));
+        }
+
+        if (settings.getSkipUnchanged() != SkipUnchanged.NONE) {
+            System.out.println(String.format("Skipped %d unchanged file(s) already in MMFT", unchanged.get()));
         }
+    }
+
+    /**
+     * Starts a transfer for each file taken from the queue.  The number of
+     * transfers started but not yet finished is bounded, so that taking
+     * from the queue, and in turn the listing, waits for the transfers.
+     * @param files the files to transfer
+     * @param deadline the {@link System#nanoTime()} by which to finish
+     * @param settings the settings that control the execution
+     * @param source the options related to the file source
+     * @param mmft the options related to MMFT
+     * @param progressBar the progress bar to update
+     * @param unchanged counts the files found to be unchanged
+     */
+    private void transferFromQueue(
+            final SourceFileQueue files,
+            final long deadline,
+            final TransferSettings settings,
+            final SourceOptions source,
+            final MmftOptions mmft,
+            final ProgressBar progressBar,
+            final AtomicInteger unchanged
+    ) {
+        final Duration timeout = settings.getTimeout();
+
+        // With workers, keep a few files queued per worker so none of them
+        // sit idle; with non-blocking uploads, the limit is the bound.  An
+        // adaptive limit only counts uploads actually running, so their
+        // latency is not inflated by waiting for a worker.  Virtual
+        // threads start every file at once, so none are queued.
+        final int maxPending;
+
+        if (settings.isAsync()) {
+            maxPending = settings.getMaxInFlight();
+        } else if (settings.isAdaptive() || settings.isVirtualThreads()) {
+            maxPending = settings.getThreads();
+        } else {
+            maxPending = settings.getThreads() * PENDING_FILES_PER_WORKER;
+        }
+
+        // Create a thread pool for parallel execution.  Non-blocking
+        // uploads only use it to read from the source.
+        final ExecutorService executorService = WorkerExecutors.create(settings.isVirtualThreads(), settings.getThreads());
+
+        final ConcurrencyLimiter limiter = ConcurrencyLimiter.create(settings.isAdaptive(), maxPending);
+        mmftService.reportThrottlingTo(limiter);
+
+        // Sizes come from the listing, so files are only started while the
+        // bytes they bring into flight fit in the budget
+        final ByteBudget budget = settings.getMaxBytesInFlight() > 0
+            ? new ByteBudget(settings.getMaxBytesInFlight())
+            : null;
+
+        final HedgedUploader uploader = new HedgedUploader(
+            settings.getHedgePercentile(),
+            settings.getDeadlineMultiplier(),
+            executorService,
+            limiter,
+            budget
+        );
+
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        final List<Gauge> gauges = List.of(
+            Gauge.builder(MetricNames.TRANSFER_QUEUED, files, SourceFileQueue::size)
+                .description("Files listed and waiting to be transferred")
+                .strongReference(true)
+                .register(meterRegistry),
+            Gauge.builder(MetricNames.TRANSFER_IN_FLIGHT, limiter, ConcurrencyLimiter::getInFlight)
+                .description("Files being transferred")
+                .strongReference(true)
+                .register(meterRegistry),
+            Gauge.builder(MetricNames.TRANSFER_BYTES_IN_FLIGHT, () -> budget != null ? budget.getInUse() : 0)
+                .baseUnit(MetricNames.BYTES)
+                .description("Size of the files being transferred, if bounded by --max-bytes-in-flight")
+                .strongReference(true)
+                .register(meterRegistry)
+        );
 
         try {
-            // Trigger a shutdown, which is blocked until the worker threads
-            // terminate or the executor service interrupts due to a timeout.
-            executorService.shutdown();
-
-            // Setup the timeout
-            final boolean finished = executorService.awaitTermination(
-                timeout.getSeconds(),
-                TimeUnit.SECONDS
-            );
+            Optional<SourceFile> next = files.take(deadline);
+
+            while (next.isPresent()) {
+                final SourceFile file = next.get();
+
+                if (!limiter.acquire(deadline)) {
+                    throw getTimeoutException(timeout);
+                }
+
+                final long budgeted = budget != null ? budget.acquire(file.getSize(), deadline) : 0;
+
+                final String key = mmftService.getKey(getTargetName(file, settings), mmft);
+
+                final long startTime = System.nanoTime();
+
+                // Files of the same size as their MMFT copy are only read
+                // to compare checksums, which is cheaper than uploading.
+                // The size of a transformed file is only known once it is
+                // transformed, so any file with a copy is read then.
+                final CompletableFuture<Boolean> isUnchanged =
+                    settings.getSkipUnchanged() == SkipUnchanged.ETAG
+                        && (settings.getTransform() != null
+                            ? settings.getBucketIndex().get(key) != null
+                            : settings.getBucketIndex().hasSameSize(key, file.getSize()))
+                    ? CompletableFuture.supplyAsync(() -> hasSameETag(file, key, settings, source, mmft), executorService)
+                    : CompletableFuture.completedFuture(false);
+
+                final CompletableFuture<Boolean> task = isUnchanged.thenCompose(isSkipped -> {
+                    if (isSkipped) {
+                        unchanged.incrementAndGet();
+                        return CompletableFuture.completedFuture(false);
+                    }
+
+                    final CompletableFuture<UploadResult> upload = uploader.upload(file, (attempt, executor) -> {
+                        return settings.isAsync()
+                            ? transferAsync(file, settings, source, mmft, attempt, executor)
+                            : CompletableFuture.supplyAsync(() -> transferWithWorker(file, settings, source, mmft, attempt), executor);
+                    });
+
+                    return upload.thenApply(result -> {
+                        onTransferred(file, key, result, settings);
+                        return true;
+                    });
+                });
 
-            if (!finished) {
-                throw new ExecutionNotFinishedException(String.format(
-                    "Process exceeded max allowed time of %s",
-                    DurationFormatUtils.formatDuration(
-                        timeout.getSeconds() * MILLIS_PER_SEC,
-                        "dHms"
-                    )
-                ));
+                task.whenComplete((isUploaded, error) -> {
+                    getUploadTimer(error == null ? isUploaded : null).record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+
+                    if (error == null) {
+                        progressBar.stepBy(1);
+                    } else {
+                        // A continuous run may never end to report it
+                        if (isContinuous(source)) {
+                            LOGGER.warn("Transfer of {} failed", file.getName(), error);
+                        } else {
+                            LOGGER.debug("Transfer of {} failed", file.getName(), error);
+                        }
+
+                        failure.compareAndSet(null, error);
+                    }
+
+                    onTransferFinished(file, source, error == null);
+
+                    if (budget != null) {
+                        budget.release(budgeted);
+                    }
+
+                    // Larger files take more requests, so their latency is
+                    // compared per part
+                    limiter.release(
+                        error == null && !isUploaded ? Outcome.SKIPPED : Outcome.of(error),
+                        System.nanoTime() - startTime,
+                        getPartCount(file, mmft)
+                    );
+                });
+
+                next = files.take(deadline);
             }
+
+            // Wait for the transfers still in progress
+            if (!limiter.awaitIdle(deadline)) {
+                throw getTimeoutException(timeout);
+            }
+        } catch (TimeoutException e) {
+            throw getTimeoutException(timeout);
         } catch (InterruptedException e) {
-            executorService.shutdownNow();
             throw new ExecutionNotFinishedException("The process was interrupted", e);
         } finally {
-            progressBar.close();
+            executorService.shutdownNow();
+            uploader.shutdown();
+            gauges.forEach(meterRegistry::remove);
+        }
 
-            tasks.forEach(task -> {
-                try {
-                    // Calling "get()" will propagate the thread's thrown exceptions.
-                    // Do this at the end to not block the parallel executions.
-                    task.get();
-                } catch (InterruptedException | ExecutionException e) {
-                    final String errorMessage = String.format("There was some unexpected problem: %s", e.getMessage());
-                    throw new ExecutionNotFinishedException(errorMessage, e);
-                }
+        if (settings.isAdaptive()) {
+            System.out.println(String.format("Finished with %d transfer(s) allowed in flight", limiter.getLimit()));
+        }
+
+        if (uploader.isHedging()) {
+            System.out.println(String.format(
+                "Started a second attempt for %d transfer(s), %d of which finished first, and skipped %d for lack of room",
+                uploader.getHedged(),
+                uploader.getHedgesWon(),
+                uploader.getHedgesSkipped()
+            ));
+        }
+
+        if (uploader.hasDeadlines()) {
+            System.out.println(String.format("%d transfer(s) did not finish within their deadline", uploader.getDeadlinesExceeded()));
+        }
+
+        if (failure.get() != null) {
+            final Throwable cause = failure.get() instanceof CompletionException
+                ? failure.get().getCause()
+                : failure.get();
+
+            final String errorMessage = String.format("There was some unexpected problem: %s", cause);
+            throw new ExecutionNotFinishedException(errorMessage, cause);
+        }
+    }
+
+    /**
+     * Returns the timer for files that finished in the given way.
+     * @param isUploaded whether the file was uploaded rather than found to
+     *                   be unchanged, or null if its transfer failed
+     * @return the timer
+     */
+    private Timer getUploadTimer(final Boolean isUploaded) {
+        final String outcome;
+
+        if (isUploaded == null) {
+            outcome = MetricNames.OUTCOME_FAILURE;
+        } else {
+            outcome = isUploaded ? MetricNames.OUTCOME_TRANSFERRED : MetricNames.OUTCOME_SKIPPED;
+        }
+
+        return Timer.builder(MetricNames.TRANSFER_UPLOAD)
+            .description("Time from starting the transfer of a file until it finished")
+            .tag(MetricNames.TAG_OUTCOME, outcome)
+            .register(meterRegistry);
+    }
+
+    private static long getPartCount(final SourceFile file, final MmftOptions mmft) {
+        return Math.max((file.getSize() + mmft.getPartSize() - 1) / mmft.getPartSize(), 1);
+    }
+
+    /**
+     * Records a file that was transferred.
+     * @param file the file
+     * @param key the MMFT key of the file
+     * @param result the ETag and checksum of the uploaded object
+     * @param settings the settings that control the execution
+     */
+    private void onTransferred(
+            final SourceFile file,
+            final String key,
+            final UploadResult result,
+            final TransferSettings settings
+    ) {
+        // The verified checksum is kept next to the name, so the output
+        // can be checked against the files later
+        settings.getFilenameStream().println(
+            result.getChecksum() != null
+                ? String.format("%s\t%s", file.getName(), result.getChecksum())
+                : file.getName()
+        );
+
+        if (settings.getJournal() != null) {
+            settings.getJournal().record(key);
+        }
+
+        // The size of a transformed file is not known, so it never
+        // matches for --skip-unchanged=SIZE
+        if (settings.getBucketIndex() != null) {
+            settings.getBucketIndex().put(
+                key,
+                settings.getTransform() != null ? TransferPayload.UNKNOWN_LENGTH : file.getSize(),
+                result.getETag()
+            );
+        }
+    }
+
+    /**
+     * Returns the name a file is uploaded under, which differs from its
+     * name in the source when it is transformed.
+     * @param file the file
+     * @param settings the settings that control the execution
+     * @return the name to derive the MMFT key from
+     */
+    private static String getTargetName(final SourceFile file, final TransferSettings settings) {
+        return settings.getTransform() != null
+            ? settings.getTransform().getTargetName(file.getName())
+            : file.getName();
+    }
+
+    /**
+     * Gets the contents of a file from the source, transformed if a
+     * transform is set.
+     * @param file the file
+     * @param settings the settings that control the execution
+     * @param source the options related to the file source
+     * @return the contents to upload
+     */
+    private TransferPayload getTransformedPayload(
+            final SourceFile file,
+            final TransferSettings settings,
+            final SourceOptions source
+    ) {
+        final Counter bytesIn = Counter.builder(MetricNames.TRANSFER_BYTES_IN)
+            .baseUnit(MetricNames.BYTES)
+            .description("Bytes read from the source")
+            .register(meterRegistry);
+
+        final TransferPayload data = new CountingPayload(getPayloadFromSource(file, source), bytesIn);
+
+        return settings.getTransform() != null
+            ? settings.getTransform().apply(file.getName(), data)
+            : data;
+    }
+
+    /**
+     * Reads a file to check whether it matches the object in MMFT.
+     * @param file the file
+     * @param key the MMFT key of the file
+     * @param settings the settings that control the execution
+     * @param source the options related to the file source
+     * @param mmft the options related to MMFT
+     * @return true if the ETags match
+     */
+    private boolean hasSameETag(
+            final SourceFile file,
+            final String key,
+            final TransferSettings settings,
+            final SourceOptions source,
+            final MmftOptions mmft
+    ) {
+        try (TransferPayload data = getTransformedPayload(file, settings, source)) {
+            final String eTag = mmftService.computeETag(data, mmft);
+
+            return eTag.equals(settings.getBucketIndex().get(key).getETag());
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Unable to read %s", file.getName()), e);
+        }
+    }
+
+    /**
+     * Transfers a file on the current thread, which handles it from start
+     * to finish.
+     * @param file the file to transfer
+     * @param settings the settings that control the execution
+     * @param source the options related to the file source
+     * @param mmft the options related to MMFT
+     * @param attempt the attempt this transfer is
+     * @return the ETag and checksum of the uploaded object
+     */
+    private UploadResult transferWithWorker(
+            final SourceFile file,
+            final TransferSettings settings,
+            final SourceOptions source,
+            final MmftOptions mmft,
+            final UploadAttempt attempt
+    ) {
+        return attempt.run(() -> {
+            try (TransferPayload data = attempt.open(getTransformedPayload(file, settings, source))) {
+                return mmftService.upload(
+                    getTargetName(file, settings),
+                    data,
+                    mmft
+                );
+            } catch (IOException e) {
+                throw new UncheckedIOException(String.format("Unable to close %s", file.getName()), e);
+            }
+        });
+    }
+
+    /**
+     * Transfers a file using a non-blocking upload.  The number of
+     * uploads in flight is bounded by a permit count rather than by a
+     * thread count; the workers are only used to read from the source.
+     * @param file the file to transfer
+     * @param settings the settings that control the execution
+     * @param source the options related to the file source
+     * @param mmft the options related to MMFT
+     * @param attempt the attempt this transfer is
+     * @param readerService the workers that read from the source
+     * @return completes with the ETag and checksum of the uploaded object
+     */
+    private CompletableFuture<UploadResult> transferAsync(
+            final SourceFile file,
+            final TransferSettings settings,
+            final SourceOptions source,
+            final MmftOptions mmft,
+            final UploadAttempt attempt,
+            final Executor readerService
+    ) {
+        return CompletableFuture
+            .supplyAsync(() -> attempt.open(getTransformedPayload(file, settings, source)), readerService)
+            .thenCompose(data -> {
+                return mmftService.uploadAsync(getTargetName(file, settings), data, mmft, readerService, attempt.getCancellation())
+                    .whenComplete((result, error) -> closeQuietly(file.getName(), data));
             });
+    }
+
+    private static ExecutionNotFinishedException getTimeoutException(final Duration timeout) {
+        return new ExecutionNotFinishedException(String.format(
+            "Process exceeded max allowed time of %s",
+            DurationFormatUtils.formatDuration(
+                timeout.getSeconds() * MILLIS_PER_SEC,
+                "dHms"
+            )
+        ));
+    }
+
+    private static void closeQuietly(final String filename, final TransferPayload data) {
+        try {
+            data.close();
+        } catch (IOException e) {
+            LOGGER.warn("Unable to close {}", filename, e);
         }
     }
 
@@ -141,10 +584,102 @@ public abstract class GenericProcessStrategy {
             .build();
     }
 
-    protected abstract Collection<String> getFilenames(SourceOptions source);
+    /**
+     * @return the registry to record the metrics of the transfer in
+     */
+    protected MeterRegistry getMeterRegistry() {
+        return meterRegistry;
+    }
+
+    /**
+     * Lists the source, timing how long it took.  Continuous sources that
+     * list the source again and again call this for each pass over it.
+     * @param listing lists the source
+     */
+    protected void timeListing(final Runnable listing) {
+        final Timer.Sample sample = Timer.start(meterRegistry);
+
+        String outcome = MetricNames.OUTCOME_FAILURE;
+        try {
+            listing.run();
+            outcome = MetricNames.OUTCOME_SUCCESS;
+        } finally {
+            sample.stop(Timer.builder(MetricNames.TRANSFER_LISTING)
+                .description("Time taken to list the source")
+                .tag(MetricNames.TAG_OUTCOME, outcome)
+                .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Releases whatever the strategy holds on to for the given source,
+     * such as open connections.  Called once the process has finished,
+     * whether it succeeded or not.
+     * @param source the options related to the file source
+     */
+    protected void closeSource(final SourceOptions source) {
+        // Nothing to release by default
+    }
+
+    /**
+     * Whether the listing of the source goes on until the process is
+     * stopped, handing over files as they appear.  Continuous sources are
+     * not bound by the timeout, and their files are never held back to be
+     * sorted.
+     * @param source the options related to the file source
+     * @return true if the listing never finishes on its own
+     */
+    protected boolean isContinuous(final SourceOptions source) {
+        return false;
+    }
+
+    /**
+     * Whether the files of the source can be held back until the listing
+     * is complete, to be sorted.  By default, only the listing of a
+     * continuous source never completes.
+     * @param source the options related to the file source
+     * @return true if the files can be sorted
+     */
+    protected boolean canSort(final SourceOptions source) {
+        return !isContinuous(source);
+    }
+
+    /**
+     * Called when a file handed over by the listing is dropped without
+     * transferring it, such as one already in the journal.
+     * @param file the file
+     * @param source the options related to the file source
+     */
+    protected void onFileSkipped(final SourceFile file, final SourceOptions source) {
+        // Nothing to record by default
+    }
+
+    /**
+     * Called once a file handed over by the listing has been dealt with,
+     * whether it was transferred, skipped or failed.
+     * @param file the file
+     * @param source the options related to the file source
+     * @param isTransferred false if the transfer failed
+     */
+    protected void onTransferFinished(final SourceFile file, final SourceOptions source, final boolean isTransferred) {
+        // Nothing to record by default
+    }
+
+    /**
+     * Lists the files in the source that the filter selects, handing each
+     * one to the consumer as soon as it is found.  The filter is matched
+     * against the path of each file relative to the folder being
+     * transferred, and is best applied while listing, so files left out
+     * are never kept.  The consumer may block while earlier files are
+     * transferred, and may be called from several threads at once.
+     * @param source the options related to the file source
+     * @param filter selects the files to hand over
+     * @param consumer receives each file
+     */
+    protected abstract void listFiles(SourceOptions source, SourceFileFilter filter, Consumer<SourceFile> consumer);
 
-    protected abstract byte[] getBytesFromSource(
-        String filename,
+    protected abstract TransferPayload getPayloadFromSource(
+        SourceFile file,
         SourceOptions source
     );
 
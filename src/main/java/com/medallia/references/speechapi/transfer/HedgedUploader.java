@@ -0,0 +1,451 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.medallia.references.speechapi.concurrency.ConcurrencyLimiter;
+import com.medallia.references.speechapi.concurrency.Outcome;
+import com.medallia.references.speechapi.exceptions.DeadlineExceededException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bounds how long the transfer of a single file may take, so a stalled
+ * upload neither holds up the whole run nor decides how long it lasts.
+ *
+ * <p>The time each file should take is estimated from the recent transfers
+ * (see {@link TransferLatencyTracker}).  Once a transfer has run past the
+ * chosen percentile of that estimate, a second attempt is started, and
+ * whichever attempt finishes first is kept while the other is aborted.
+ * Once it has run past a multiple of the median estimate, the file fails
+ * with a {@link DeadlineExceededException} and its attempts are aborted.
+ * Nothing is hedged or failed until enough transfers have completed for
+ * the estimates to be meaningful.  Either way, the transfer only completes
+ * once every attempt it started has ended, so an aborted attempt still
+ * counts against the limits of the run for as long as it runs.
+ *
+ * <p>A second attempt takes a slot from the {@link ConcurrencyLimiter} and
+ * its file's bytes from the {@link ByteBudget}, like any other transfer,
+ * and second attempts only ever take up a small share of the slots.  They
+ * are skipped rather than waited for when there is no room, so hedging
+ * never adds load beyond the limits of the run.
+ */
+@Slf4j
+public class HedgedUploader {
+
+    public static final double MEDIAN = 50.0;
+
+    /** Deadlines are never shorter than this, however fast files go. */
+    public static final Duration MIN_DEADLINE = Duration.ofSeconds(60);
+
+    /** The share of the concurrency limit that second attempts may take up. */
+    public static final double MAX_HEDGE_SHARE = 0.1;
+
+    private static final long NOT_STARTED = Long.MIN_VALUE;
+
+    private final int hedgePercentile;
+
+    private final int deadlineMultiplier;
+
+    private final ExecutorService executorService;
+
+    private final ExecutorService hedgeExecutorService;
+
+    private final ConcurrencyLimiter limiter;
+
+    private final ByteBudget budget;
+
+    private final TransferLatencyTracker latencyTracker = new TransferLatencyTracker();
+
+    private final AtomicInteger hedged = new AtomicInteger();
+
+    private final AtomicInteger hedgesWon = new AtomicInteger();
+
+    private final AtomicInteger hedgesSkipped = new AtomicInteger();
+
+    private final AtomicInteger hedgesInFlight = new AtomicInteger();
+
+    private final AtomicInteger deadlinesExceeded = new AtomicInteger();
+
+    /**
+     * Creates the uploader for a run.
+     * @param hedgePercentile the percentile after which a second attempt
+     *                        is started, or 0 to never start one
+     * @param deadlineMultiplier how many times the median a transfer may
+     *                           take, or 0 for no deadline
+     * @param executorService the workers that run first attempts
+     * @param limiter the limiter that first attempts were admitted by
+     * @param budget the bytes in flight, or null if unbounded
+     */
+    public HedgedUploader(
+            final int hedgePercentile,
+            final int deadlineMultiplier,
+            final ExecutorService executorService,
+            final ConcurrencyLimiter limiter,
+            final ByteBudget budget
+    ) {
+        this.hedgePercentile = hedgePercentile;
+        this.deadlineMultiplier = deadlineMultiplier;
+        this.executorService = executorService;
+        this.limiter = limiter;
+        this.budget = budget;
+
+        // Second attempts start while every worker may be busy, so they
+        // get threads of their own
+        this.hedgeExecutorService = isHedging()
+            ? Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder()
+                    .setNameFormat("transfer-hedge-%d")
+                    .setDaemon(true)
+                    .build()
+            )
+            : null;
+    }
+
+    /**
+     * @return whether stalled transfers get a second attempt
+     */
+    public boolean isHedging() {
+        return hedgePercentile > 0;
+    }
+
+    /**
+     * @return whether transfers fail once they run past their deadline
+     */
+    public boolean hasDeadlines() {
+        return deadlineMultiplier > 0;
+    }
+
+    /**
+     * @return the number of transfers that were given a second attempt
+     */
+    public int getHedged() {
+        return hedged.get();
+    }
+
+    /**
+     * @return the number of second attempts that finished first
+     */
+    public int getHedgesWon() {
+        return hedgesWon.get();
+    }
+
+    /**
+     * @return the number of second attempts skipped for lack of room
+     */
+    public int getHedgesSkipped() {
+        return hedgesSkipped.get();
+    }
+
+    /**
+     * @return the number of transfers that ran past their deadline
+     */
+    public int getDeadlinesExceeded() {
+        return deadlinesExceeded.get();
+    }
+
+    /**
+     * Transfers a file, hedging and bounding it as configured.  The time
+     * the transfer is given only starts once its first attempt runs, so
+     * waiting for a worker does not count against it.
+     * @param file the file to transfer
+     * @param attempts starts an attempt at the transfer on the given
+     *                 executor; it may be called twice
+     * @return completes with the result of the first attempt to succeed,
+     *         once every attempt has ended
+     */
+    public CompletableFuture<UploadResult> upload(
+            final SourceFile file,
+            final BiFunction<UploadAttempt, Executor, CompletableFuture<UploadResult>> attempts
+    ) {
+        final Upload upload = new Upload(file, attempts);
+
+        upload.start(executorService, false, () -> { });
+
+        return upload.result;
+    }
+
+    /**
+     * Takes what a second attempt at transferring the file needs, if it is
+     * available right away.
+     * @param file the file to transfer
+     * @return hands back what was taken, or empty if there is no room
+     */
+    private Optional<Runnable> reserveHedge(final SourceFile file) {
+        final int maxHedges = Math.max((int) (limiter.getLimit() * MAX_HEDGE_SHARE), 1);
+
+        if (hedgesInFlight.incrementAndGet() > maxHedges) {
+            hedgesInFlight.decrementAndGet();
+            return Optional.empty();
+        }
+
+        if (!limiter.tryAcquire()) {
+            hedgesInFlight.decrementAndGet();
+            return Optional.empty();
+        }
+
+        final long budgeted = budget != null ? budget.tryAcquire(file.getSize()) : 0;
+
+        // A second attempt says little about load, as it is only started
+        // because the first was slow, so it never adjusts the limit
+        if (budgeted == ByteBudget.NOT_GRANTED) {
+            limiter.release(Outcome.SKIPPED, 0, 1);
+            hedgesInFlight.decrementAndGet();
+            return Optional.empty();
+        }
+
+        return Optional.of(() -> {
+            if (budget != null) {
+                budget.release(budgeted);
+            }
+
+            limiter.release(Outcome.SKIPPED, 0, 1);
+            hedgesInFlight.decrementAndGet();
+        });
+    }
+
+    /**
+     * Stops the threads used for second attempts.
+     */
+    public void shutdown() {
+        if (hedgeExecutorService != null) {
+            hedgeExecutorService.shutdownNow();
+        }
+    }
+
+    /**
+     * The attempts at transferring a single file.
+     */
+    private final class Upload {
+
+        private final SourceFile file;
+
+        private final BiFunction<UploadAttempt, Executor, CompletableFuture<UploadResult>> attempts;
+
+        private final CompletableFuture<UploadResult> result = new CompletableFuture<>();
+
+        private final List<UploadAttempt> started = new ArrayList<>();
+
+        private int running = 0;
+
+        private boolean isFinished = false;
+
+        private UploadResult value;
+
+        private Throwable failure;
+
+        Upload(
+                final SourceFile file,
+                final BiFunction<UploadAttempt, Executor, CompletableFuture<UploadResult>> attempts
+        ) {
+            this.file = file;
+            this.attempts = attempts;
+        }
+
+        /**
+         * Starts an attempt, unless the transfer has already ended.
+         * @param executor where the attempt runs
+         * @param isHedge whether this is the second attempt
+         * @param onEnd called once the attempt has ended, or right away if
+         *              it is not started
+         */
+        void start(final Executor executor, final boolean isHedge, final Runnable onEnd) {
+            final UploadAttempt attempt = new UploadAttempt();
+
+            synchronized (this) {
+                if (isFinished) {
+                    onEnd.run();
+                    return;
+                }
+
+                started.add(attempt);
+                running++;
+            }
+
+            if (isHedge) {
+                hedged.incrementAndGet();
+                LOGGER.debug("Starting a second attempt at transferring {}", file.getName());
+            }
+
+            // The attempt starts once the executor first runs part of it,
+            // which may be after it has waited for a worker
+            final AtomicLong startTime = new AtomicLong(NOT_STARTED);
+
+            final Executor startingExecutor = command -> executor.execute(() -> {
+                if (startTime.compareAndSet(NOT_STARTED, System.nanoTime()) && !isHedge) {
+                    scheduleTimers();
+                }
+
+                command.run();
+            });
+
+            CompletableFuture<UploadResult> future;
+            try {
+                future = attempts.apply(attempt, startingExecutor);
+            } catch (RuntimeException e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+
+            future.whenComplete((attemptValue, error) -> {
+                onEnd.run();
+
+                if (error == null) {
+                    if (finish(attemptValue, null)) {
+                        if (startTime.get() != NOT_STARTED) {
+                            latencyTracker.record(file.getSize(), System.nanoTime() - startTime.get());
+                        }
+
+                        if (isHedge) {
+                            hedgesWon.incrementAndGet();
+                        }
+
+                        abortAll(attempt);
+                    }
+                } else {
+                    // A failed attempt only fails the transfer once no
+                    // other attempt is left that could still succeed
+                    synchronized (this) {
+                        if (running == 1) {
+                            finish(null, error);
+                        }
+                    }
+                }
+
+                ended();
+            });
+        }
+
+        /**
+         * Completes the result once the transfer has finished and every
+         * attempt has ended, as the caller only then gives back what the
+         * transfer held.  The result is completed last, so whoever waits
+         * for it sees everything recorded about the transfer.
+         */
+        private void ended() {
+            final boolean isSettled;
+
+            synchronized (this) {
+                isSettled = --running == 0 && isFinished;
+            }
+
+            if (!isSettled) {
+                return;
+            }
+
+            if (failure == null) {
+                result.complete(value);
+            } else {
+                result.completeExceptionally(failure);
+            }
+        }
+
+        /**
+         * Schedules the second attempt and the deadline, timed from when
+         * the first attempt started running.
+         */
+        private void scheduleTimers() {
+            if (isHedging()) {
+                latencyTracker.estimate(file.getSize(), hedgePercentile).ifPresent(delay -> {
+                    CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS).execute(this::hedge);
+                });
+            }
+
+            if (hasDeadlines()) {
+                latencyTracker.estimate(file.getSize(), MEDIAN).ifPresent(median -> {
+                    final Duration deadline = Duration.ofNanos(Math.max(median * deadlineMultiplier, MIN_DEADLINE.toNanos()));
+
+                    CompletableFuture.delayedExecutor(deadline.toNanos(), TimeUnit.NANOSECONDS).execute(() -> expire(deadline));
+                });
+            }
+        }
+
+        /**
+         * Starts a second attempt if the first has not finished yet.
+         */
+        void hedge() {
+            synchronized (this) {
+                if (isFinished) {
+                    return;
+                }
+            }
+
+            final Optional<Runnable> reservation = reserveHedge(file);
+
+            if (reservation.isEmpty()) {
+                hedgesSkipped.incrementAndGet();
+                LOGGER.debug("No room for a second attempt at transferring {}", file.getName());
+                return;
+            }
+
+            start(hedgeExecutorService, true, reservation.get());
+        }
+
+        /**
+         * Fails the transfer if it has not finished yet.
+         * @param deadline the time the transfer was allowed
+         */
+        void expire(final Duration deadline) {
+            final DeadlineExceededException error = new DeadlineExceededException(String.format(
+                "Transfer of %s did not finish within %d second(s)",
+                file.getName(),
+                deadline.toSeconds()
+            ));
+
+            if (!finish(null, error)) {
+                return;
+            }
+
+            deadlinesExceeded.incrementAndGet();
+            LOGGER.warn("Transfer of {} did not finish within {} second(s), aborting it", file.getName(), deadline.toSeconds());
+
+            // The transfer completes once the aborted attempts have ended
+            abortAll(null);
+        }
+
+        /**
+         * Marks the transfer as finished, deciding its outcome.
+         * @param outcome the result of the transfer, if it succeeded
+         * @param error what the transfer failed with, if it failed
+         * @return true if it had not finished already
+         */
+        private synchronized boolean finish(final UploadResult outcome, final Throwable error) {
+            if (isFinished) {
+                return false;
+            }
+
+            isFinished = true;
+            value = outcome;
+            failure = error;
+            return true;
+        }
+
+        /**
+         * Aborts every attempt but the given one.
+         * @param winner the attempt to leave alone, or null for none
+         */
+        private void abortAll(final UploadAttempt winner) {
+            final List<UploadAttempt> attemptsToAbort;
+
+            synchronized (this) {
+                attemptsToAbort = new ArrayList<>(started);
+            }
+
+            attemptsToAbort.stream()
+                .filter(attempt -> attempt != winner)
+                .forEach(UploadAttempt::abort);
+        }
+
+    }
+
+}
@@ -0,0 +1,122 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * A set of strings that only keeps a 128-bit fingerprint of each one, in a
+ * single open addressing table.  This takes a fraction of the memory of a
+ * {@code HashSet<String>}, which matters when millions of keys are loaded,
+ * while the chance of two keys sharing a fingerprint stays negligible.
+ */
+public class KeyFingerprintSet {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** Each entry takes two slots, so the table is at most half full. */
+    private static final int SLOTS_PER_ENTRY = 2;
+
+    private long[] table = new long[INITIAL_CAPACITY * SLOTS_PER_ENTRY];
+
+    private int size = 0;
+
+    /**
+     * Adds a key to the set.
+     * @param key the key to add
+     * @return true if the key was not already in the set
+     */
+    public synchronized boolean add(final String key) {
+        final long[] fingerprint = getFingerprint(key);
+
+        if (size * SLOTS_PER_ENTRY >= table.length / 2) {
+            resize();
+        }
+
+        if (!insert(table, fingerprint[0], fingerprint[1])) {
+            return false;
+        }
+
+        size++;
+        return true;
+    }
+
+    /**
+     * @param key the key to look for
+     * @return true if the key is in the set
+     */
+    public synchronized boolean contains(final String key) {
+        final long[] fingerprint = getFingerprint(key);
+
+        for (int slot = getSlot(table, fingerprint[0]); !isEmpty(table, slot); slot = getNextSlot(table, slot)) {
+            if (table[slot] == fingerprint[0] && table[slot + 1] == fingerprint[1]) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the number of keys in the set
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private void resize() {
+        final long[] resized = new long[table.length * 2];
+
+        for (int slot = 0; slot < table.length; slot += SLOTS_PER_ENTRY) {
+            if (!isEmpty(table, slot)) {
+                insert(resized, table[slot], table[slot + 1]);
+            }
+        }
+
+        table = resized;
+    }
+
+    private static boolean insert(final long[] table, final long high, final long low) {
+        int slot = getSlot(table, high);
+
+        while (!isEmpty(table, slot)) {
+            if (table[slot] == high && table[slot + 1] == low) {
+                return false;
+            }
+
+            slot = getNextSlot(table, slot);
+        }
+
+        table[slot] = high;
+        table[slot + 1] = low;
+        return true;
+    }
+
+    private static long[] getFingerprint(final String key) {
+        final ByteBuffer hash = ByteBuffer.wrap(HASH_FUNCTION.hashString(key, StandardCharsets.UTF_8).asBytes());
+
+        final long high = hash.getLong();
+        final long low = hash.getLong();
+
+        // All zeroes marks an empty slot
+        return new long[] {high, high == 0 && low == 0 ? 1 : low};
+    }
+
+    private static int getSlot(final long[] table, final long high) {
+        final int entries = table.length / SLOTS_PER_ENTRY;
+        return (int) (high & (entries - 1)) * SLOTS_PER_ENTRY;
+    }
+
+    private static int getNextSlot(final long[] table, final int slot) {
+        return (slot + SLOTS_PER_ENTRY) % table.length;
+    }
+
+    private static boolean isEmpty(final long[] table, final int slot) {
+        return table[slot] == 0 && table[slot + 1] == 0;
+    }
+
+}
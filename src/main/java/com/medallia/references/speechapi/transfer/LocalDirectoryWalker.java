@@ -0,0 +1,137 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Lists a tree of local directories with a fork/join pool, each directory
+ * being a task of its own.  Archives sharded into thousands of small
+ * directories are listed by several threads at once, keeping fast disks
+ * busy instead of waiting on one directory at a time.
+ */
+@Slf4j
+public class LocalDirectoryWalker {
+
+    private static final String SEPARATOR = "/";
+
+    private final int parallelism;
+
+    /**
+     * Creates a walker.
+     * @param parallelism the maximum number of directories listed at once
+     */
+    public LocalDirectoryWalker(final int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Lists every readable file in the tree that the filter selects.
+     * Symbolic links to directories are not followed, so links cannot make
+     * the walk loop.  The consumer may be called from several threads at
+     * once.
+     * @param root the directory to start from
+     * @param filter selects the files to hand over
+     * @param fileConsumer receives each file selected, named by its path
+     *                     relative to {@code root}, separated by slashes
+     */
+    public void walk(final Path root, final SourceFileFilter filter, final Consumer<SourceFile> fileConsumer) {
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+        try {
+            pool.invoke(new DirectoryTask(root, "", filter, fileConsumer));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Lists a single directory, then its subdirectories in parallel.
+     */
+    private static final class DirectoryTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+        private final String prefix;
+        private final transient SourceFileFilter filter;
+        private final transient Consumer<SourceFile> fileConsumer;
+
+        DirectoryTask(
+                final Path directory,
+                final String prefix,
+                final SourceFileFilter filter,
+                final Consumer<SourceFile> fileConsumer
+        ) {
+            this.directory = directory;
+            this.prefix = prefix;
+            this.filter = filter;
+            this.fileConsumer = fileConsumer;
+        }
+
+        @Override
+        protected void compute() {
+            final List<DirectoryTask> subdirectories = new ArrayList<>();
+
+            int numFiles = 0;
+
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path entry : stream) {
+                    BasicFileAttributes attributes = Files.readAttributes(
+                        entry,
+                        BasicFileAttributes.class,
+                        LinkOption.NOFOLLOW_LINKS
+                    );
+
+                    if (attributes.isDirectory()) {
+                        subdirectories.add(new DirectoryTask(entry, prefix + entry.getFileName() + SEPARATOR, filter, fileConsumer));
+                        continue;
+                    }
+
+                    // Links to files are transferred, links to directories are not
+                    if (attributes.isSymbolicLink()) {
+                        if (Files.isDirectory(entry) || !Files.isReadable(entry)) {
+                            continue;
+                        }
+
+                        attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                    }
+
+                    final long lastModified = attributes.lastModifiedTime().toMillis();
+
+                    // The name is only built for files within the size and
+                    // time bounds
+                    if (!filter.matchesAttributes(attributes.size(), lastModified)) {
+                        continue;
+                    }
+
+                    final String name = prefix + entry.getFileName();
+
+                    if (filter.matchesPath(name) && Files.isReadable(entry)) {
+                        fileConsumer.accept(new SourceFile(name, attributes.size(), lastModified));
+                        numFiles++;
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(String.format("Unable to list %s", directory), e);
+            }
+
+            LOGGER.debug("Found {} file(s) and {} directories in {}", numFiles, subdirectories.size(), directory);
+
+            invokeAll(subdirectories);
+        }
+
+    }
+
+}
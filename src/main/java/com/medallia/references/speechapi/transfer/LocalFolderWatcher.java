@@ -0,0 +1,306 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Watches a local folder for new files and hands each one over once it
+ * has stopped changing.  Files already in the folder when watching starts
+ * are handed over too.
+ *
+ * <p>A file is considered complete once its size and modification time
+ * are the same on two consecutive checks, and it has not been modified
+ * for the settle time.  Files that settle at the same time are handed
+ * over together, in name order.  A file that is rewritten later is handed
+ * over again, and so is a file whose transfer failed, once it has waited
+ * for the settle time again.  Files that are deleted are forgotten.
+ */
+@Slf4j
+public class LocalFolderWatcher {
+
+    public static final long POLL_INTERVAL_MSEC = 1000;
+
+    private static final String SEPARATOR = "/";
+
+    private final Path root;
+
+    private final boolean recursive;
+
+    private final Duration settleTime;
+
+    private final SourceFileFilter filter;
+
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+
+    private final Set<Path> watchedDirectories = new HashSet<>();
+
+    /** The files waiting to settle, with how they looked on the last check. */
+    private final Map<Path, Observation> pending = new HashMap<>();
+
+    /** How every file still in the folder looked when it was handed over. */
+    private final Map<String, Observation> handedOver = new HashMap<>();
+
+    /** The files whose transfer failed, in the order they failed. */
+    private final Queue<Retry> retries = new ConcurrentLinkedQueue<>();
+
+    /**
+     * How a file looked when it was last checked.
+     */
+    @AllArgsConstructor
+    private static final class Observation {
+
+        private final long size;
+        private final long lastModified;
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof Observation)) {
+                return false;
+            }
+
+            final Observation observation = (Observation) other;
+            return size == observation.size && lastModified == observation.lastModified;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(size, lastModified);
+        }
+
+    }
+
+    /**
+     * A file to hand over again.
+     */
+    @AllArgsConstructor
+    private static final class Retry {
+
+        private final String name;
+        private final long failedAt;
+
+    }
+
+    /**
+     * Creates a watcher.
+     * @param root the folder to watch
+     * @param recursive whether subdirectories are watched too
+     * @param settleTime how long a file must go unmodified to be complete
+     * @param filter selects the files to hand over; files whose path it
+     *               does not select are not even tracked
+     */
+    public LocalFolderWatcher(
+            final Path root,
+            final boolean recursive,
+            final Duration settleTime,
+            final SourceFileFilter filter
+    ) {
+        this.root = root;
+        this.recursive = recursive;
+        this.settleTime = settleTime;
+        this.filter = filter;
+    }
+
+    /**
+     * Watches the folder until the thread is interrupted.
+     * @param fileConsumer receives each complete file, named by its path
+     *                     relative to the folder, separated by slashes
+     */
+    public void watch(final Consumer<SourceFile> fileConsumer) {
+        try (WatchService watchService = root.getFileSystem().newWatchService()) {
+            // Registering before the first scan means no file created in
+            // between is missed
+            register(watchService, root);
+
+            LOGGER.debug("Watching {} director(ies) under {}", directories.size(), root);
+
+            while (!Thread.currentThread().isInterrupted()) {
+                // Every event already waiting is handled in one go
+                WatchKey key = watchService.poll(POLL_INTERVAL_MSEC, TimeUnit.MILLISECONDS);
+                while (key != null) {
+                    handle(watchService, key);
+                    key = watchService.poll();
+                }
+
+                pendRetries();
+                handOverSettled(fileConsumer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Unable to watch %s", root), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Has a file handed over earlier handed over again, such as when its
+     * transfer failed.  It is tracked again after the settle time, and
+     * handed over once it has settled, as long as it is still there.  Safe
+     * to call from any thread.
+     * @param name the name of the file, as it was handed over
+     */
+    public void retry(final String name) {
+        retries.add(new Retry(name, System.currentTimeMillis()));
+    }
+
+    private void pendRetries() {
+        final long failedBefore = System.currentTimeMillis() - settleTime.toMillis();
+
+        for (Retry retry = retries.peek(); retry != null && retry.failedAt <= failedBefore; retry = retries.peek()) {
+            retries.poll();
+
+            LOGGER.debug("Tracking {} again, as its transfer failed", retry.name);
+
+            handedOver.remove(retry.name);
+            pending.putIfAbsent(root.resolve(retry.name), null);
+        }
+    }
+
+    private void register(final WatchService watchService, final Path directory) throws IOException {
+        final WatchKey key = directory.register(
+            watchService,
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY,
+            StandardWatchEventKinds.ENTRY_DELETE
+        );
+
+        directories.put(key, directory);
+        watchedDirectories.add(directory);
+
+        scan(watchService, directory);
+    }
+
+    private void scan(final WatchService watchService, final Path directory) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path entry : stream) {
+                found(watchService, entry);
+            }
+        }
+    }
+
+    private void found(final WatchService watchService, final Path path) throws IOException {
+        if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            if (recursive && !watchedDirectories.contains(path)) {
+                register(watchService, path);
+            }
+        } else if (Files.isRegularFile(path) && filter.matchesPath(getName(path))) {
+            pending.putIfAbsent(path, null);
+        }
+    }
+
+    private void handle(final WatchService watchService, final WatchKey key) throws IOException {
+        final Path directory = directories.get(key);
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Events were lost, so look at everything again
+                LOGGER.debug("Too many changes in {}, scanning it again", directory);
+                scan(watchService, directory);
+                continue;
+            }
+
+            final Path path = directory.resolve((Path) event.context());
+
+            if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                // Only files still in the folder are remembered
+                pending.remove(path);
+                handedOver.remove(getName(path));
+                continue;
+            }
+
+            try {
+                found(watchService, path);
+            } catch (NoSuchFileException e) {
+                // Already gone, such as a temporary file
+            }
+        }
+
+        if (!key.reset()) {
+            watchedDirectories.remove(directories.remove(key));
+        }
+    }
+
+    private void handOverSettled(final Consumer<SourceFile> fileConsumer) {
+        final long settledBefore = System.currentTimeMillis() - settleTime.toMillis();
+
+        final List<SourceFile> settled = new ArrayList<>();
+
+        final Iterator<Map.Entry<Path, Observation>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<Path, Observation> entry = iterator.next();
+
+            final Observation current;
+            try {
+                final BasicFileAttributes attributes = Files.readAttributes(entry.getKey(), BasicFileAttributes.class);
+                current = new Observation(attributes.size(), attributes.lastModifiedTime().toMillis());
+            } catch (IOException e) {
+                // Deleted or renamed before it settled
+                iterator.remove();
+                continue;
+            }
+
+            if (!current.equals(entry.getValue()) || current.lastModified > settledBefore) {
+                entry.setValue(current);
+                continue;
+            }
+
+            iterator.remove();
+
+            final String name = getName(entry.getKey());
+
+            // The size and modification time are only final once settled
+            if (filter.matchesAttributes(current.size, current.lastModified)
+                    && Files.isReadable(entry.getKey())
+                    && !current.equals(handedOver.put(name, current))) {
+                settled.add(new SourceFile(name, current.size, current.lastModified));
+            }
+        }
+
+        if (!settled.isEmpty()) {
+            LOGGER.debug("Handing over {} settled file(s)", settled.size());
+
+            settled.sort(Comparator.comparing(SourceFile::getName));
+            settled.forEach(fileConsumer);
+        }
+    }
+
+    private String getName(final Path path) {
+        final StringBuilder name = new StringBuilder();
+
+        for (Path element : root.relativize(path)) {
+            if (name.length() > 0) {
+                name.append(SEPARATOR);
+            }
+            name.append(element);
+        }
+
+        return name.toString();
+    }
+
+}
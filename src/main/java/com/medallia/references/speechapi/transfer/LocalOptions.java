@@ -7,6 +7,9 @@ import lombok.Builder;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import picocli.CommandLine;
+import picocli.CommandLine.Model.CommandSpec;
+import picocli.CommandLine.ParameterException;
+import picocli.CommandLine.Spec;
 
 /**
 * Command line options related to local file transfers.
@@ -17,6 +20,13 @@ import picocli.CommandLine;
 @AllArgsConstructor
 public class LocalOptions {
 
+    public static final String DEFAULT_LOCAL_LIST_PARALLELISM = "8";
+    public static final Integer MAX_LOCAL_LIST_PARALLELISM = 64;
+    public static final String DEFAULT_WATCH_SETTLE_TIME = "5";
+
+    @Spec
+    private CommandSpec spec;
+
     @CommandLine.Option(
         names = {"-f", "--folder"},
         required = true,
@@ -24,4 +34,80 @@ public class LocalOptions {
     )
     private Path folder;
 
+    @CommandLine.Option(
+        names = {"-r", "--recursive"},
+        defaultValue = "false",
+        required = false,
+        description = ""
+            + "Also transfers the files in subdirectories of the local "
+            + "folder, keeping their relative path in the MMFT key. "
+            + "(default=${DEFAULT-VALUE})"
+    )
+    private boolean recursive;
+
+    private Integer listParallelism;
+
+    /**
+     * Sets how many directories are listed at the same time.
+     * @param listParallelism the maximum number of concurrent listings
+     */
+    @CommandLine.Option(
+        names = {"--local-list-parallelism"},
+        defaultValue = DEFAULT_LOCAL_LIST_PARALLELISM,
+        required = false,
+        description = ""
+            + "How many local directories are listed at the same time with "
+            + "--recursive. (default=${DEFAULT-VALUE})"
+    )
+    public void setListParallelism(final Integer listParallelism) {
+        if (listParallelism <= 0 || listParallelism > MAX_LOCAL_LIST_PARALLELISM) {
+            throw new ParameterException(
+                spec.commandLine(),
+                String.format(
+                    "Invalid list parallelism: must be between 1 and %d (inclusive)",
+                    MAX_LOCAL_LIST_PARALLELISM
+                )
+            );
+        }
+
+        this.listParallelism = listParallelism;
+    }
+
+    @CommandLine.Option(
+        names = {"--watch"},
+        defaultValue = "false",
+        required = false,
+        description = ""
+            + "Keeps running after the files already in the local folder are "
+            + "transferred, transferring new files as they are written. "
+            + "The --timeout does not apply. (default=${DEFAULT-VALUE})"
+    )
+    private boolean watch;
+
+    private Integer watchSettleTime;
+
+    /**
+     * Sets how long a file must go unmodified before it is transferred
+     * with {@code --watch}.
+     * @param watchSettleTime the settle time, in seconds
+     */
+    @CommandLine.Option(
+        names = {"--watch-settle-time"},
+        defaultValue = DEFAULT_WATCH_SETTLE_TIME,
+        required = false,
+        description = ""
+            + "How many seconds a new file must go unmodified before it is "
+            + "transferred with --watch. (default=${DEFAULT-VALUE})"
+    )
+    public void setWatchSettleTime(final Integer watchSettleTime) {
+        if (watchSettleTime <= 0) {
+            throw new ParameterException(
+                spec.commandLine(),
+                "Invalid watch settle time: must be at least 1 second"
+            );
+        }
+
+        this.watchSettleTime = watchSettleTime;
+    }
+
 }
@@ -1,45 +1,122 @@
 package com.medallia.references.speechapi.transfer;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Collection;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import io.micrometer.core.instrument.MeterRegistry;
+
 /**
  * The implementation of the transfer process as it relates to local sources.
  */
 @Component
 public class LocalProcessStrategy extends GenericProcessStrategy {
 
+    private final Map<SourceOptions, LocalFolderWatcher> watchers = new ConcurrentHashMap<>();
+
     @Autowired
-    public LocalProcessStrategy(final MmftService mmftService) {
-        super(mmftService);
+    public LocalProcessStrategy(final MmftService mmftService, final MeterRegistry meterRegistry) {
+        super(mmftService, meterRegistry);
     }
 
-    protected Collection<String> getFilenames(final SourceOptions source) {
-        try (Stream<Path> stream = Files.list(source.getLocal().getFolder())) {
-            return stream
-                .filter(file -> !Files.isDirectory(file))
-                .filter(file -> Files.isReadable(file))
-                .map(Path::getFileName)
-                .map(Path::toString)
-                .collect(Collectors.toSet());
+    protected void listFiles(final SourceOptions source, final SourceFileFilter filter, final Consumer<SourceFile> consumer) {
+        final LocalOptions localOptions = source.getLocal();
+
+        if (localOptions.isWatch()) {
+            // Lists what is already there too, then waits for new files
+            // until the listing thread is interrupted
+            final LocalFolderWatcher watcher = new LocalFolderWatcher(
+                localOptions.getFolder(),
+                localOptions.isRecursive(),
+                Duration.ofSeconds(localOptions.getWatchSettleTime()),
+                filter
+            );
+
+            watchers.put(source, watcher);
+
+            try {
+                watcher.watch(consumer);
+            } catch (UncheckedIOException e) {
+                throw new RuntimeException("Unable to watch local folder", e);
+            }
+            return;
+        }
+
+        if (localOptions.isRecursive()) {
+            // Files are named by their path relative to the folder, which
+            // is both what the glob matches and what ends up in the key
+            try {
+                new LocalDirectoryWalker(localOptions.getListParallelism()).walk(localOptions.getFolder(), filter, consumer);
+            } catch (UncheckedIOException e) {
+                throw new RuntimeException("Unable to list local filenames", e);
+            }
+            return;
+        }
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(localOptions.getFolder())) {
+            for (Path file : stream) {
+                // Also leaves out links to files that no longer exist
+                if (!Files.isReadable(file)) {
+                    continue;
+                }
+
+                final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                final long lastModified = attributes.lastModifiedTime().toMillis();
+
+                if (attributes.isDirectory() || !filter.matchesAttributes(attributes.size(), lastModified)) {
+                    continue;
+                }
+
+                final String name = file.getFileName().toString();
+
+                if (filter.matchesPath(name)) {
+                    consumer.accept(new SourceFile(name, attributes.size(), lastModified));
+                }
+            }
         } catch (IOException e) {
             throw new RuntimeException("Unable to list local filenames", e);
         }
     }
 
-    protected byte[] getBytesFromSource(
-        final String filename,
+    @Override
+    protected boolean isContinuous(final SourceOptions source) {
+        return source.getLocal().isWatch();
+    }
+
+    @Override
+    protected void onTransferFinished(final SourceFile file, final SourceOptions source, final boolean isTransferred) {
+        final LocalFolderWatcher watcher = watchers.get(source);
+
+        // A failure such as MMFT being unreachable is not the file's
+        // fault, so it is tried again rather than waiting for it to change
+        if (watcher != null && !isTransferred) {
+            watcher.retry(file.getName());
+        }
+    }
+
+    @Override
+    protected void closeSource(final SourceOptions source) {
+        watchers.remove(source);
+    }
+
+    protected TransferPayload getPayloadFromSource(
+        final SourceFile file,
         final SourceOptions source
     ) {
         try {
-            return Files.readAllBytes(source.getLocal().getFolder().resolve(filename));
+            // Uploads read straight from the file channel, so the contents
+            // are never copied onto the heap as a whole
+            return new FileChannelPayload(source.getLocal().getFolder().resolve(file.getName()));
         } catch (IOException e) {
             throw new RuntimeException("Unable to get contents of file", e);
         }
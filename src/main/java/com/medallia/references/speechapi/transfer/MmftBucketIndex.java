@@ -0,0 +1,198 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The objects stored under the MMFT folder, with their size and ETag, so
+ * files that are already there can be skipped without asking MMFT about
+ * each one.  The index can be cached on disk, so a listing of a large
+ * folder is reused by the following runs until it is too old.
+ */
+@Slf4j
+public class MmftBucketIndex {
+
+    private static final String HEADER_PREFIX = "# mmft-index v1";
+    private static final String SEPARATOR = "\t";
+    private static final int FIELDS = 3;
+
+    /**
+     * What is known about an object stored in MMFT.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Entry {
+
+        /** The size of the object, in bytes. */
+        private final long size;
+
+        /** The ETag of the object, without quotes. */
+        private final String eTag;
+
+    }
+
+    /** Identifies the endpoint, bucket and folder that were listed. */
+    @Getter
+    private final String target;
+
+    /** When the folder was listed. */
+    @Getter
+    private final Instant listedAt;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an empty index.
+     * @param target identifies what was listed, see {@link #getTarget(MmftOptions)}
+     * @param listedAt when the folder was listed
+     */
+    public MmftBucketIndex(final String target, final Instant listedAt) {
+        this.target = target;
+        this.listedAt = listedAt;
+    }
+
+    /**
+     * @param options the MMFT-related options
+     * @return what identifies an index of the MMFT folder
+     */
+    public static String getTarget(final MmftOptions options) {
+        return String.format("%s %s %s", options.getEndpoint(), options.getBucket(), options.getFolder());
+    }
+
+    /**
+     * @param key the S3 key
+     * @return the object stored under the key, or null if there is none
+     */
+    public Entry get(final String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Records an object, either found by listing or just uploaded.
+     * @param key the S3 key
+     * @param size the size of the object, in bytes
+     * @param eTag the ETag of the object, with or without quotes
+     */
+    public void put(final String key, final long size, final String eTag) {
+        entries.put(key, new Entry(size, StringUtils.strip(eTag, "\"")));
+    }
+
+    /**
+     * @param key the S3 key
+     * @param size the size of the source file, in bytes
+     * @return true if an object of the same size is stored under the key
+     */
+    public boolean hasSameSize(final String key, final long size) {
+        final Entry entry = entries.get(key);
+        return entry != null && entry.getSize() == size;
+    }
+
+    /**
+     * @return the number of objects in the index
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Loads a cached index, as long as it is of the same MMFT folder and
+     * is recent enough.
+     * @param path the cache file
+     * @param target identifies the MMFT folder, see {@link #getTarget(MmftOptions)}
+     * @param maxAge how old the listing may be
+     * @return the cached index, or empty if it has to be listed again
+     */
+    public static Optional<MmftBucketIndex> load(final Path path, final String target, final Duration maxAge) {
+        if (!Files.exists(path)) {
+            return Optional.empty();
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            // The header holds when the listing was made and of what
+            final String[] header = StringUtils.removeStart(reader.readLine(), HEADER_PREFIX).trim().split(" ", 2);
+
+            final Instant listedAt = Instant.ofEpochMilli(Long.parseLong(header[0]));
+
+            if (header.length < 2 || !target.equals(header[1])) {
+                LOGGER.debug("Cached MMFT index {} is of another folder", path);
+                return Optional.empty();
+            }
+
+            if (listedAt.plus(maxAge).isBefore(Instant.now())) {
+                LOGGER.debug("Cached MMFT index {} is too old", path);
+                return Optional.empty();
+            }
+
+            final MmftBucketIndex index = new MmftBucketIndex(target, listedAt);
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // The key goes last, since it is the only field that may
+                // contain the separator
+                final String[] fields = line.split(SEPARATOR, FIELDS);
+                if (fields.length == FIELDS) {
+                    index.put(fields[2], Long.parseLong(fields[0]), fields[1]);
+                }
+            }
+
+            return Optional.of(index);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Ignoring unreadable MMFT index cache {}", path, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Saves the index, including the objects uploaded since it was listed.
+     * The file is replaced in one step, so a crash leaves either the old or
+     * the new cache behind.
+     * @param path the cache file
+     * @throws IOException if the file cannot be written
+     */
+    public void save(final Path path) throws IOException {
+        final Path directory = path.toAbsolutePath().getParent();
+        final Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                writer.write(String.format("%s %d %s", HEADER_PREFIX, listedAt.toEpochMilli(), target));
+                writer.newLine();
+
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    if (StringUtils.containsAny(entry.getKey(), '\r', '\n')) {
+                        continue;
+                    }
+
+                    writer.write(String.join(
+                        SEPARATOR,
+                        Long.toString(entry.getValue().getSize()),
+                        StringUtils.defaultString(entry.getValue().getETag()),
+                        entry.getKey()
+                    ));
+                    writer.newLine();
+                }
+            }
+
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+}
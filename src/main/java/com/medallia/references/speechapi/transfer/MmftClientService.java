@@ -0,0 +1,257 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import javax.annotation.PreDestroy;
+
+import org.springframework.stereotype.Component;
+
+import com.google.common.hash.Hashing;
+import com.medallia.references.speechapi.concurrency.ConcurrencyLimiter;
+
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.http.nio.netty.SdkEventLoopGroup;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3Configuration;
+
+/**
+ * A wrapper service for connecting to MMFT using the AWS S3 client.  This
+ * implementation uses a registry for reusing S3 clients assuming none of
+ * the identifying information has changed, so every worker thread shares
+ * the same HTTP connection pool instead of setting up its own per file.
+ * Asynchronous clients share a small event loop pool in the same way.
+ */
+@Component
+@Slf4j
+public class MmftClientService {
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 50;
+
+    private final Map<String, S3Client> registry = new HashMap<>();
+
+    private final Map<String, S3AsyncClient> asyncRegistry = new HashMap<>();
+
+    private final Map<String, BandwidthLimiter> bandwidthRegistry = new HashMap<>();
+
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+    private final ThrottlingInterceptor throttlingInterceptor = new ThrottlingInterceptor();
+
+    /**
+     * Sets the size of the HTTP connection pool for clients created from
+     * now on.  This should follow the number of uploads that can be in
+     * flight at the same time.
+     * @param maxConnections the maximum number of connections per client
+     */
+    public void setMaxConnections(final int maxConnections) {
+        synchronized (this.registry) {
+            this.maxConnections = maxConnections;
+        }
+    }
+
+    /**
+     * Reports every throttled request, including those that are retried,
+     * to the given limiter, so that it can back off right away.
+     * @param limiter the limiter of the current run
+     */
+    public void reportThrottlingTo(final ConcurrencyLimiter limiter) {
+        throttlingInterceptor.setLimiter(limiter);
+    }
+
+    /**
+     * Returns the client id for the given options.
+     * @param options the MMFT-related options
+     * @return the client id
+     */
+    public String getClientId(final MmftOptions options) {
+        return Hashing.sha256()
+            .hashString(
+                String.format(
+                    "%s|%s|%s|%s",
+                    options.getEndpoint(),
+                    options.getAccessKey(),
+                    options.getSecretKey(),
+                    options.getBucket()
+                ),
+                StandardCharsets.UTF_8
+            )
+            .toString();
+    }
+
+    /**
+     * Returns the shared S3 client for the given options, creating it
+     * the first time it is needed.  S3 clients are thread safe.
+     * @param options the MMFT-related options
+     * @return the S3 client
+     */
+    public S3Client getS3Client(final MmftOptions options) {
+        final String clientId = getClientId(options);
+
+        synchronized (this.registry) {
+            // Populate the registration if this is a new client id
+            if (!this.registry.containsKey(clientId)) {
+                this.registry.put(
+                    clientId,
+                    generateS3Client(clientId, options)
+                );
+            }
+
+            return this.registry.get(clientId);
+        }
+    }
+
+    /**
+     * Returns the shared asynchronous S3 client for the given options,
+     * creating it the first time it is needed.
+     * @param options the MMFT-related options
+     * @return the asynchronous S3 client
+     */
+    public S3AsyncClient getS3AsyncClient(final MmftOptions options) {
+        final String clientId = getClientId(options);
+
+        synchronized (this.registry) {
+            // Populate the registration if this is a new client id
+            if (!this.asyncRegistry.containsKey(clientId)) {
+                this.asyncRegistry.put(
+                    clientId,
+                    generateS3AsyncClient(clientId, options)
+                );
+            }
+
+            return this.asyncRegistry.get(clientId);
+        }
+    }
+
+    /**
+     * Returns the bandwidth limiter shared by every upload for the given
+     * options, so that the limit applies to all workers together.
+     * @param options the MMFT-related options
+     * @return the bandwidth limiter
+     */
+    public BandwidthLimiter getBandwidthLimiter(final MmftOptions options) {
+        synchronized (this.registry) {
+            return this.bandwidthRegistry.computeIfAbsent(
+                getClientId(options),
+                clientId -> options.newBandwidthLimiter()
+            );
+        }
+    }
+
+    /**
+     * Closes every client in the registry, releasing their connection
+     * pools.  Clients requested afterwards are created anew.
+     */
+    @PreDestroy
+    public void close() {
+        synchronized (this.registry) {
+            this.registry.forEach((clientId, s3) -> {
+                LOGGER.debug("Closing S3 client for MMFT: {}", clientId);
+                s3.close();
+            });
+
+            this.asyncRegistry.forEach((clientId, s3) -> {
+                LOGGER.debug("Closing asynchronous S3 client for MMFT: {}", clientId);
+                s3.close();
+            });
+
+            this.registry.clear();
+            this.asyncRegistry.clear();
+            this.bandwidthRegistry.clear();
+        }
+    }
+
+    /**
+     * Creates an S3 client with the MMFT customizations applied.
+     * @param clientId the client id
+     * @param options the MMFT-related options
+     * @return the S3 client
+     */
+    private S3Client generateS3Client(final String clientId, final MmftOptions options) {
+        LOGGER.debug("Generating S3 client for MMFT with {} connection(s): {}", maxConnections, clientId);
+
+        try {
+            return S3Client.builder()
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(
+                    AwsBasicCredentials.create(options.getAccessKey(), options.getSecretKey())
+                ))
+                .endpointOverride(new URI(options.getEndpoint()))
+                .serviceConfiguration(S3Configuration.builder()
+                    .pathStyleAccessEnabled(true)
+                    .build()
+                )
+                .overrideConfiguration(ClientOverrideConfiguration.builder()
+                    .addExecutionInterceptor(throttlingInterceptor)
+                    .build()
+                )
+                .httpClientBuilder(ApacheHttpClient.builder()
+                    .maxConnections(maxConnections)
+                )
+                .build();
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException(
+                String.format("Invalid MMFT endpoint: %s", options.getEndpoint()),
+                e
+            );
+        }
+    }
+
+    /**
+     * Creates an asynchronous S3 client with the MMFT customizations
+     * applied.  Requests are multiplexed over a small event loop pool,
+     * with the connection pool bounding how many are in flight.
+     * @param clientId the client id
+     * @param options the MMFT-related options
+     * @return the asynchronous S3 client
+     */
+    private S3AsyncClient generateS3AsyncClient(final String clientId, final MmftOptions options) {
+        final int eventLoopThreads = Runtime.getRuntime().availableProcessors();
+
+        LOGGER.debug(
+            "Generating asynchronous S3 client for MMFT with {} connection(s) and {} event loop thread(s): {}",
+            maxConnections,
+            eventLoopThreads,
+            clientId
+        );
+
+        try {
+            return S3AsyncClient.builder()
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(
+                    AwsBasicCredentials.create(options.getAccessKey(), options.getSecretKey())
+                ))
+                .endpointOverride(new URI(options.getEndpoint()))
+                .serviceConfiguration(S3Configuration.builder()
+                    .pathStyleAccessEnabled(true)
+                    .build()
+                )
+                .overrideConfiguration(ClientOverrideConfiguration.builder()
+                    .addExecutionInterceptor(throttlingInterceptor)
+                    .build()
+                )
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+                    .maxConcurrency(maxConnections)
+                    .eventLoopGroupBuilder(SdkEventLoopGroup.builder()
+                        .numberOfThreads(eventLoopThreads)
+                    )
+                )
+                .build();
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException(
+                String.format("Invalid MMFT endpoint: %s", options.getEndpoint()),
+                e
+            );
+        }
+    }
+
+}
@@ -7,6 +7,9 @@ import lombok.Builder;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import picocli.CommandLine;
+import picocli.CommandLine.Model.CommandSpec;
+import picocli.CommandLine.ParameterException;
+import picocli.CommandLine.Spec;
 
 /**
  * Specific options for connections with the Medallia Media File Transfer system.
@@ -19,6 +22,18 @@ import picocli.CommandLine;
 public class MmftOptions {
 
     public static final String DEFAULT_MMFT_FOLDER = "/";
+    public static final String DEFAULT_PART_SIZE = "8MB";
+    public static final String DEFAULT_PART_CONCURRENCY = "4";
+    public static final String DEFAULT_MMFT_MAX_BANDWIDTH = "0";
+    public static final String DEFAULT_MMFT_MAX_BURST = "1MB";
+    public static final String DEFAULT_MMFT_CHECKSUM = "NONE";
+
+    /** S3 rejects multipart uploads whose parts (except the last) are smaller than this. */
+    public static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    public static final long MAX_PART_SIZE = Integer.MAX_VALUE - 8;
+
+    @Spec
+    private CommandSpec spec;
 
     @CommandLine.Option(
         names = {"--mmft-endpoint"},
@@ -65,4 +80,135 @@ public class MmftOptions {
         );
     }
 
+    private Integer partSize;
+
+    /**
+     * Sets the size of each part used for multipart uploads.  Files smaller
+     * than a single part are sent with a single request.
+     * @param partSize the part size, in bytes
+     */
+    @CommandLine.Option(
+        names = {"--mmft-part-size"},
+        defaultValue = DEFAULT_PART_SIZE,
+        required = false,
+        converter = ByteSizeConverter.class,
+        description = ""
+            + "The size of each part of a multipart upload, such as 8MB. "
+            + "(default=${DEFAULT-VALUE})"
+    )
+    public void setPartSize(final Long partSize) {
+        if (partSize < MIN_PART_SIZE || partSize > MAX_PART_SIZE) {
+            throw new ParameterException(
+                spec.commandLine(),
+                String.format(
+                    "Invalid part size: must be between %d and %d bytes (inclusive)",
+                    MIN_PART_SIZE,
+                    MAX_PART_SIZE
+                )
+            );
+        }
+
+        this.partSize = partSize.intValue();
+    }
+
+    private Integer partConcurrency;
+
+    /**
+     * Sets the number of parts of a single file that are uploaded at the
+     * same time.
+     * @param partConcurrency the number of concurrent part uploads
+     */
+    @CommandLine.Option(
+        names = {"--mmft-part-concurrency"},
+        defaultValue = DEFAULT_PART_CONCURRENCY,
+        required = false,
+        description = ""
+            + "The number of parts of a single file to upload concurrently. "
+            + "(default=${DEFAULT-VALUE})"
+    )
+    public void setPartConcurrency(final Integer partConcurrency) {
+        if (partConcurrency <= 0) {
+            throw new ParameterException(
+                spec.commandLine(),
+                "Invalid part concurrency: must be at least 1"
+            );
+        }
+
+        this.partConcurrency = partConcurrency;
+    }
+
+    @CommandLine.Option(
+        names = {"--mmft-checksum"},
+        defaultValue = DEFAULT_MMFT_CHECKSUM,
+        required = false,
+        description = ""
+            + "The checksum sent with every part and checked against what MMFT "
+            + "stored, then written next to each file in the --output file. "
+            + "Valid values: ${COMPLETION-CANDIDATES}. (default=${DEFAULT-VALUE})"
+    )
+    private ChecksumType checksum;
+
+    private long maxBandwidth;
+
+    /**
+     * Sets the maximum number of bytes per second uploaded to MMFT, shared by
+     * every worker.
+     * @param maxBandwidth the rate, in bytes per second, or 0 for no limit
+     */
+    @CommandLine.Option(
+        names = {"--mmft-max-bandwidth"},
+        defaultValue = DEFAULT_MMFT_MAX_BANDWIDTH,
+        required = false,
+        converter = ByteSizeConverter.class,
+        description = ""
+            + "The maximum bytes per second uploaded to MMFT across all "
+            + "workers, such as 20MB, or 0 for no limit. (default=${DEFAULT-VALUE})"
+    )
+    public void setMaxBandwidth(final Long maxBandwidth) {
+        if (maxBandwidth < 0) {
+            throw new ParameterException(
+                spec.commandLine(),
+                "Invalid max bandwidth: must not be negative"
+            );
+        }
+
+        this.maxBandwidth = maxBandwidth;
+    }
+
+    private long maxBurst;
+
+    /**
+     * Sets how many bytes may be moved at full speed after a quiet period
+     * before {@code --mmft-max-bandwidth} applies.
+     * @param maxBurst the burst size, in bytes
+     */
+    @CommandLine.Option(
+        names = {"--mmft-max-burst"},
+        defaultValue = DEFAULT_MMFT_MAX_BURST,
+        required = false,
+        converter = ByteSizeConverter.class,
+        description = ""
+            + "How many bytes may be uploaded in a burst before "
+            + "--mmft-max-bandwidth applies. (default=${DEFAULT-VALUE})"
+    )
+    public void setMaxBurst(final Long maxBurst) {
+        if (maxBurst <= 0) {
+            throw new ParameterException(
+                spec.commandLine(),
+                "Invalid max burst: must be at least 1 byte"
+            );
+        }
+
+        this.maxBurst = maxBurst;
+    }
+
+    /**
+     * @return a new limiter for {@code --mmft-max-bandwidth}
+     */
+    public BandwidthLimiter newBandwidthLimiter() {
+        return maxBandwidth > 0
+            ? new BandwidthLimiter(maxBandwidth, maxBurst)
+            : BandwidthLimiter.UNLIMITED;
+    }
+
 }
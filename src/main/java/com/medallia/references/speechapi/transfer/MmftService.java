@@ -1,21 +1,59 @@
 package com.medallia.references.speechapi.transfer;
 
-import java.net.URI;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javax.annotation.PreDestroy;
 
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.retry.support.RetryTemplate;
 import org.springframework.stereotype.Component;
 
+import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.medallia.references.speechapi.concurrency.ConcurrencyLimiter;
+import com.medallia.references.speechapi.concurrency.WorkerExecutors;
+import com.medallia.references.speechapi.metrics.MetricNames;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
-import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
-import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.core.sync.RequestBody;
-import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
 import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
 
 /**
  * Wraps the <a href="https://docs.aws.amazon.com/sdk-for-java/latest/developer-guide/home.html">AWS SDK for Java</a>
@@ -25,74 +63,921 @@ import software.amazon.awssdk.services.s3.model.S3Exception;
 @Slf4j
 public class MmftService {
 
+    public static final String CONTENT_TYPE = "application/octet-stream";
+    public static final int ETAG_BUFFER_SIZE = 64 * 1024;
+
+    private volatile ExecutorService partExecutorService = Executors.newCachedThreadPool(
+        new ThreadFactoryBuilder()
+            .setNameFormat("mmft-part-%d")
+            .setDaemon(true)
+            .build()
+    );
+
     @Autowired
     private RetryTemplate retryTemplate;
 
+    @Autowired
+    private MmftClientService mmftClientService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${retry.maxAttempts}")
+    private int retryMaxAttempts;
+
+    @Value("${retry.backoffMultiplier}")
+    private int retryBackoffMultiplier;
+
+    @Value("${retry.initialDelay}")
+    private long retryInitialDelay;
+
+    @Value("${retry.maxDelay}")
+    private long retryMaxDelay;
+
     /**
      * Uploads the {@code data} payload provided to MMFT using the
-     * {@code filename} provided as part of the S3 key.
+     * {@code filename} provided as part of the S3 key.  Payloads that fit
+     * within a single part are sent with a single request; larger payloads
+     * are streamed as a multipart upload, so at most a few parts are held
+     * in memory at any time.  Parts of random access payloads are read
+     * straight from the payload by the thread uploading them.
      * @param filename the filename portion of the S3 key
      * @param data the payload to upload
      * @param options the MMFT-related options
+     * @return the ETag of the uploaded object, and its checksum if verified
      */
-    public void upload(
+    public UploadResult upload(
             final String filename,
-            final byte[] data,
+            final TransferPayload data,
             final MmftOptions options
     ) {
         try {
-            final S3Client s3 = getS3(options);
+            final S3Client s3 = mmftClientService.getS3Client(options);
 
             final String key = getKey(options.getFolder(), filename);
 
             LOGGER.debug("Uploading {}", key);
 
-            retryTemplate.execute((context) -> {
-                // Since audio recordings can be very large (100+ MB each),
-                // it is best to use a multipart upload.  With the AWS SDK
-                // v1, we would use a TransferManager.  However, that
-                // has not yet been ported over to the AWS SDK v2.  As such,
-                // we use a putObject() call below just to show how this
-                // would work in concept.  Production systems should
-                // follow the multipart upload strategy.
-                //
-                // Github ticket tracking adding TransferManager to v2:
-                // https://github.com/aws/aws-sdk-java-v2/issues/37
-
-                return s3.putObject(
-                    PutObjectRequest.builder()
+            final ByteBuffer firstPart = readPart(data, 0, options.getPartSize());
+
+            if (isWholePayload(firstPart, data, options)) {
+                checkLength(data, firstPart.remaining());
+
+                final BandwidthLimiter bandwidthLimiter = mmftClientService.getBandwidthLimiter(options);
+
+                final UploadChecksums checksums = new UploadChecksums(options.getChecksum(), key, false);
+                final UploadChecksums.PartChecksum checksum = checksums.addPart(1, firstPart);
+
+                // The whole payload fits in a single part, so there is
+                // nothing to gain from the multipart overhead.  A mismatch
+                // is retried like any other failure.
+                final String eTag = retryTemplate.execute((context) -> {
+                    final PutObjectResponse response = s3.putObject(
+                        PutObjectRequest.builder()
+                            .bucket(options.getBucket())
+                            .key(key)
+                            .contentMD5(checksum.getContentMd5())
+                            .checksumSHA256(checksum.getSha256())
+                            .build(),
+                        toRequestBody(firstPart, bandwidthLimiter)
+                    );
+
+                    checksums.verifyObject(response.eTag(), response.checksumSHA256());
+                    countBytesOut(firstPart.remaining());
+
+                    return response.eTag();
+                });
+
+                return new UploadResult(eTag, checksums.getChecksum());
+            }
+
+            return uploadMultipart(s3, key, firstPart, data, options);
+        } catch (S3Exception e) {
+            throw new RuntimeException("Failed uploading file", e);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read file contents", e);
+        }
+    }
+
+    /**
+     * Streams the payload to MMFT as a multipart upload.  Parts are read
+     * sequentially from {@code data} and uploaded concurrently, each with
+     * its own retries; parts of random access payloads are also read
+     * concurrently, each by the task that uploads it.  If any part fails,
+     * no more parts are started, the parts still running are cancelled,
+     * and the multipart upload is aborted so that no orphaned parts are
+     * left behind in the bucket.
+     * @param s3 the S3 client
+     * @param key the S3 key
+     * @param firstPart the first part, which has already been read
+     * @param data the remainder of the payload
+     * @param options the MMFT-related options
+     * @return the ETag of the uploaded object, and its checksum if verified
+     */
+    private UploadResult uploadMultipart(
+            final S3Client s3,
+            final String key,
+            final ByteBuffer firstPart,
+            final TransferPayload data,
+            final MmftOptions options
+    ) throws IOException {
+        final UploadChecksums checksums = new UploadChecksums(options.getChecksum(), key, true);
+
+        final String uploadId = retryTemplate.execute((context) -> {
+            return s3.createMultipartUpload(
+                CreateMultipartUploadRequest.builder()
+                    .bucket(options.getBucket())
+                    .key(key)
+                    .checksumAlgorithm(checksums.getAlgorithm())
+                    .build()
+            ).uploadId();
+        });
+
+        LOGGER.debug("Started multipart upload {} for {}", uploadId, key);
+
+        // Bound the number of parts held in memory for this file
+        final PartWindow window = new PartWindow(options.getPartConcurrency());
+
+        try {
+            if (data.isRandomAccess()) {
+                // Each part is read by its own task, so reading, and not
+                // just uploading, happens for several parts at once
+                window.acquire();
+                submitPart(s3, key, uploadId, 1, () -> firstPart, window, checksums, options);
+
+                long offset = firstPart.remaining();
+                while (offset < data.getContentLength() && !window.hasFailed()) {
+                    window.acquire();
+
+                    final long partOffset = offset;
+
+                    submitPart(s3, key, uploadId, window.size() + 1, () -> {
+                        return readPart(data, partOffset, options.getPartSize());
+                    }, window, checksums, options);
+
+                    offset += options.getPartSize();
+                }
+            } else {
+                long offset = 0;
+                ByteBuffer partData = firstPart;
+                while (partData.hasRemaining() && !window.hasFailed()) {
+                    window.acquire();
+
+                    final ByteBuffer partDataFinal = partData;
+
+                    submitPart(s3, key, uploadId, window.size() + 1, () -> partDataFinal, window, checksums, options);
+
+                    offset += partData.remaining();
+                    partData = readPart(data, offset, options.getPartSize());
+                }
+            }
+
+            // Waiting is interruptible, so an aborted attempt stops here
+            // rather than once its last part is done
+            final List<CompletedPart> completedParts = window.await();
+
+            checkLength(data, window.getBytesRead());
+
+            final CompleteMultipartUploadResponse response = retryTemplate.execute((context) -> {
+                return s3.completeMultipartUpload(
+                    CompleteMultipartUploadRequest.builder()
                         .bucket(options.getBucket())
                         .key(key)
-                        .build(),
-                    RequestBody.fromBytes(data)
+                        .uploadId(uploadId)
+                        .multipartUpload(CompletedMultipartUpload.builder()
+                            .parts(completedParts)
+                            .build()
+                        )
+                        .build()
                 );
             });
-        } catch (S3Exception e) {
-            throw new RuntimeException("Failed uploading file", e);
+
+            LOGGER.debug("Finished multipart upload {} with {} part(s)", uploadId, completedParts.size());
+
+            // The object is already stored by now, so a mismatch fails
+            // the transfer rather than being retried
+            checksums.verifyObject(response.eTag(), response.checksumSHA256());
+
+            return new UploadResult(response.eTag(), checksums.getChecksum());
+        } catch (InterruptedException e) {
+            window.cancel();
+            abortMultipart(s3, key, uploadId, options);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while uploading file", e);
+        } catch (ExecutionException e) {
+            window.cancel();
+            abortMultipart(s3, key, uploadId, options);
+            throw new RuntimeException("Failed uploading file", e.getCause());
+        } catch (IOException | RuntimeException e) {
+            window.cancel();
+            abortMultipart(s3, key, uploadId, options);
+            throw e;
         }
     }
 
     /**
-     * Creates an S3 client with the MMFT customizations applied.
+     * Reads and uploads a part on a worker thread, releasing its slot in
+     * the window of parts in flight once it is done.
+     * @param s3 the S3 client
+     * @param key the S3 key
+     * @param uploadId the multipart upload id
+     * @param partNumber the 1-based part number
+     * @param reader reads the contents of the part
+     * @param window the window of parts in flight, already acquired
+     * @param checksums the checksums of the upload
+     * @param options the MMFT-related options
+     */
+    private void submitPart(
+            final S3Client s3,
+            final String key,
+            final String uploadId,
+            final int partNumber,
+            final Callable<ByteBuffer> reader,
+            final PartWindow window,
+            final UploadChecksums checksums,
+            final MmftOptions options
+    ) {
+        final CompletableFuture<CompletedPart> part = new CompletableFuture<>();
+
+        final Future<?> task = partExecutorService.submit(() -> {
+            try {
+                final ByteBuffer partData = reader.call();
+                window.addBytesRead(partData.remaining());
+
+                part.complete(uploadPart(s3, key, uploadId, partNumber, partData, checksums, options));
+            } catch (IOException e) {
+                part.completeExceptionally(new UncheckedIOException("Unable to read file contents", e));
+            } catch (RuntimeException | Error e) {
+                part.completeExceptionally(e);
+            } catch (Exception e) {
+                part.completeExceptionally(new IllegalStateException("Unable to read file contents", e));
+            } finally {
+                window.release();
+            }
+        });
+
+        window.add(part, task);
+    }
+
+    /**
+     * Uploads a single part of a multipart upload, retrying as needed.
+     * @param s3 the S3 client
+     * @param key the S3 key
+     * @param uploadId the multipart upload id
+     * @param partNumber the 1-based part number
+     * @param partData the contents of the part
+     * @param checksums the checksums of the upload
      * @param options the MMFT-related options
-     * @return the S3 client
+     * @return the completed part, to be used when completing the upload
      */
-    private static S3Client getS3(final MmftOptions options) {
+    private CompletedPart uploadPart(
+            final S3Client s3,
+            final String key,
+            final String uploadId,
+            final int partNumber,
+            final ByteBuffer partData,
+            final UploadChecksums checksums,
+            final MmftOptions options
+    ) {
+        final UploadChecksums.PartChecksum checksum = checksums.addPart(partNumber, partData);
+
+        return retryTemplate.execute((context) -> {
+            LOGGER.debug("Uploading part {} of {} ({} byte(s))", partNumber, key, partData.remaining());
+
+            final UploadPartResponse response = s3.uploadPart(
+                UploadPartRequest.builder()
+                    .bucket(options.getBucket())
+                    .key(key)
+                    .uploadId(uploadId)
+                    .partNumber(partNumber)
+                    .contentLength((long) partData.remaining())
+                    .contentMD5(checksum.getContentMd5())
+                    .checksumSHA256(checksum.getSha256())
+                    .build(),
+                toRequestBody(partData, mmftClientService.getBandwidthLimiter(options))
+            );
+
+            checksums.verifyPart(partNumber, response.eTag(), response.checksumSHA256());
+            countBytesOut(partData.remaining());
+
+            return CompletedPart.builder()
+                .partNumber(partNumber)
+                .eTag(response.eTag())
+                .checksumSHA256(checksum.getSha256())
+                .build();
+        });
+    }
+
+    /**
+     * Aborts a multipart upload, releasing any parts already stored.
+     * Failures are logged rather than thrown so the original problem is
+     * the one reported.
+     * @param s3 the S3 client
+     * @param key the S3 key
+     * @param uploadId the multipart upload id
+     * @param options the MMFT-related options
+     */
+    private void abortMultipart(
+            final S3Client s3,
+            final String key,
+            final String uploadId,
+            final MmftOptions options
+    ) {
+        // An interrupted thread cannot send requests, yet uploads abandoned
+        // by an interrupt still need aborting, so it is held back until then
+        final boolean wasInterrupted = Thread.interrupted();
+
         try {
-            return S3Client.builder()
-                .region(Region.US_EAST_1)
-                .credentialsProvider(StaticCredentialsProvider.create(
-                    AwsBasicCredentials.create(options.getAccessKey(), options.getSecretKey())
-                ))
-                .endpointOverride(new URI(options.getEndpoint()))
-                .serviceConfiguration(S3Configuration.builder()
-                    .pathStyleAccessEnabled(true)
+            LOGGER.debug("Aborting multipart upload {} for {}", uploadId, key);
+
+            s3.abortMultipartUpload(
+                AbortMultipartUploadRequest.builder()
+                    .bucket(options.getBucket())
+                    .key(key)
+                    .uploadId(uploadId)
                     .build()
-                )
-                .build();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+            );
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to abort multipart upload {} for {}", uploadId, key, e);
+        } finally {
+            if (wasInterrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Uploads the {@code data} payload provided to MMFT without tying up a
+     * thread while requests are in flight.  Reading from {@code data} may
+     * block, so it happens on {@code readExecutor}; the requests themselves
+     * are sent on the shared event loop of the asynchronous client.  Parts
+     * of a multipart upload are sent one after another, with the next part
+     * read while the current one is uploading.  Once {@code cancellation}
+     * completes, the requests in flight are cancelled and none are retried.
+     * @param filename the filename portion of the S3 key
+     * @param data the payload to upload
+     * @param options the MMFT-related options
+     * @param readExecutor the executor used for reading from {@code data}
+     * @param cancellation completes once the upload is no longer wanted
+     * @return a future that completes with the ETag of the uploaded object
+     */
+    public CompletableFuture<UploadResult> uploadAsync(
+            final String filename,
+            final TransferPayload data,
+            final MmftOptions options,
+            final Executor readExecutor,
+            final CompletableFuture<Void> cancellation
+    ) {
+        final S3AsyncClient s3 = mmftClientService.getS3AsyncClient(options);
+
+        final String key = getKey(options.getFolder(), filename);
+
+        LOGGER.debug("Uploading {} asynchronously", key);
+
+        // The event loop must not block, so whole requests wait for their
+        // bandwidth before they are sent
+        final BandwidthLimiter bandwidthLimiter = mmftClientService.getBandwidthLimiter(options);
+
+        return readPartAsync(data, 0, options.getPartSize(), readExecutor).thenCompose(firstPart -> {
+            if (isWholePayload(firstPart, data, options)) {
+                try {
+                    checkLength(data, firstPart.remaining());
+                } catch (IOException e) {
+                    return CompletableFuture.failedFuture(e);
+                }
+
+                final UploadChecksums checksums = new UploadChecksums(options.getChecksum(), key, false);
+                final UploadChecksums.PartChecksum checksum = checksums.addPart(1, firstPart);
+
+                return this.<PutObjectResponse>retryAsync(() -> {
+                    return bandwidthLimiter.acquireAsync(firstPart.remaining()).thenCompose(ignored -> cancelOn(s3.putObject(
+                        PutObjectRequest.builder()
+                            .bucket(options.getBucket())
+                            .key(key)
+                            .contentMD5(checksum.getContentMd5())
+                            .checksumSHA256(checksum.getSha256())
+                            .build(),
+                        new ByteBufferAsyncRequestBody(firstPart)
+                    ), cancellation)).thenApply(response -> {
+                        checksums.verifyObject(response.eTag(), response.checksumSHA256());
+                        countBytesOut(firstPart.remaining());
+                        return response;
+                    });
+                }, cancellation).thenApply(response -> new UploadResult(response.eTag(), checksums.getChecksum()));
+            }
+
+            return uploadMultipartAsync(s3, key, firstPart, data, options, readExecutor, cancellation);
+        });
+    }
+
+    /**
+     * Streams the payload to MMFT as an asynchronous multipart upload,
+     * aborting it if anything fails.
+     * @param s3 the asynchronous S3 client
+     * @param key the S3 key
+     * @param firstPart the first part, which has already been read
+     * @param data the remainder of the payload
+     * @param options the MMFT-related options
+     * @param readExecutor the executor used for reading from {@code data}
+     * @param cancellation completes once the upload is no longer wanted
+     * @return a future that completes with the ETag of the uploaded object,
+     *         and its checksum if verified
+     */
+    private CompletableFuture<UploadResult> uploadMultipartAsync(
+            final S3AsyncClient s3,
+            final String key,
+            final ByteBuffer firstPart,
+            final TransferPayload data,
+            final MmftOptions options,
+            final Executor readExecutor,
+            final CompletableFuture<Void> cancellation
+    ) {
+        final UploadChecksums checksums = new UploadChecksums(options.getChecksum(), key, true);
+
+        return retryAsync(() -> {
+            return cancelOn(s3.createMultipartUpload(
+                CreateMultipartUploadRequest.builder()
+                    .bucket(options.getBucket())
+                    .key(key)
+                    .checksumAlgorithm(checksums.getAlgorithm())
+                    .build()
+            ), cancellation);
+        }, cancellation).thenCompose(created -> {
+            final String uploadId = created.uploadId();
+
+            LOGGER.debug("Started asynchronous multipart upload {} for {}", uploadId, key);
+
+            // Parts are chained one after another, so this is never
+            // modified concurrently
+            final List<CompletedPart> completedParts = new ArrayList<>();
+
+            return uploadPartsAsync(
+                s3, key, uploadId, 1, 0, firstPart, data, checksums, options, readExecutor, cancellation, completedParts
+            )
+                .thenCompose(ignored -> retryAsync(() -> {
+                    return cancelOn(s3.completeMultipartUpload(
+                        CompleteMultipartUploadRequest.builder()
+                            .bucket(options.getBucket())
+                            .key(key)
+                            .uploadId(uploadId)
+                            .multipartUpload(CompletedMultipartUpload.builder()
+                                .parts(completedParts)
+                                .build()
+                            )
+                            .build()
+                    ), cancellation);
+                }, cancellation))
+                .handle((response, error) -> {
+                    if (error == null) {
+                        LOGGER.debug("Finished asynchronous multipart upload {} with {} part(s)", uploadId, completedParts.size());
+
+                        // The object is already stored by now, so a mismatch
+                        // fails the transfer rather than being retried
+                        return CompletableFuture.supplyAsync(() -> {
+                            checksums.verifyObject(response.eTag(), response.checksumSHA256());
+                            return new UploadResult(response.eTag(), checksums.getChecksum());
+                        }, Runnable::run);
+                    }
+
+                    return abortMultipartAsync(s3, key, uploadId, options)
+                        .thenCompose(aborted -> CompletableFuture.<UploadResult>failedFuture(error));
+                })
+                .thenCompose(Function.identity());
+        });
+    }
+
+    /**
+     * Uploads {@code partData} as part {@code partNumber}, then continues
+     * with the following parts until the payload is exhausted.
+     * @param s3 the asynchronous S3 client
+     * @param key the S3 key
+     * @param uploadId the multipart upload id
+     * @param partNumber the 1-based part number of {@code partData}
+     * @param offset the offset of {@code partData} within the payload
+     * @param partData the contents of the part
+     * @param data the remainder of the payload
+     * @param checksums the checksums of the upload
+     * @param options the MMFT-related options
+     * @param readExecutor the executor used for reading from {@code data}
+     * @param cancellation completes once the upload is no longer wanted
+     * @param completedParts the parts completed so far, in order
+     * @return a future that completes once every part has been uploaded
+     */
+    private CompletableFuture<Void> uploadPartsAsync(
+            final S3AsyncClient s3,
+            final String key,
+            final String uploadId,
+            final int partNumber,
+            final long offset,
+            final ByteBuffer partData,
+            final TransferPayload data,
+            final UploadChecksums checksums,
+            final MmftOptions options,
+            final Executor readExecutor,
+            final CompletableFuture<Void> cancellation,
+            final List<CompletedPart> completedParts
+    ) {
+        // Past the last part, the offset is the number of bytes read
+        if (!partData.hasRemaining()) {
+            try {
+                checkLength(data, offset);
+                return CompletableFuture.completedFuture(null);
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
         }
+
+        final long nextOffset = offset + partData.remaining();
+
+        final BandwidthLimiter bandwidthLimiter = mmftClientService.getBandwidthLimiter(options);
+
+        // Read the next part while this one is uploading
+        final CompletableFuture<ByteBuffer> nextPart = readPartAsync(data, nextOffset, options.getPartSize(), readExecutor);
+
+        final UploadChecksums.PartChecksum checksum = checksums.addPart(partNumber, partData);
+
+        return retryAsync(() -> {
+            LOGGER.debug("Uploading part {} of {} ({} byte(s)) asynchronously", partNumber, key, partData.remaining());
+
+            return bandwidthLimiter.acquireAsync(partData.remaining()).thenCompose(ignored -> cancelOn(s3.uploadPart(
+                UploadPartRequest.builder()
+                    .bucket(options.getBucket())
+                    .key(key)
+                    .uploadId(uploadId)
+                    .partNumber(partNumber)
+                    .contentLength((long) partData.remaining())
+                    .contentMD5(checksum.getContentMd5())
+                    .checksumSHA256(checksum.getSha256())
+                    .build(),
+                new ByteBufferAsyncRequestBody(partData)
+            ), cancellation)).thenApply(response -> {
+                checksums.verifyPart(partNumber, response.eTag(), response.checksumSHA256());
+                countBytesOut(partData.remaining());
+                return response;
+            });
+        }, cancellation).thenCombine(nextPart, (response, nextPartData) -> {
+            completedParts.add(CompletedPart.builder()
+                .partNumber(partNumber)
+                .eTag(response.eTag())
+                .checksumSHA256(checksum.getSha256())
+                .build()
+            );
+
+            return nextPartData;
+        }).thenCompose(nextPartData -> {
+            return uploadPartsAsync(
+                s3, key, uploadId, partNumber + 1, nextOffset, nextPartData, data, checksums, options, readExecutor, cancellation,
+                completedParts
+            );
+        });
+    }
+
+    /**
+     * Aborts an asynchronous multipart upload.  The returned future never
+     * fails; problems are logged so the original failure is the one
+     * reported.
+     * @param s3 the asynchronous S3 client
+     * @param key the S3 key
+     * @param uploadId the multipart upload id
+     * @param options the MMFT-related options
+     * @return a future that completes once the abort has been attempted
+     */
+    private CompletableFuture<Void> abortMultipartAsync(
+            final S3AsyncClient s3,
+            final String key,
+            final String uploadId,
+            final MmftOptions options
+    ) {
+        LOGGER.debug("Aborting asynchronous multipart upload {} for {}", uploadId, key);
+
+        return s3.abortMultipartUpload(
+            AbortMultipartUploadRequest.builder()
+                .bucket(options.getBucket())
+                .key(key)
+                .uploadId(uploadId)
+                .build()
+        ).handle((response, error) -> {
+            if (error != null) {
+                LOGGER.warn("Unable to abort multipart upload {} for {}", uploadId, key, error);
+            }
+
+            return null;
+        });
+    }
+
+    /**
+     * Runs an asynchronous operation, retrying it with the same attempt
+     * limit and exponential backoff as the {@link RetryTemplate} used for
+     * synchronous calls.  Waiting between attempts does not block a thread.
+     * @param operation the operation, which is invoked once per attempt
+     * @param cancellation completes once the operation is no longer wanted,
+     *                     after which it is not attempted again
+     * @param <T> the result type
+     * @return a future holding the result of the first successful attempt
+     */
+    private <T> CompletableFuture<T> retryAsync(
+            final Supplier<CompletableFuture<T>> operation,
+            final CompletableFuture<Void> cancellation
+    ) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+
+        attemptAsync(operation, cancellation, 1, retryInitialDelay, result);
+
+        return result;
+    }
+
+    private <T> void attemptAsync(
+            final Supplier<CompletableFuture<T>> operation,
+            final CompletableFuture<Void> cancellation,
+            final int attempt,
+            final long delay,
+            final CompletableFuture<T> result
+    ) {
+        if (cancellation.isDone()) {
+            result.completeExceptionally(new CancellationException("Upload is no longer wanted"));
+            return;
+        }
+
+        CompletableFuture<T> future;
+        try {
+            future = operation.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+
+        future.whenComplete((value, error) -> {
+            if (error == null) {
+                result.complete(value);
+                return;
+            }
+
+            if (attempt >= retryMaxAttempts || cancellation.isDone()) {
+                result.completeExceptionally(error);
+                return;
+            }
+
+            LOGGER.debug("Attempt {} failed, retrying in {} ms", attempt, delay, error);
+
+            Counter.builder(MetricNames.RETRIES)
+                .tag(MetricNames.TAG_PIPELINE, MetricNames.PIPELINE_TRANSFER)
+                .register(meterRegistry)
+                .increment();
+
+            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS).execute(() -> {
+                attemptAsync(operation, cancellation, attempt + 1, Math.min(delay * retryBackoffMultiplier, retryMaxDelay), result);
+            });
+        });
+    }
+
+    /**
+     * Cancels an asynchronous request once {@code cancellation} completes,
+     * which makes the client abandon it rather than finish sending it.
+     * @param request the future returned by the client
+     * @param cancellation completes once the request is no longer wanted
+     * @param <T> the response type
+     * @return {@code request}
+     */
+    private static <T> CompletableFuture<T> cancelOn(final CompletableFuture<T> request, final CompletableFuture<Void> cancellation) {
+        cancellation.whenComplete((ignored, error) -> request.cancel(true));
+        return request;
+    }
+
+    /**
+     * Reads up to {@code partSize} bytes from the payload on the given
+     * executor.
+     * @param data the payload to read from
+     * @param offset the offset to read from
+     * @param partSize the maximum number of bytes to read
+     * @param readExecutor the executor used for reading
+     * @return a future holding the bytes read
+     */
+    private static CompletableFuture<ByteBuffer> readPartAsync(
+            final TransferPayload data,
+            final long offset,
+            final int partSize,
+            final Executor readExecutor
+    ) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return readPart(data, offset, partSize);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to read file contents", e);
+            }
+        }, readExecutor);
+    }
+
+    /**
+     * Reads up to {@code partSize} bytes from the payload.  Random access
+     * payloads are read at {@code offset}; other payloads are read from
+     * wherever the previous read stopped, which must be {@code offset}.
+     * @param data the payload to read from
+     * @param offset the offset to read from
+     * @param partSize the maximum number of bytes to read
+     * @return the bytes read, which is shorter than {@code partSize} only
+     *     when the end of the payload has been reached
+     */
+    private static ByteBuffer readPart(
+            final TransferPayload data,
+            final long offset,
+            final int partSize
+    ) throws IOException {
+        if (data.isRandomAccess()) {
+            final long length = Math.min(partSize, Math.max(data.getContentLength() - offset, 0));
+            return data.getRange(offset, (int) length);
+        }
+
+        return ByteBuffer.wrap(data.getInputStream().readNBytes(partSize));
+    }
+
+    /**
+     * Whether the first part read holds the whole payload.
+     * @param firstPart the first part read
+     * @param data the payload
+     * @param options the MMFT-related options
+     * @return true if there is nothing left to read after the first part
+     */
+    private static boolean isWholePayload(
+            final ByteBuffer firstPart,
+            final TransferPayload data,
+            final MmftOptions options
+    ) {
+        return firstPart.remaining() < options.getPartSize()
+            || firstPart.remaining() == data.getContentLength();
+    }
+
+    /**
+     * Checks that the bytes read add up to the length the payload was
+     * said to have, so that a source that ends early, or runs on, does not
+     * leave an object of the wrong size in MMFT.
+     * @param data the payload
+     * @param bytesRead the number of bytes read from it
+     * @throws IOException if a known length does not match
+     */
+    private static void checkLength(final TransferPayload data, final long bytesRead) throws IOException {
+        if (data.getContentLength() != TransferPayload.UNKNOWN_LENGTH && bytesRead != data.getContentLength()) {
+            throw new IOException(String.format(
+                "Read %d of the %d byte(s) expected from the source",
+                bytesRead,
+                data.getContentLength()
+            ));
+        }
+    }
+
+    /**
+     * Counts bytes that MMFT has accepted.  Attempts that failed are not
+     * counted, so retried requests are only counted once.
+     * @param bytes the number of bytes
+     */
+    private void countBytesOut(final long bytes) {
+        Counter.builder(MetricNames.TRANSFER_BYTES_OUT)
+            .baseUnit(MetricNames.BYTES)
+            .description("Bytes uploaded to MMFT")
+            .register(meterRegistry)
+            .increment(bytes);
+    }
+
+    /**
+     * Creates a request body that reads from the buffer without copying it,
+     * starting over from the beginning whenever the request is retried.
+     * @param buffer the contents of the request
+     * @param bandwidthLimiter paces the reads done by the HTTP client
+     * @return the request body
+     */
+    private static RequestBody toRequestBody(final ByteBuffer buffer, final BandwidthLimiter bandwidthLimiter) {
+        return RequestBody.fromContentProvider(
+            () -> bandwidthLimiter.limit(new ByteBufferInputStream(buffer.asReadOnlyBuffer())),
+            buffer.remaining(),
+            CONTENT_TYPE
+        );
+    }
+
+    /**
+     * Lists the objects in the MMFT folder, one page at a time.
+     * @param options the MMFT-related options
+     * @return the index of the objects found
+     */
+    public MmftBucketIndex buildBucketIndex(final MmftOptions options) {
+        final S3Client s3 = mmftClientService.getS3Client(options);
+
+        final String folder = getKey(options.getFolder(), "");
+        final String prefix = folder.isEmpty() ? "" : folder + "/";
+
+        try {
+            return retryTemplate.execute((context) -> {
+                final MmftBucketIndex index = new MmftBucketIndex(MmftBucketIndex.getTarget(options), Instant.now());
+
+                s3.listObjectsV2Paginator(
+                    ListObjectsV2Request.builder()
+                        .bucket(options.getBucket())
+                        .prefix(prefix)
+                        .build()
+                ).contents().forEach(object -> index.put(object.key(), object.size(), object.eTag()));
+
+                LOGGER.debug("Found {} object(s) under {}", index.size(), prefix);
+
+                return index;
+            });
+        } catch (S3Exception e) {
+            throw new RuntimeException("Failed listing MMFT folder", e);
+        }
+    }
+
+    /**
+     * Computes the ETag MMFT gives the payload when it is uploaded with the
+     * current part size: the MD5 of the contents for a single request, or
+     * the MD5 of the part MD5s followed by the number of parts for a
+     * multipart upload.
+     * @param data the payload, which is read to the end
+     * @param options the MMFT-related options
+     * @return the ETag, without quotes
+     * @throws IOException if the payload cannot be read
+     */
+    public String computeETag(final TransferPayload data, final MmftOptions options) throws IOException {
+        final InputStream inputStream = data.getInputStream();
+        final byte[] buffer = new byte[ETAG_BUFFER_SIZE];
+
+        final List<byte[]> partDigests = new ArrayList<>();
+
+        while (true) {
+            // Hash one part worth of bytes
+            final MessageDigest partDigest = newMd5Digest();
+
+            long partBytes = 0;
+            int count;
+            while (partBytes < options.getPartSize()
+                    && (count = inputStream.read(buffer, 0, (int) Math.min(buffer.length, options.getPartSize() - partBytes))) >= 0) {
+                partDigest.update(buffer, 0, count);
+                partBytes += count;
+            }
+
+            // Nothing is left after a full part, so that was the last one
+            if (partBytes == 0 && !partDigests.isEmpty()) {
+                break;
+            }
+
+            partDigests.add(partDigest.digest());
+
+            if (partBytes < options.getPartSize()) {
+                break;
+            }
+        }
+
+        if (partDigests.size() == 1) {
+            return HashCode.fromBytes(partDigests.get(0)).toString();
+        }
+
+        final MessageDigest digest = newMd5Digest();
+        partDigests.forEach(digest::update);
+
+        return String.format("%s-%d", HashCode.fromBytes(digest.digest()), partDigests.size());
+    }
+
+    private static MessageDigest newMd5Digest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+
+    /**
+     * Reports every request that MMFT throttles to the given limiter as it
+     * happens, rather than only once the retries are used up.  To be
+     * called before anything is uploaded.
+     * @param limiter the limiter of the current run
+     */
+    public void reportThrottlingTo(final ConcurrencyLimiter limiter) {
+        mmftClientService.reportThrottlingTo(limiter);
+    }
+
+    /**
+     * Uploads the parts of multipart uploads on virtual threads, if the
+     * JVM supports them, rather than on a pool of platform threads.  To be
+     * called before anything is uploaded.
+     */
+    public void useVirtualThreads() {
+        WorkerExecutors.newVirtualThreadPerTaskExecutor().ifPresent(executorService -> {
+            partExecutorService.shutdown();
+            partExecutorService = executorService;
+        });
+    }
+
+    /**
+     * Stops the worker threads used for part uploads.
+     */
+    @PreDestroy
+    public void shutdown() {
+        partExecutorService.shutdownNow();
+    }
+
+    /**
+     * Returns the key a file is uploaded to.
+     * @param filename the filename
+     * @param options the options related to MMFT
+     * @return the S3 key
+     */
+    public String getKey(final String filename, final MmftOptions options) {
+        return getKey(options.getFolder(), filename);
     }
 
     /**
@@ -114,4 +999,92 @@ public class MmftService {
             "/"
         );
     }
+
+    /**
+     * The parts of a multipart upload in flight.  It bounds how many are
+     * held in memory, adds up the bytes read for them, and remembers the
+     * first one to fail, so that no more parts are started and the parts
+     * still running can be cancelled.
+     */
+    private static final class PartWindow {
+
+        private final Semaphore slots;
+
+        private final AtomicLong bytesRead = new AtomicLong();
+
+        private final CompletableFuture<Void> failure = new CompletableFuture<>();
+
+        private final List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+
+        private final List<Future<?>> tasks = new ArrayList<>();
+
+        PartWindow(final int size) {
+            this.slots = new Semaphore(size);
+        }
+
+        void acquire() throws InterruptedException {
+            slots.acquire();
+        }
+
+        void release() {
+            slots.release();
+        }
+
+        void add(final CompletableFuture<CompletedPart> part, final Future<?> task) {
+            parts.add(part);
+            tasks.add(task);
+
+            part.whenComplete((completed, error) -> {
+                if (error != null) {
+                    failure.completeExceptionally(error);
+                }
+            });
+        }
+
+        void addBytesRead(final long bytes) {
+            bytesRead.addAndGet(bytes);
+        }
+
+        long getBytesRead() {
+            return bytesRead.get();
+        }
+
+        boolean hasFailed() {
+            return failure.isDone();
+        }
+
+        int size() {
+            return parts.size();
+        }
+
+        /**
+         * Waits until every part is done, or until the first one fails.
+         * @return the completed parts, in order
+         * @throws InterruptedException if interrupted while waiting
+         * @throws ExecutionException if a part failed
+         */
+        List<CompletedPart> await() throws InterruptedException, ExecutionException {
+            CompletableFuture.anyOf(
+                CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0])),
+                failure
+            ).get();
+
+            final List<CompletedPart> completedParts = new ArrayList<>(parts.size());
+            for (CompletableFuture<CompletedPart> part : parts) {
+                completedParts.add(part.get());
+            }
+
+            return completedParts;
+        }
+
+        /**
+         * Stops the parts still running, so that they do not carry on
+         * uploading to a multipart upload that is about to be aborted.
+         */
+        void cancel() {
+            tasks.forEach(task -> task.cancel(true));
+        }
+
+    }
+
 }
@@ -0,0 +1,136 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.util.Arrays;
+
+/**
+ * A compiled glob that matches a path given as a prefix and a name, so a
+ * listing can check each entry without joining the two, and without
+ * allocating anything per match.  A {@code *} matches any run of
+ * characters, slashes included, a {@code ?} matches any one character,
+ * and a backslash makes the character after it literal, or stands for a
+ * newline, carriage return or tab with {@code n}, {@code r} or {@code t}.
+ * Matching is case sensitive.
+ */
+final class PathGlob {
+
+    private static final char ANY_RUN = '*';
+    private static final char ANY_ONE = '?';
+    private static final char ESCAPE = '\\';
+
+    private final char[] chars;
+
+    private final boolean[] isAnyRun;
+
+    private final boolean[] isAnyOne;
+
+    private PathGlob(final char[] chars, final boolean[] isAnyRun, final boolean[] isAnyOne) {
+        this.chars = chars;
+        this.isAnyRun = isAnyRun;
+        this.isAnyOne = isAnyOne;
+    }
+
+    /**
+     * Compiles a glob.
+     * @param glob the glob
+     * @return the compiled glob
+     */
+    static PathGlob compile(final String glob) {
+        final char[] chars = new char[glob.length()];
+        final boolean[] isAnyRun = new boolean[glob.length()];
+        final boolean[] isAnyOne = new boolean[glob.length()];
+
+        int length = 0;
+
+        for (int i = 0; i < glob.length(); i++) {
+            final char c = glob.charAt(i);
+
+            // A trailing backslash has nothing to escape, so it is dropped
+            if (c == ESCAPE) {
+                if (i + 1 < glob.length()) {
+                    chars[length++] = unescape(glob, glob.charAt(++i));
+                }
+
+                continue;
+            }
+
+            // Consecutive runs match the same as a single one
+            if (c == ANY_RUN && length > 0 && isAnyRun[length - 1]) {
+                continue;
+            }
+
+            chars[length] = c;
+            isAnyRun[length] = c == ANY_RUN;
+            isAnyOne[length] = c == ANY_ONE;
+            length++;
+        }
+
+        return new PathGlob(
+            Arrays.copyOf(chars, length),
+            Arrays.copyOf(isAnyRun, length),
+            Arrays.copyOf(isAnyOne, length)
+        );
+    }
+
+    private static char unescape(final String glob, final char escaped) {
+        switch (escaped) {
+            case ANY_RUN:
+            case ANY_ONE:
+            case ESCAPE:
+                return escaped;
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            default:
+                throw new IllegalArgumentException(String.format("Unknown escape sequence \\%c in glob: %s", escaped, glob));
+        }
+    }
+
+    /**
+     * Checks a path.
+     * @param prefix the start of the path, which may be empty
+     * @param name the rest of the path
+     * @return true if the whole path matches
+     */
+    boolean matches(final String prefix, final String name) {
+        final int length = prefix.length() + name.length();
+
+        int next = 0;
+        int index = 0;
+
+        // Where matching resumes if what follows the last run fails,
+        // with the run taking one more character
+        int lastRun = -1;
+        int lastRunIndex = 0;
+
+        while (index < length) {
+            if (next < chars.length && isAnyRun[next]) {
+                lastRun = next++;
+                lastRunIndex = index;
+            } else if (next < chars.length && (isAnyOne[next] || chars[next] == charAt(prefix, name, index))) {
+                next++;
+                index++;
+            } else if (lastRun >= 0) {
+                next = lastRun + 1;
+                index = ++lastRunIndex;
+            } else {
+                return false;
+            }
+        }
+
+        while (next < chars.length && isAnyRun[next]) {
+            next++;
+        }
+
+        return next == chars.length;
+    }
+
+    private static char charAt(final String prefix, final String name, final int index) {
+        return index < prefix.length()
+            ? prefix.charAt(index)
+            : name.charAt(index - prefix.length());
+    }
+
+}
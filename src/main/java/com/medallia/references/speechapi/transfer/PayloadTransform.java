@@ -0,0 +1,27 @@
+package com.medallia.references.speechapi.transfer;
+
+/**
+ * A stage between reading a file from the source and uploading it to
+ * MMFT, which rewrites the contents of the file, such as to compress it.
+ * Since the contents change, so may the name the file is uploaded under.
+ */
+public interface PayloadTransform {
+
+    /**
+     * Returns the name a file is uploaded under once transformed, which
+     * is also what its MMFT key is derived from.
+     * @param filename the name of the file in the source
+     * @return the name of the transformed file
+     */
+    String getTargetName(String filename);
+
+    /**
+     * Transforms the contents of a file.  The payload returned takes over
+     * the one given, so closing it releases both.
+     * @param filename the name of the file in the source
+     * @param payload the contents of the file
+     * @return the transformed contents
+     */
+    TransferPayload apply(String filename, TransferPayload payload);
+
+}
@@ -0,0 +1,396 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A bounded, thread-safe pool of SFTP channels.  Channels are multiplexed
+ * over a limited number of SSH sessions, so logging in happens once per
+ * session rather than once per thread or per file.
+ *
+ * <p>Idle channels are reused most recently used first, checked before
+ * they are handed out again, and closed once they have been idle for too
+ * long.  A session is closed when its last channel is.
+ */
+@Slf4j
+public class SftpConnectionPool implements Closeable {
+
+    /**
+     * Channels idle for less than this are assumed to still work, which
+     * saves a round trip to the server when they are reused right away.
+     */
+    public static final long VALIDATION_IDLE_THRESHOLD_MSEC = 1000;
+
+    private final SftpOptions options;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+
+    /** The number of channels open or being opened on each session. */
+    private final Map<Session, Integer> channelCounts = new IdentityHashMap<>();
+
+    /** The idle channels, most recently released first. */
+    private final Deque<IdleChannel> idleChannels = new ArrayDeque<>();
+
+    private int pendingSessions = 0;
+    private boolean closed = false;
+
+    private final ScheduledExecutorService evictionService;
+
+    /**
+     * Creates an empty pool; connections are only made when needed.
+     * @param options the SFTP server to connect to and the pool limits
+     */
+    public SftpConnectionPool(final SftpOptions options) {
+        this.options = options;
+
+        this.evictionService = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder()
+                .setNameFormat("sftp-eviction-%d")
+                .setDaemon(true)
+                .build()
+        );
+
+        final long idleTimeout = options.getIdleTimeout();
+        evictionService.scheduleWithFixedDelay(this::evictIdle, idleTimeout, idleTimeout, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Borrows a channel, runs the given action with it and returns the
+     * channel to the pool.
+     * @param action the action to run
+     * @param <T> the type of the result
+     * @return the result of the action
+     */
+    public <T> T execute(final Function<SftpInstance, T> action) {
+        final SftpInstance sftp = borrow();
+
+        try {
+            return action.apply(sftp);
+        } finally {
+            release(sftp);
+        }
+    }
+
+    /**
+     * Takes a channel out of the pool, waiting for one to be released if
+     * the pool is exhausted.  The channel must be handed back with
+     * {@link #release(SftpInstance)}.
+     * @return a connected channel
+     */
+    public SftpInstance borrow() {
+        while (true) {
+            IdleChannel idleChannel = null;
+            Session session = null;
+            boolean isNewSession = false;
+
+            // Decide how to get a channel while holding the lock, but do
+            // the slow network work after letting go of it
+            lock.lock();
+            try {
+                while (true) {
+                    ensureOpen();
+
+                    idleChannel = idleChannels.pollFirst();
+                    if (idleChannel != null) {
+                        break;
+                    }
+
+                    session = getSessionWithCapacity();
+                    if (session != null) {
+                        channelCounts.merge(session, 1, Integer::sum);
+                        break;
+                    }
+
+                    if (channelCounts.size() + pendingSessions < options.getMaxSessions()) {
+                        pendingSessions++;
+                        isNewSession = true;
+                        break;
+                    }
+
+                    available.await();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for an SFTP connection", e);
+            } finally {
+                lock.unlock();
+            }
+
+            if (idleChannel != null) {
+                if (isUsable(idleChannel)) {
+                    return idleChannel.getSftp();
+                }
+
+                LOGGER.debug("Discarding stale SFTP channel");
+                invalidate(idleChannel.getSftp());
+                continue;
+            }
+
+            if (isNewSession) {
+                session = openSession();
+            }
+
+            final SftpInstance sftp = new SftpInstance(session);
+
+            try {
+                sftp.connect();
+            } catch (RuntimeException e) {
+                invalidate(sftp);
+                throw e;
+            }
+
+            return sftp;
+        }
+    }
+
+    /**
+     * Hands a borrowed channel back to the pool.  Channels that were
+     * disconnected while in use are discarded.
+     * @param sftp the channel to release
+     */
+    public void release(final SftpInstance sftp) {
+        lock.lock();
+        try {
+            if (!closed && sftp.isConnected()) {
+                idleChannels.addFirst(new IdleChannel(sftp, System.currentTimeMillis()));
+                available.signal();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        invalidate(sftp);
+    }
+
+    /**
+     * Closes a channel instead of returning it to the pool, along with
+     * its session if no other channels are using it.
+     * @param sftp the channel to discard
+     */
+    public void invalidate(final SftpInstance sftp) {
+        final Session session = sftp.getSession();
+        final boolean isLastChannel;
+
+        lock.lock();
+        try {
+            final Integer count = channelCounts.get(session);
+
+            isLastChannel = count == null || count <= 1;
+
+            if (isLastChannel) {
+                channelCounts.remove(session);
+            } else {
+                channelCounts.put(session, count - 1);
+            }
+
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+
+        sftp.disconnect();
+
+        if (isLastChannel || !session.isConnected()) {
+            disconnectSession(session);
+        }
+    }
+
+    /**
+     * Closes every channel and session, including the ones currently
+     * borrowed.  Threads waiting for a channel fail instead of waiting.
+     */
+    @Override
+    public void close() {
+        final List<IdleChannel> idle;
+        final List<Session> sessions;
+
+        lock.lock();
+        try {
+            closed = true;
+
+            idle = new ArrayList<>(idleChannels);
+            idleChannels.clear();
+
+            sessions = new ArrayList<>(channelCounts.keySet());
+            channelCounts.clear();
+
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        evictionService.shutdownNow();
+
+        idle.forEach(idleChannel -> idleChannel.getSftp().disconnect());
+        sessions.forEach(SftpConnectionPool::disconnectSession);
+
+        LOGGER.debug("Closed SFTP connection pool with {} session(s)", sessions.size());
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("The SFTP connection pool was closed");
+        }
+    }
+
+    private Session getSessionWithCapacity() {
+        for (Map.Entry<Session, Integer> entry : channelCounts.entrySet()) {
+            if (entry.getValue() < options.getChannelsPerSession() && entry.getKey().isConnected()) {
+                return entry.getKey();
+            }
+        }
+
+        return null;
+    }
+
+    private boolean isUsable(final IdleChannel idleChannel) {
+        final SftpInstance sftp = idleChannel.getSftp();
+
+        if (System.currentTimeMillis() - idleChannel.getIdleSince() < VALIDATION_IDLE_THRESHOLD_MSEC) {
+            return sftp.isConnected();
+        }
+
+        return sftp.isAlive();
+    }
+
+    /**
+     * Connects a new session for a slot reserved by {@link #borrow()},
+     * and registers it with the pool holding its first channel.
+     * @return the connected session
+     */
+    private Session openSession() {
+        Session session = null;
+        boolean isRegistered = false;
+
+        try {
+            session = connectSession();
+        } finally {
+            lock.lock();
+            try {
+                pendingSessions--;
+
+                if (session != null && !closed) {
+                    channelCounts.put(session, 1);
+                    isRegistered = true;
+                }
+
+                available.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        if (!isRegistered) {
+            // The pool was closed while the session was connecting
+            disconnectSession(session);
+            ensureOpen();
+        }
+
+        return session;
+    }
+
+    private Session connectSession() {
+        try {
+            final JSch jsch = new JSch();
+
+            LOGGER.debug("Starting session");
+
+            final Session session = jsch.getSession(
+                options.getUsername(),
+                options.getHost(),
+                options.getPort()
+            );
+
+            final Properties config = new Properties();
+            config.put("StrictHostKeyChecking", "no");
+
+            session.setConfig(config);
+            session.setPassword(options.getPassword());
+
+            LOGGER.debug("Connecting session");
+
+            session.connect(SftpInstance.CONNECT_TIMEOUT_MSEC);
+
+            LOGGER.debug("SFTP session initialized");
+
+            return session;
+        } catch (JSchException e) {
+            throw new IllegalStateException("Could not connect to SFTP server", e);
+        }
+    }
+
+    private static void disconnectSession(final Session session) {
+        if (session.isConnected()) {
+            LOGGER.debug("Disconnecting session");
+            session.disconnect();
+        }
+    }
+
+    /**
+     * Closes the channels that have been idle for longer than the idle
+     * timeout.
+     */
+    private void evictIdle() {
+        final long cutoff = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(options.getIdleTimeout());
+        final List<SftpInstance> evicted = new ArrayList<>();
+
+        lock.lock();
+        try {
+            // The oldest channels are at the end of the queue
+            final Iterator<IdleChannel> iterator = idleChannels.descendingIterator();
+            while (iterator.hasNext()) {
+                final IdleChannel idleChannel = iterator.next();
+                if (idleChannel.getIdleSince() >= cutoff) {
+                    break;
+                }
+
+                iterator.remove();
+                evicted.add(idleChannel.getSftp());
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (!evicted.isEmpty()) {
+            LOGGER.debug("Evicting {} idle SFTP channel(s)", evicted.size());
+            evicted.forEach(this::invalidate);
+        }
+    }
+
+    /**
+     * A channel waiting in the pool, along with when it was released.
+     */
+    @Getter
+    @AllArgsConstructor
+    private static final class IdleChannel {
+
+        private final SftpInstance sftp;
+        private final long idleSince;
+
+    }
+
+}
@@ -0,0 +1,169 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Lists a tree of SFTP directories, several directories at a time.  Each
+ * directory is listed on its own pooled channel, so deep trees with many
+ * small directories (such as one directory per hour of recordings) are not
+ * limited by the round trip time of a single channel.
+ */
+@Slf4j
+public class SftpDirectoryCrawler {
+
+    private final SftpConnectionPool connectionPool;
+
+    private final int maxDepth;
+
+    private final int parallelism;
+
+    /**
+     * Creates a crawler.
+     * @param connectionPool the pool to borrow channels from
+     * @param maxDepth how many levels of subdirectories to descend into,
+     *                 where 0 lists only the starting directory
+     * @param parallelism the maximum number of directories listed at once
+     */
+    public SftpDirectoryCrawler(
+            final SftpConnectionPool connectionPool,
+            final int maxDepth,
+            final int parallelism
+    ) {
+        this.connectionPool = connectionPool;
+        this.maxDepth = maxDepth;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Lists every file in the tree that the filter selects, handing each
+     * one over as soon as the directory that contains it has been listed.
+     * The consumer may be called from several threads at once.
+     * @param remoteDir the directory to start from
+     * @param filter selects the files to hand over, matched against their
+     *               path relative to {@code remoteDir}
+     * @param fileConsumer receives each file selected, named by its full path
+     */
+    public void crawl(final String remoteDir, final SourceFileFilter filter, final Consumer<SourceFile> fileConsumer) {
+        final ExecutorService executorService = Executors.newFixedThreadPool(
+            parallelism,
+            new ThreadFactoryBuilder()
+                .setNameFormat("sftp-crawler-%d")
+                .setDaemon(true)
+                .build()
+        );
+
+        // Without subdirectories to visit, the listing itself can leave out
+        // the entries the filter cannot select
+        final String wildcard = maxDepth == 0 ? filter.getListingWildcard().orElse(null) : null;
+
+        final Crawl crawl = new Crawl(executorService, SftpInstance.normalizeDirectory(remoteDir), wildcard, filter, fileConsumer);
+
+        try {
+            crawl.submit(remoteDir, 0);
+            crawl.getDone().get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unable to list remote directory tree", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while listing remote directory tree", e);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * The state of a single crawl.  The crawl is done once no directory is
+     * waiting to be listed or being listed.
+     */
+    private final class Crawl {
+
+        private final ExecutorService executorService;
+        private final String root;
+        private final String wildcard;
+        private final SourceFileFilter filter;
+        private final Consumer<SourceFile> fileConsumer;
+
+        private final AtomicInteger pending = new AtomicInteger();
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Crawl(
+                final ExecutorService executorService,
+                final String root,
+                final String wildcard,
+                final SourceFileFilter filter,
+                final Consumer<SourceFile> fileConsumer
+        ) {
+            this.executorService = executorService;
+            this.root = root;
+            this.wildcard = wildcard;
+            this.filter = filter;
+            this.fileConsumer = fileConsumer;
+        }
+
+        CompletableFuture<Void> getDone() {
+            return done;
+        }
+
+        void submit(final String directory, final int depth) {
+            pending.incrementAndGet();
+
+            try {
+                executorService.execute(() -> visit(directory, depth));
+            } catch (RejectedExecutionException e) {
+                // Only happens once the crawl has already failed
+                pending.decrementAndGet();
+            }
+        }
+
+        private void visit(final String directory, final int depth) {
+            try {
+                if (done.isDone()) {
+                    return;
+                }
+
+                final List<String> subdirectories = new ArrayList<>();
+
+                final String relativeDir = SftpInstance.normalizeDirectory(directory).substring(root.length());
+
+                final List<SourceFile> files = connectionPool.execute(sftp -> sftp.list(
+                    directory,
+                    relativeDir,
+                    wildcard,
+                    (subdirectory) -> {
+                        // Listed separately, possibly on another channel
+                        if (depth < maxDepth) {
+                            subdirectories.add(subdirectory);
+                        }
+                        return false;
+                    },
+                    filter
+                ));
+
+                LOGGER.debug("Found {} file(s) and {} directories in {}", files.size(), subdirectories.size(), directory);
+
+                subdirectories.forEach(subdirectory -> submit(subdirectory, depth + 1));
+                files.forEach(fileConsumer);
+            } catch (RuntimeException e) {
+                done.completeExceptionally(e);
+            } finally {
+                if (pending.decrementAndGet() == 0) {
+                    done.complete(null);
+                }
+            }
+        }
+
+    }
+
+}
@@ -1,16 +1,15 @@
 package com.medallia.references.speechapi.transfer;
 
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
 import java.util.List;
-import java.util.Properties;
 import java.util.function.Function;
 
 import com.google.common.collect.ImmutableList;
 import com.jcraft.jsch.ChannelSftp;
-import com.jcraft.jsch.JSch;
 import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.Session;
 import com.jcraft.jsch.SftpATTRS;
@@ -21,25 +20,50 @@ import lombok.extern.slf4j.Slf4j;
 
 /**
  * Wraps the <a href="http://www.jcraft.com/jsch/">Jsch library</a> for
- * handling SFTP transfers.
+ * handling SFTP transfers.  Each instance is a single SFTP channel on an
+ * SSH session that may be shared with other instances; sessions are
+ * created and owned by {@link SftpConnectionPool}.
  */
 @Slf4j
 public class SftpInstance {
 
     public static final Integer CONNECT_TIMEOUT_MSEC = 30000;
+    public static final long MILLIS_PER_SEC = 1000;
     public static final List<String> SPECIAL_IGNORE = ImmutableList.of(".", "..");
 
-    private Session session = null;
+    private final Session session;
     private ChannelSftp channel = null;
 
-    private final SftpOptions options;
+    public SftpInstance(final Session session) {
+        this.session = session;
+    }
 
-    public SftpInstance(final SftpOptions options) {
-        this.options = options;
+    Session getSession() {
+        return session;
     }
 
     public boolean isConnected() {
-        return channel != null && channel.isConnected();
+        return channel != null && channel.isConnected() && session.isConnected();
+    }
+
+    /**
+     * Checks that the channel still works by making a round trip to the
+     * server.  This catches connections silently dropped by firewalls or
+     * the server while the channel was idle.
+     * @return true if the channel is usable
+     */
+    public boolean isAlive() {
+        if (!isConnected()) {
+            return false;
+        }
+
+        try {
+            channel.realpath(".");
+            return true;
+        } catch (SftpException e) {
+            LOGGER.debug("SFTP channel failed validation", e);
+            return false;
+        }
     }
 
     public void connect() {
@@ -48,98 +72,107 @@ public class SftpInstance {
             return;
         }
 
-        if (channel != null || session != null) {
+        if (channel != null) {
             LOGGER.debug("Forcing reconnection");
             disconnect();
         }
 
         try {
-            final JSch jsch = new JSch();
-
-            LOGGER.debug("Starting session");
-
-            session = jsch.getSession(
-                options.getUsername(),
-                options.getHost(),
-                options.getPort()
-            );
-
-            final Properties config = new Properties();
-            config.put("StrictHostKeyChecking", "no");
-
-            session.setConfig(config);
-            session.setPassword(options.getPassword());
-
-            LOGGER.debug("Connecting session");
-
-            session.connect(CONNECT_TIMEOUT_MSEC);
-
             LOGGER.debug("Starting channel");
 
             channel = (ChannelSftp) session.openChannel("sftp");
 
             LOGGER.debug("Connecting channel");
 
-            channel.connect();
+            channel.connect(CONNECT_TIMEOUT_MSEC);
 
-            LOGGER.debug("SFTP session initialized");
+            LOGGER.debug("SFTP channel initialized");
         } catch (JSchException e) {
-            throw new IllegalStateException("Could not connect to SFTP server", e);
+            channel = null;
+            throw new IllegalStateException("Could not open SFTP channel", e);
         }
     }
 
-    private void disconnect() {
+    /**
+     * Disconnects the channel.  The session is left alone, since other
+     * channels may still be using it.
+     */
+    public void disconnect() {
         if (channel != null && channel.isConnected()) {
             LOGGER.debug("Disconnecting channel");
             channel.disconnect();
         }
 
-        if (session != null && session.isConnected()) {
-            LOGGER.debug("Disconnecting session");
-            session.disconnect();
-        }
-
         channel = null;
-        session = null;
     }
 
-    public List<String> list(
+    /**
+     * Lists a remote directory, along with the subdirectories chosen to be
+     * visited.  Only the files selected by the filter are kept, and their
+     * attributes are checked before their path is even built.
+     * @param remoteDir the directory to list
+     * @param relativeDir the path of the directory relative to the folder
+     *                    being transferred, ending with a slash unless it
+     *                    is the folder itself; the filter is matched
+     *                    against the relative paths of the files
+     * @param wildcard a wildcard the names of entries must match, which
+     *                 leaves the other entries out as the listing is read,
+     *                 subdirectories included; or null to keep them all
+     * @param visitChildDirectory whether to visit a subdirectory, given its
+     *                            full path
+     * @param filter selects the files to keep
+     * @return the files kept, named by their full path
+     */
+    public List<SourceFile> list(
             final String remoteDir,
+            final String relativeDir,
+            final String wildcard,
             final Function<String, Boolean> visitChildDirectory,
-            final Function<String, Boolean> isFileInteresting
+            final SourceFileFilter filter
     ) {
         connect();
 
         try {
-            LOGGER.debug("Listing SFTP folder {}", remoteDir);
+            LOGGER.debug("Listing SFTP folder {}{}", remoteDir, wildcard != null ? String.format(" matching %s", wildcard) : "");
+
+            final String root = normalizeDirectory(remoteDir);
 
             final Deque<String> pathsToVisit = new ArrayDeque<>();
-            pathsToVisit.add(normalizeDirectory(remoteDir));
+            pathsToVisit.add(root);
 
-            final List<String> files = new ArrayList<>();
+            final List<SourceFile> files = new ArrayList<>();
 
             while (pathsToVisit.size() > 0) {
                 final String path = pathsToVisit.pop();
+                final String relativePrefix = relativeDir + path.substring(root.length());
 
                 channel.ls(
-                    path,
+                    wildcard != null ? path + wildcard : path,
                     new ChannelSftp.LsEntrySelector() {
                         @Override
                         public int select(final ChannelSftp.LsEntry entry) {
                             final SftpATTRS attributes = entry.getAttrs();
                             final String filename = entry.getFilename();
-                            final String fullPath = normalizePath(path, filename);
-
-                            if (!SPECIAL_IGNORE.contains(filename)) {
-                                if (attributes.isDir()) {
-                                    if (visitChildDirectory.apply(fullPath)) {
-                                        pathsToVisit.add(normalizeDirectory(fullPath));
-                                    }
-                                } else {
-                                    if (isFileInteresting.apply(filename)) {
-                                        files.add(fullPath);
-                                    }
+
+                            if (SPECIAL_IGNORE.contains(filename)) {
+                                return ChannelSftp.LsEntrySelector.CONTINUE;
+                            }
+
+                            if (attributes.isDir()) {
+                                final String fullPath = normalizePath(path, filename);
+
+                                if (visitChildDirectory.apply(fullPath)) {
+                                    pathsToVisit.add(normalizeDirectory(fullPath));
                                 }
+
+                                return ChannelSftp.LsEntrySelector.CONTINUE;
+                            }
+
+                            final long lastModified = Integer.toUnsignedLong(attributes.getMTime()) * MILLIS_PER_SEC;
+
+                            if (filter.matchesAttributes(attributes.getSize(), lastModified)
+                                    && filter.matchesPath(relativePrefix, filename)) {
+                                files.add(new SourceFile(normalizePath(path, filename), attributes.getSize(), lastModified));
                             }
 
                             return ChannelSftp.LsEntrySelector.CONTINUE;
@@ -197,7 +230,32 @@ public class SftpInstance {
         }
     }
 
-    private static String normalizeDirectory(final String dir) {
+    /**
+     * Opens a stream of a remote file starting at the given offset, which
+     * must be closed before the channel is used for anything else.
+     * @param fullPath the path of the remote file
+     * @param offset the offset of the first byte to read
+     * @return the stream of the file from {@code offset} on
+     */
+    public InputStream openRange(
+            final String fullPath,
+            final long offset
+    ) {
+        connect();
+
+        try {
+            LOGGER.debug("Downloading {} from offset {}", fullPath, offset);
+
+            return channel.get(fullPath, null, offset);
+        } catch (SftpException e) {
+            throw new IllegalStateException(
+                String.format("Unable to download remote file: %s", fullPath),
+                e
+            );
+        }
+    }
+
+    static String normalizeDirectory(final String dir) {
         return String.format(
             "%s%s",
             dir,
@@ -7,6 +7,9 @@ import lombok.Builder;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import picocli.CommandLine;
+import picocli.CommandLine.Model.CommandSpec;
+import picocli.CommandLine.ParameterException;
+import picocli.CommandLine.Spec;
 
 /**
  * Command line options related to SFTP.
@@ -19,6 +22,27 @@ public class SftpOptions {
 
     public static final String DEFAULT_SFTP_PORT = "22";
     public static final String DEFAULT_SFTP_FOLDER = "/";
+    public static final String DEFAULT_SFTP_BUFFER_SIZE = "4MB";
+    public static final long MAX_SFTP_BUFFER_SIZE = 1024L * 1024 * 1024;
+    public static final String DEFAULT_SFTP_SEGMENT_THRESHOLD = "0";
+    public static final String DEFAULT_SFTP_SEGMENT_SIZE = "8MB";
+    public static final long MAX_SFTP_SEGMENT_SIZE = 1024L * 1024 * 1024;
+    public static final String DEFAULT_SFTP_CHANNELS_PER_SESSION = "4";
+    public static final String DEFAULT_SFTP_IDLE_TIMEOUT = "60";
+    public static final Integer MAX_SFTP_SESSIONS = 50;
+    public static final String DEFAULT_SFTP_MAX_DEPTH = "0";
+    public static final Integer MAX_SFTP_DEPTH = 32;
+    public static final String DEFAULT_SFTP_LIST_PARALLELISM = "4";
+    public static final String DEFAULT_SFTP_MAX_BANDWIDTH = "0";
+    public static final String DEFAULT_SFTP_MAX_BURST = "1MB";
+    public static final Integer MAX_SFTP_LIST_PARALLELISM = 50;
+    public static final String DEFAULT_SFTP_POLL_INTERVAL = "0";
+
+    /** OpenSSH allows 10 channels per session by default. */
+    public static final Integer MAX_SFTP_CHANNELS_PER_SESSION = 10;
+
+    @Spec
+    private CommandSpec spec;
 
     @CommandLine.Option(
         names = {"--sftp-host"},
@@ -66,4 +90,356 @@ public class SftpOptions {
         );
     }
 
+    private Integer bufferSize;
+
+    /**
+     * Sets the size of the buffer between each download and its upload.
+     * @param bufferSize the buffer size, in bytes
+     */
+    @CommandLine.Option(
+        names = {"--sftp-buffer-size"},
+        defaultValue = DEFAULT_SFTP_BUFFER_SIZE,
+        required = false,
+        converter = ByteSizeConverter.class,
+        description = ""
+            + "How much of a file may be downloaded ahead of its upload. "
+            + "(default=${DEFAULT-VALUE})"
+    )
+    public void setBufferSize(final Long bufferSize) {
+        if (bufferSize <= 0 || bufferSize > MAX_SFTP_BUFFER_SIZE) {
+            throw new ParameterException(
+                spec.commandLine(),
+                String.format(
+                    "Invalid buffer size: must be between 1 and %d bytes (inclusive)",
+                    MAX_SFTP_BUFFER_SIZE
+                )
+            );
+        }
+
+        this.bufferSize = bufferSize.intValue();
+    }
+
+    private long segmentThreshold;
+
+    /**
+     * Sets the size from which files are downloaded in segments, each on
+     * its own channel, rather than as a single stream.
+     * @param segmentThreshold the size, in bytes, or 0 to never segment
+     */
+    @CommandLine.Option(
+        names = {"--sftp-segment-threshold"},
+        defaultValue = DEFAULT_SFTP_SEGMENT_THRESHOLD,
+        required = false,
+        converter = ByteSizeConverter.class,
+        description = ""
+            + "Downloads files of at least this size, such as 100MB, as "
+            + "byte ranges fetched at the same time over several channels; "
+            + "0 means never. (default=${DEFAULT-VALUE})"
+    )
+    public void setSegmentThreshold(final Long segmentThreshold) {
+        if (segmentThreshold < 0) {
+            throw new ParameterException(
+                spec.commandLine(),
+                "Invalid segment threshold: must not be negative"
+            );
+        }
+
+        this.segmentThreshold = segmentThreshold;
+    }
+
+    private Integer segmentSize;
+
+    /**
+     * Sets the size of the byte ranges segmented downloads are split into.
+     * @param segmentSize the segment size, in bytes
+     */
+    @CommandLine.Option(
+        names = {"--sftp-segment-size"},
+        defaultValue = DEFAULT_SFTP_SEGMENT_SIZE,
+        required = false,
+        converter = ByteSizeConverter.class,
+        description = ""
+            + "The size of each byte range of a segmented download. "
+            + "(default=${DEFAULT-VALUE})"
+    )
+    public void setSegmentSize(final Long segmentSize) {
+        if (segmentSize <= 0 || segmentSize > MAX_SFTP_SEGMENT_SIZE) {
+            throw new ParameterException(
+                spec.commandLine(),
+                String.format(
+                    "Invalid segment size: must be between 1 and %d bytes (inclusive)",
+                    MAX_SFTP_SEGMENT_SIZE
+                )
+            );
+        }
+
+        this.segmentSize = segmentSize.intValue();
+    }
+
+    /**
+     * @param fileSize the size of a file
+     * @return true if the file is downloaded in segments
+     */
+    public boolean isSegmented(final long fileSize) {
+        return segmentThreshold > 0 && fileSize >= segmentThreshold;
+    }
+
+    private Integer maxSessions;
+
+    /**
+     * Sets the maximum number of SSH sessions opened to the server.
+     * @param maxSessions the maximum number of sessions
+     */
+    @CommandLine.Option(
+        names = {"--sftp-max-sessions"},
+        required = false,
+        description = ""
+            + "The maximum number of SSH sessions opened to the SFTP server. "
+            + "Every worker downloads over a channel of its own, so workers "
+            + "beyond the sessions times --sftp-channels-per-session wait "
+            + "for one. (default=enough for --parallel, up to 50)"
+    )
+    public void setMaxSessions(final Integer maxSessions) {
+        if (maxSessions <= 0 || maxSessions > MAX_SFTP_SESSIONS) {
+            throw new ParameterException(
+                spec.commandLine(),
+                String.format(
+                    "Invalid maximum number of sessions: must be between 1 and %d (inclusive)",
+                    MAX_SFTP_SESSIONS
+                )
+            );
+        }
+
+        this.maxSessions = maxSessions;
+    }
+
+    private Integer channelsPerSession;
+
+    /**
+     * Sets how many SFTP channels may share a single SSH session.
+     * @param channelsPerSession the maximum number of channels per session
+     */
+    @CommandLine.Option(
+        names = {"--sftp-channels-per-session"},
+        defaultValue = DEFAULT_SFTP_CHANNELS_PER_SESSION,
+        required = false,
+        description = ""
+            + "The maximum number of SFTP channels opened on each SSH "
+            + "session. (default=${DEFAULT-VALUE})"
+    )
+    public void setChannelsPerSession(final Integer channelsPerSession) {
+        if (channelsPerSession <= 0 || channelsPerSession > MAX_SFTP_CHANNELS_PER_SESSION) {
+            throw new ParameterException(
+                spec.commandLine(),
+                String.format(
+                    "Invalid number of channels per session: must be between 1 and %d (inclusive)",
+                    MAX_SFTP_CHANNELS_PER_SESSION
+                )
+            );
+        }
+
+        this.channelsPerSession = channelsPerSession;
+    }
+
+    /**
+     * Opens enough sessions for every worker to hold a channel at once,
+     * unless the number of sessions was set explicitly.
+     * @param workers the number of workers downloading from the server
+     */
+    public void fitSessions(final int workers) {
+        if (maxSessions == null) {
+            maxSessions = Math.min((workers + channelsPerSession - 1) / channelsPerSession, MAX_SFTP_SESSIONS);
+        }
+    }
+
+    /**
+     * @return the number of channels the pool may open at once
+     */
+    public int getMaxChannels() {
+        return maxSessions * channelsPerSession;
+    }
+
+    private Integer idleTimeout;
+
+    /**
+     * Sets how long an unused SFTP channel is kept open.
+     * @param idleTimeout the idle timeout, in seconds
+     */
+    @CommandLine.Option(
+        names = {"--sftp-idle-timeout"},
+        defaultValue = DEFAULT_SFTP_IDLE_TIMEOUT,
+        required = false,
+        description = ""
+            + "How many seconds an unused SFTP channel is kept open before "
+            + "it is closed. (default=${DEFAULT-VALUE})"
+    )
+    public void setIdleTimeout(final Integer idleTimeout) {
+        if (idleTimeout <= 0) {
+            throw new ParameterException(
+                spec.commandLine(),
+                "Invalid idle timeout: must be at least 1 second"
+            );
+        }
+
+        this.idleTimeout = idleTimeout;
+    }
+
+    private Integer maxDepth;
+
+    /**
+     * Sets how many levels of subdirectories are searched for files.
+     * @param maxDepth the maximum depth, where 0 disables recursion
+     */
+    @CommandLine.Option(
+        names = {"--sftp-max-depth"},
+        defaultValue = DEFAULT_SFTP_MAX_DEPTH,
+        required = false,
+        description = ""
+            + "How many levels of subdirectories of the SFTP folder to "
+            + "search for files; 0 only searches the folder itself. "
+            + "(default=${DEFAULT-VALUE})"
+    )
+    public void setMaxDepth(final Integer maxDepth) {
+        if (maxDepth < 0 || maxDepth > MAX_SFTP_DEPTH) {
+            throw new ParameterException(
+                spec.commandLine(),
+                String.format(
+                    "Invalid maximum depth: must be between 0 and %d (inclusive)",
+                    MAX_SFTP_DEPTH
+                )
+            );
+        }
+
+        this.maxDepth = maxDepth;
+    }
+
+    private Integer listParallelism;
+
+    /**
+     * Sets how many directories are listed at the same time.
+     * @param listParallelism the maximum number of concurrent listings
+     */
+    @CommandLine.Option(
+        names = {"--sftp-list-parallelism"},
+        defaultValue = DEFAULT_SFTP_LIST_PARALLELISM,
+        required = false,
+        description = ""
+            + "How many SFTP directories are listed at the same time when "
+            + "searching subdirectories. (default=${DEFAULT-VALUE})"
+    )
+    public void setListParallelism(final Integer listParallelism) {
+        if (listParallelism <= 0 || listParallelism > MAX_SFTP_LIST_PARALLELISM) {
+            throw new ParameterException(
+                spec.commandLine(),
+                String.format(
+                    "Invalid list parallelism: must be between 1 and %d (inclusive)",
+                    MAX_SFTP_LIST_PARALLELISM
+                )
+            );
+        }
+
+        this.listParallelism = listParallelism;
+    }
+
+    private Integer pollInterval;
+
+    /**
+     * Sets how often the folder is listed again for new or changed files.
+     * @param pollInterval the number of seconds between polls, or 0 to
+     *                     list the folder once
+     */
+    @CommandLine.Option(
+        names = {"--sftp-poll-interval"},
+        defaultValue = DEFAULT_SFTP_POLL_INTERVAL,
+        required = false,
+        description = ""
+            + "Keeps running, listing the SFTP folder again every this many "
+            + "seconds and transferring the files that are new or changed "
+            + "since the last listing, or 0 to list it once. The --timeout "
+            + "does not apply while polling. (default=${DEFAULT-VALUE})"
+    )
+    public void setPollInterval(final Integer pollInterval) {
+        if (pollInterval < 0) {
+            throw new ParameterException(
+                spec.commandLine(),
+                "Invalid poll interval: must not be negative"
+            );
+        }
+
+        this.pollInterval = pollInterval;
+    }
+
+    @CommandLine.Option(
+        names = {"--sftp-snapshot"},
+        required = false,
+        description = ""
+            + "Saves the size and modification time of the files seen by "
+            + "each poll in this file (if set), so a restarted process only "
+            + "transfers what is new or changed. (default=disabled)"
+    )
+    private String snapshotFilename;
+
+    private long maxBandwidth;
+
+    /**
+     * Sets the maximum number of bytes per second downloaded from SFTP, shared by
+     * every worker.
+     * @param maxBandwidth the rate, in bytes per second, or 0 for no limit
+     */
+    @CommandLine.Option(
+        names = {"--sftp-max-bandwidth"},
+        defaultValue = DEFAULT_SFTP_MAX_BANDWIDTH,
+        required = false,
+        converter = ByteSizeConverter.class,
+        description = ""
+            + "The maximum bytes per second downloaded from SFTP across all "
+            + "workers, such as 20MB, or 0 for no limit. (default=${DEFAULT-VALUE})"
+    )
+    public void setMaxBandwidth(final Long maxBandwidth) {
+        if (maxBandwidth < 0) {
+            throw new ParameterException(
+                spec.commandLine(),
+                "Invalid max bandwidth: must not be negative"
+            );
+        }
+
+        this.maxBandwidth = maxBandwidth;
+    }
+
+    private long maxBurst;
+
+    /**
+     * Sets how many bytes may be moved at full speed after a quiet period
+     * before {@code --sftp-max-bandwidth} applies.
+     * @param maxBurst the burst size, in bytes
+     */
+    @CommandLine.Option(
+        names = {"--sftp-max-burst"},
+        defaultValue = DEFAULT_SFTP_MAX_BURST,
+        required = false,
+        converter = ByteSizeConverter.class,
+        description = ""
+            + "How many bytes may be downloaded in a burst before "
+            + "--sftp-max-bandwidth applies. (default=${DEFAULT-VALUE})"
+    )
+    public void setMaxBurst(final Long maxBurst) {
+        if (maxBurst <= 0) {
+            throw new ParameterException(
+                spec.commandLine(),
+                "Invalid max burst: must be at least 1 byte"
+            );
+        }
+
+        this.maxBurst = maxBurst;
+    }
+
+    /**
+     * @return a new limiter for {@code --sftp-max-bandwidth}
+     */
+    public BandwidthLimiter newBandwidthLimiter() {
+        return maxBandwidth > 0
+            ? new BandwidthLimiter(maxBandwidth, maxBurst)
+            : BandwidthLimiter.UNLIMITED;
+    }
+
 }
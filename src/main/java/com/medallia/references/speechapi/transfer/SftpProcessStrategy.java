@@ -1,75 +1,298 @@
 package com.medallia.references.speechapi.transfer;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.Collection;
-import java.util.HashMap;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import javax.annotation.PreDestroy;
 
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.medallia.references.speechapi.metrics.MetricNames;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
 /**
  * The implementation of the transfer process as it relates to SFTP sources.
  */
 @Component
+@Slf4j
 public class SftpProcessStrategy extends GenericProcessStrategy {
 
-    private final Map<Long, Map<SourceOptions, SftpInstance>> threadConnectionCache = new HashMap<>();
+    private final Map<SourceOptions, SftpConnectionPool> connectionPools = new ConcurrentHashMap<>();
+
+    private final Map<SourceOptions, BandwidthLimiter> bandwidthLimiters = new ConcurrentHashMap<>();
+
+    private final Map<SourceOptions, SftpSnapshot> snapshots = new ConcurrentHashMap<>();
+
+    private final ExecutorService downloadExecutorService = Executors.newCachedThreadPool(
+        new ThreadFactoryBuilder()
+            .setNameFormat("sftp-download-%d")
+            .setDaemon(true)
+            .build()
+    );
 
     @Autowired
-    public SftpProcessStrategy(final MmftService mmftService) {
-        super(mmftService);
+    public SftpProcessStrategy(final MmftService mmftService, final MeterRegistry meterRegistry) {
+        super(mmftService, meterRegistry);
     }
 
-    protected Collection<String> getFilenames(final SourceOptions options) {
-        final SftpInstance sftp = getSftpConnection(options);
+    protected void listFiles(final SourceOptions options, final SourceFileFilter filter, final Consumer<SourceFile> consumer) {
+        final SftpOptions sftpOptions = options.getSftp();
 
-        return sftp.list(
-            options.getSftp().getFolder(),
-            (directoryName) -> false, // no recursion
-            (filename) -> true        // accept everything found
+        final SftpDirectoryCrawler crawler = new SftpDirectoryCrawler(
+            getConnectionPool(options),
+            sftpOptions.getMaxDepth(),
+            sftpOptions.getListParallelism()
         );
+
+        if (!isContinuous(options)) {
+            crawler.crawl(sftpOptions.getFolder(), filter, consumer);
+            return;
+        }
+
+        final Path snapshotPath = StringUtils.isNotBlank(sftpOptions.getSnapshotFilename())
+            ? Paths.get(sftpOptions.getSnapshotFilename())
+            : null;
+
+        final String target = SftpSnapshot.getTarget(sftpOptions);
+
+        final SftpSnapshot snapshot = Optional.ofNullable(snapshotPath)
+            .flatMap(path -> SftpSnapshot.load(path, target))
+            .orElseGet(() -> new SftpSnapshot(target));
+
+        snapshots.put(options, snapshot);
+
+        final long pollIntervalMsec = TimeUnit.SECONDS.toMillis(sftpOptions.getPollInterval());
+
+        // The connection pool lives as long as the source, so every poll
+        // reuses the sessions opened by the first one
+        while (!Thread.currentThread().isInterrupted()) {
+            final long startTime = System.currentTimeMillis();
+
+            poll(crawler, sftpOptions.getFolder(), filter, snapshot, snapshotPath, consumer);
+
+            try {
+                Thread.sleep(Math.max(pollIntervalMsec - (System.currentTimeMillis() - startTime), 0));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
-    protected byte[] getBytesFromSource(
-        final String filename,
-        final SourceOptions options
+    /**
+     * Lists the folder once, handing over the files that are new or
+     * changed since the last poll.  A failed poll is logged and retried by
+     * the next one, rather than ending the process.
+     * @param crawler the crawler for the folder
+     * @param folder the folder to list
+     * @param filter selects the files to transfer
+     * @param snapshot the files seen by earlier polls
+     * @param snapshotPath where to save the snapshot, or null
+     * @param consumer receives each file to transfer
+     */
+    private void poll(
+            final SftpDirectoryCrawler crawler,
+            final String folder,
+            final SourceFileFilter filter,
+            final SftpSnapshot snapshot,
+            final Path snapshotPath,
+            final Consumer<SourceFile> consumer
     ) {
-        try (ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream()) {
-            final SftpInstance sftp = getSftpConnection(options);
+        final AtomicInteger handedOver = new AtomicInteger();
+
+        try {
+            snapshot.startPoll();
+
+            timeListing(() -> crawler.crawl(folder, filter, file -> {
+                if (snapshot.observe(file)) {
+                    handedOver.incrementAndGet();
+                    consumer.accept(file);
+                }
+            }));
 
-            sftp.download(
-                filename,
-                byteArrayOutputStream
+            final int forgotten = snapshot.finishPoll();
+
+            LOGGER.debug(
+                "Poll of {} found {} file(s), {} to transfer, {} gone",
+                folder,
+                snapshot.size(),
+                handedOver.get(),
+                forgotten
             );
+        } catch (RuntimeException e) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+
+            LOGGER.warn("Unable to poll {}, trying again later", folder, e);
+            return;
+        }
 
-            return byteArrayOutputStream.toByteArray();
-        } catch (IOException e) {
-            throw new IllegalStateException("Unable to download remote file", e);
+        if (snapshotPath != null) {
+            try {
+                snapshot.save(snapshotPath);
+            } catch (IOException e) {
+                LOGGER.warn("Unable to save the SFTP snapshot {}", snapshotPath, e);
+            }
         }
     }
 
-    private SftpInstance getSftpConnection(final SourceOptions options) {
-        final Long threadId = Thread.currentThread().getId();
+    @Override
+    protected boolean isContinuous(final SourceOptions options) {
+        return options.getSftp().getPollInterval() > 0;
+    }
+
+    @Override
+    protected void onTransferFinished(final SourceFile file, final SourceOptions options, final boolean isTransferred) {
+        final SftpSnapshot snapshot = snapshots.get(options);
 
-        if (!threadConnectionCache.containsKey(threadId)) {
-            threadConnectionCache.put(threadId, new HashMap<>(1));
+        if (snapshot != null) {
+            snapshot.finished(file.getName(), isTransferred);
         }
+    }
 
-        final Map<SourceOptions, SftpInstance> connectionCache = threadConnectionCache.get(threadId);
+    protected TransferPayload getPayloadFromSource(
+        final SourceFile file,
+        final SourceOptions options
+    ) {
+        final SftpConnectionPool connectionPool = getConnectionPool(options);
+
+        // Shared by every download from the same source
+        final BandwidthLimiter bandwidthLimiter = bandwidthLimiters.computeIfAbsent(
+            options,
+            key -> options.getSftp().newBandwidthLimiter()
+        );
 
-        if (!connectionCache.containsKey(options)) {
-            final SftpInstance sftpInstance = new SftpInstance(options.getSftp());
-            sftpInstance.connect();
+        // Large files are downloaded a range at a time instead, with each
+        // range borrowing a channel only while it downloads
+        if (options.getSftp().isSegmented(file.getSize())) {
+            final int segmentSize = options.getSftp().getSegmentSize();
 
-            connectionCache.put(
-                options,
-                sftpInstance
+            return new SftpSegmentedPayload(
+                connectionPool,
+                file.getName(),
+                file.getSize(),
+                segmentSize,
+                (options.getSftp().getBufferSize() + segmentSize - 1) / segmentSize,
+                bandwidthLimiter,
+                downloadExecutorService,
+                getDownloadTimer(MetricNames.TYPE_SEGMENT)
             );
         }
 
-        return connectionCache.get(options);
+        // The channel is held from here until the download finishes, so
+        // this blocks while every pooled channel is busy
+        final SftpInstance sftp = connectionPool.borrow();
+
+        final StreamingPipe pipe = new StreamingPipe(options.getSftp().getBufferSize());
+
+        // The download fills the pipe on its own thread while the upload
+        // drains it, so both halves of the transfer overlap
+        downloadExecutorService.submit(() -> {
+            final long startTime = System.nanoTime();
+
+            boolean isComplete = false;
+
+            // The pipe is only closed once the download is known to be
+            // whole; closing it first would let the reader take a failed
+            // download's partial contents for the end of the file
+            try {
+                final OutputStream outputStream = bandwidthLimiter.limit(pipe.getOutputStream());
+
+                sftp.download(file.getName(), outputStream);
+
+                if (pipe.getBytesWritten() != file.getSize()) {
+                    throw new IOException(String.format(
+                        "Downloaded %d of the %d byte(s) listed for %s",
+                        pipe.getBytesWritten(),
+                        file.getSize(),
+                        file.getName()
+                    ));
+                }
+
+                isComplete = true;
+                outputStream.close();
+                getDownloadTimer(MetricNames.TYPE_FILE).record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+            } catch (Throwable e) {
+                LOGGER.debug("Download of {} failed", file.getName(), e);
+                pipe.fail(e);
+            } finally {
+                // A download that stopped half way, such as when its
+                // reader gave up, leaves requests outstanding and the file
+                // open on the channel, so it is not reused
+                if (isComplete) {
+                    connectionPool.release(sftp);
+                } else {
+                    connectionPool.invalidate(sftp);
+                }
+            }
+        });
+
+        // The size from the listing lets the upload pick between a single
+        // request and a multipart upload without buffering the file
+        return new StreamPayload(pipe.getInputStream(), file.getSize());
+    }
+
+    @Override
+    protected void closeSource(final SourceOptions options) {
+        final SftpConnectionPool connectionPool = connectionPools.remove(options);
+
+        bandwidthLimiters.remove(options);
+        snapshots.remove(options);
+
+        if (connectionPool != null) {
+            connectionPool.close();
+        }
+    }
+
+    /**
+     * Stops the threads used for downloads and closes any connections
+     * that are still open.
+     */
+    @PreDestroy
+    public void shutdown() {
+        downloadExecutorService.shutdownNow();
+
+        connectionPools.values().forEach(SftpConnectionPool::close);
+        connectionPools.clear();
+        bandwidthLimiters.clear();
+        snapshots.clear();
+    }
+
+    /**
+     * Returns the timer for downloads of whole files or of segments.  A
+     * whole file is downloaded as fast as the upload drains it, so its
+     * time covers both halves of the transfer.
+     * @param type either {@link MetricNames#TYPE_FILE} or
+     *             {@link MetricNames#TYPE_SEGMENT}
+     * @return the timer
+     */
+    private Timer getDownloadTimer(final String type) {
+        return Timer.builder(MetricNames.TRANSFER_DOWNLOAD)
+            .description("Time taken to download from the SFTP server")
+            .tag(MetricNames.TAG_TYPE, type)
+            .register(getMeterRegistry());
+    }
+
+    private SftpConnectionPool getConnectionPool(final SourceOptions options) {
+        return connectionPools.computeIfAbsent(
+            options,
+            (key) -> new SftpConnectionPool(key.getSftp())
+        );
     }
 
 }
@@ -0,0 +1,262 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A payload backed by a remote SFTP file that is downloaded in segments,
+ * each a byte range fetched on its own pooled channel.  A single SFTP
+ * stream is limited by its window and the round trip time, so a large file
+ * over a distant link downloads far faster as several ranges at once.
+ *
+ * <p>Ranges are independent of each other, so the parts of a multipart
+ * upload are each downloaded as they are needed, several at a time.  The
+ * sequential stream, used by transforms and checksums, keeps a few
+ * segments downloading ahead of the reader.
+ */
+@Slf4j
+public class SftpSegmentedPayload extends TransferPayload {
+
+    /** The minimum number of segments downloaded ahead of the stream. */
+    public static final int MIN_READ_AHEAD = 2;
+
+    private final SftpConnectionPool connectionPool;
+
+    private final String path;
+
+    private final long contentLength;
+
+    private final int segmentSize;
+
+    private final BandwidthLimiter bandwidthLimiter;
+
+    private final ExecutorService downloadExecutorService;
+
+    private final Timer downloadTimer;
+
+    private final SegmentInputStream inputStream;
+
+    /**
+     * Creates a payload for a remote file.  Nothing is downloaded until
+     * the contents are read.
+     * @param connectionPool the pool to borrow a channel per segment from
+     * @param path the path of the remote file
+     * @param contentLength the size of the file, as listed
+     * @param segmentSize the size of each byte range
+     * @param readAhead the number of segments the stream downloads ahead
+     * @param bandwidthLimiter paces the downloads
+     * @param downloadExecutorService the threads that download segments
+     * @param downloadTimer times the download of each segment
+     */
+    public SftpSegmentedPayload(
+            final SftpConnectionPool connectionPool,
+            final String path,
+            final long contentLength,
+            final int segmentSize,
+            final int readAhead,
+            final BandwidthLimiter bandwidthLimiter,
+            final ExecutorService downloadExecutorService,
+            final Timer downloadTimer
+    ) {
+        this.connectionPool = connectionPool;
+        this.path = path;
+        this.contentLength = contentLength;
+        this.segmentSize = segmentSize;
+        this.bandwidthLimiter = bandwidthLimiter;
+        this.downloadExecutorService = downloadExecutorService;
+        this.downloadTimer = downloadTimer;
+        this.inputStream = new SegmentInputStream(Math.max(readAhead, MIN_READ_AHEAD));
+    }
+
+    @Override
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    @Override
+    public boolean isRandomAccess() {
+        return true;
+    }
+
+    /**
+     * Downloads a range, split into segments that are fetched at the same
+     * time, the last one on the calling thread.
+     */
+    @Override
+    public ByteBuffer getRange(final long offset, final int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+
+        final List<Future<?>> segments = new ArrayList<>();
+
+        try {
+            int position = 0;
+            while (length - position > segmentSize) {
+                final ByteBuffer segment = buffer.slice(position, segmentSize);
+                final long segmentOffset = offset + position;
+
+                segments.add(downloadExecutorService.submit(() -> {
+                    download(segmentOffset, segment);
+                    return null;
+                }));
+
+                position += segmentSize;
+            }
+
+            download(offset + position, buffer.slice(position, length - position));
+
+            for (Future<?> segment : segments) {
+                segment.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(String.format("Interrupted while downloading %s", path));
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException
+                ? (IOException) e.getCause()
+                : new IOException(String.format("Unable to download %s", path), e.getCause());
+        } finally {
+            segments.forEach(segment -> segment.cancel(true));
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Downloads one segment on a channel of its own.
+     * @param offset the offset of the segment in the file
+     * @param segment where to put the segment, which it must fill
+     * @throws IOException if the segment cannot be downloaded
+     */
+    private void download(final long offset, final ByteBuffer segment) throws IOException {
+        final SftpInstance sftp = connectionPool.borrow();
+
+        final long startTime = System.nanoTime();
+
+        boolean isComplete = false;
+
+        try (InputStream rangeStream = bandwidthLimiter.limit(sftp.openRange(path, offset))) {
+            while (segment.hasRemaining()) {
+                final int count = rangeStream.read(
+                    segment.array(),
+                    segment.arrayOffset() + segment.position(),
+                    segment.remaining()
+                );
+
+                if (count < 0) {
+                    throw new EOFException(String.format("%s was truncated while being transferred", path));
+                }
+
+                segment.position(segment.position() + count);
+            }
+
+            isComplete = true;
+        } finally {
+            // A segment abandoned half way may leave requests outstanding
+            // on the channel, so it is not reused
+            if (isComplete) {
+                connectionPool.release(sftp);
+            } else {
+                connectionPool.invalidate(sftp);
+            }
+        }
+
+        downloadTimer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+
+        LOGGER.debug("Downloaded {} byte(s) of {} from offset {}", segment.capacity(), path, offset);
+    }
+
+    @Override
+    public void close() {
+        inputStream.close();
+    }
+
+    /**
+     * Reads the file in order, with the next few segments downloading in
+     * the background.
+     */
+    private class SegmentInputStream extends InputStream {
+
+        private final int readAhead;
+
+        private final Deque<Future<ByteBuffer>> pending = new ArrayDeque<>();
+
+        private long nextOffset = 0;
+
+        private ByteBuffer current = ByteBuffer.allocate(0);
+
+        SegmentInputStream(final int readAhead) {
+            this.readAhead = readAhead;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : Byte.toUnsignedInt(single[0]);
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+
+            while (!current.hasRemaining()) {
+                while (pending.size() < readAhead && nextOffset < contentLength) {
+                    final long segmentOffset = nextOffset;
+                    final int segmentLength = (int) Math.min(segmentSize, contentLength - segmentOffset);
+
+                    pending.add(downloadExecutorService.submit(() -> getRange(segmentOffset, segmentLength)));
+
+                    nextOffset += segmentLength;
+                }
+
+                if (pending.isEmpty()) {
+                    return -1;
+                }
+
+                try {
+                    current = pending.remove().get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException(String.format("Interrupted while downloading %s", path));
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof IOException
+                        ? (IOException) e.getCause()
+                        : new IOException(String.format("Unable to download %s", path), e.getCause());
+                }
+            }
+
+            final int count = Math.min(length, current.remaining());
+            current.get(bytes, offset, count);
+
+            return count;
+        }
+
+        @Override
+        public void close() {
+            pending.forEach(segment -> segment.cancel(true));
+            pending.clear();
+        }
+
+    }
+
+}
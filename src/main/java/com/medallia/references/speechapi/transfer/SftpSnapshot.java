@@ -0,0 +1,261 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The size and modification time of every file seen by the last poll of
+ * an SFTP folder, so each poll only hands over files that are new or have
+ * changed.
+ *
+ * <p>A file is handed over once it is seen with the same size and
+ * modification time by two polls in a row, so files still being written
+ * are left alone.  The snapshot can be saved to disk, so a restarted
+ * process carries on from where the previous one stopped.  Files that were
+ * handed over but not yet transferred are saved as merely seen, so they
+ * are handed over again after a restart.
+ */
+@Slf4j
+public class SftpSnapshot {
+
+    private static final String HEADER_PREFIX = "# sftp-snapshot v1";
+    private static final String SEPARATOR = "\t";
+    private static final int FIELDS = 4;
+
+    /**
+     * What has been done with a file.
+     */
+    public enum State {
+
+        /** Seen, but not yet known to be complete. */
+        SEEN,
+
+        /** Handed over to be transferred. */
+        QUEUED,
+
+        /** Transferred. */
+        DONE
+
+    }
+
+    /**
+     * What is known about a file.
+     */
+    @Getter
+    @AllArgsConstructor
+    private static final class Entry {
+
+        private final long size;
+        private final long lastModified;
+        private final State state;
+        private final int poll;
+
+        boolean isSameAs(final SourceFile file) {
+            return size == file.getSize() && lastModified == file.getLastModified();
+        }
+
+        Entry withState(final State newState) {
+            return new Entry(size, lastModified, newState, poll);
+        }
+
+    }
+
+    /** Identifies the server and folder that were polled. */
+    @Getter
+    private final String target;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private volatile int poll = 0;
+
+    /**
+     * Creates an empty snapshot.
+     * @param target identifies what is polled, see {@link #getTarget(SftpOptions)}
+     */
+    public SftpSnapshot(final String target) {
+        this.target = target;
+    }
+
+    /**
+     * @param options the SFTP-related options
+     * @return what identifies a snapshot of the SFTP folder
+     */
+    public static String getTarget(final SftpOptions options) {
+        return String.format(
+            "%s@%s:%d %s",
+            options.getUsername(),
+            options.getHost(),
+            options.getPort(),
+            options.getFolder()
+        );
+    }
+
+    /**
+     * Starts a new poll.  Files that are not seen by the poll are
+     * forgotten once it finishes.
+     */
+    public void startPoll() {
+        poll++;
+    }
+
+    /**
+     * Records a file seen by the current poll.  May be called from several
+     * threads at once.
+     * @param file the file, as listed
+     * @return true if the file should be transferred now
+     */
+    public boolean observe(final SourceFile file) {
+        final Entry[] previous = new Entry[1];
+
+        final Entry current = entries.compute(file.getName(), (name, entry) -> {
+            previous[0] = entry;
+
+            final State state;
+            if (entry == null || !entry.isSameAs(file)) {
+                // New or changed, so it may still be being written
+                state = State.SEEN;
+            } else if (entry.getState() == State.SEEN) {
+                state = State.QUEUED;
+            } else {
+                state = entry.getState();
+            }
+
+            return new Entry(file.getSize(), file.getLastModified(), state, poll);
+        });
+
+        return current.getState() == State.QUEUED
+            && (previous[0] == null || previous[0].getState() != State.QUEUED);
+    }
+
+    /**
+     * Finishes the current poll, forgetting the files it did not see.
+     * @return the number of files forgotten
+     */
+    public int finishPoll() {
+        final int before = entries.size();
+
+        entries.values().removeIf(entry -> entry.getPoll() != poll);
+
+        return before - entries.size();
+    }
+
+    /**
+     * Records the end of a transfer.  A file that failed to transfer is
+     * handed over again by a later poll.
+     * @param name the name of the file
+     * @param isTransferred whether the transfer succeeded
+     */
+    public void finished(final String name, final boolean isTransferred) {
+        entries.computeIfPresent(name, (key, entry) -> {
+            return entry.getState() == State.QUEUED
+                ? entry.withState(isTransferred ? State.DONE : State.SEEN)
+                : entry;
+        });
+    }
+
+    /**
+     * @return the number of files in the snapshot
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Loads a saved snapshot, as long as it is of the same SFTP folder.
+     * @param path the snapshot file
+     * @param target identifies the SFTP folder, see {@link #getTarget(SftpOptions)}
+     * @return the saved snapshot, or empty if there is none to use
+     */
+    public static Optional<SftpSnapshot> load(final Path path, final String target) {
+        if (!Files.exists(path)) {
+            return Optional.empty();
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            final String header = StringUtils.removeStart(reader.readLine(), HEADER_PREFIX).trim();
+
+            if (!target.equals(header)) {
+                LOGGER.warn("Ignoring SFTP snapshot {}, which is of another folder", path);
+                return Optional.empty();
+            }
+
+            final SftpSnapshot snapshot = new SftpSnapshot(target);
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // The name goes last, since it is the only field that may
+                // contain the separator
+                final String[] fields = line.split(SEPARATOR, FIELDS);
+                if (fields.length == FIELDS) {
+                    snapshot.entries.put(fields[FIELDS - 1], new Entry(
+                        Long.parseLong(fields[0]),
+                        Long.parseLong(fields[1]),
+                        State.valueOf(fields[2]),
+                        snapshot.poll
+                    ));
+                }
+            }
+
+            return Optional.of(snapshot);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Ignoring unreadable SFTP snapshot {}", path, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Saves the snapshot.  The file is replaced in one step, so a crash
+     * leaves either the old or the new snapshot behind.
+     * @param path the snapshot file
+     * @throws IOException if the file cannot be written
+     */
+    public void save(final Path path) throws IOException {
+        final Path directory = path.toAbsolutePath().getParent();
+        final Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                writer.write(String.format("%s %s", HEADER_PREFIX, target));
+                writer.newLine();
+
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    if (StringUtils.containsAny(entry.getKey(), '\r', '\n')) {
+                        continue;
+                    }
+
+                    // Files not yet transferred are handed over again after
+                    // a restart
+                    final State state = entry.getValue().getState() == State.DONE ? State.DONE : State.SEEN;
+
+                    writer.write(String.join(
+                        SEPARATOR,
+                        Long.toString(entry.getValue().getSize()),
+                        Long.toString(entry.getValue().getLastModified()),
+                        state.name(),
+                        entry.getKey()
+                    ));
+                    writer.newLine();
+                }
+            }
+
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+}
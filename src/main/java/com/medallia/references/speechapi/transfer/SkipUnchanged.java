@@ -0,0 +1,22 @@
+package com.medallia.references.speechapi.transfer;
+
+/**
+ * How source files that are already in MMFT are detected, so they can be
+ * skipped rather than uploaded again.
+ */
+public enum SkipUnchanged {
+
+    /** Every file is uploaded. */
+    NONE,
+
+    /** Files are skipped if an object of the same size has the same key. */
+    SIZE,
+
+    /**
+     * Like {@link #SIZE}, but files are then read to check that their
+     * checksum matches the ETag of the object too.  This only matches
+     * objects uploaded with the same part size.
+     */
+    ETAG
+
+}
@@ -0,0 +1,23 @@
+package com.medallia.references.speechapi.transfer;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A file found in the source, along with the attributes that come for free
+ * with the listing, so deciding what to do with it needs no extra lookups.
+ */
+@Getter
+@AllArgsConstructor
+public class SourceFile {
+
+    /** The filename, as used for reading the file and for its MMFT key. */
+    private final String name;
+
+    /** The size of the file, in bytes. */
+    private final long size;
+
+    /** When the file was last modified, in milliseconds since the epoch. */
+    private final long lastModified;
+
+}
@@ -0,0 +1,165 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Decides which files of the source are transferred, compiled once per
+ * run and evaluated by the sources while they list, so files that are
+ * left out are never handed over, or even kept by the listing.
+ *
+ * <p>A file is selected if its path relative to the source folder matches
+ * at least one include glob, no exclude glob and the path regex, if any,
+ * and if its size and modification time are within bounds.  The size and
+ * modification time come with the listing and are cheap to compare, so
+ * sources check them with {@link #matchesAttributes(long, long)} before
+ * checking the path with {@link #matchesPath(String, String)}, which
+ * matches the globs against the directory and name of a listed entry
+ * without joining them.
+ */
+public class SourceFileFilter {
+
+    /** The wildcards that glob patterns and SFTP listings have in common. */
+    private static final Pattern LISTING_WILDCARD = Pattern.compile("[^*?\\[\\]{}\\\\/.][^\\[\\]{}\\\\/]*[*?][^\\[\\]{}\\\\/]*");
+
+    private final List<String> includes;
+
+    private final List<PathGlob> includeGlobs;
+
+    private final List<PathGlob> excludeGlobs;
+
+    private final Pattern pathPattern;
+
+    private final long minSize;
+
+    private final long maxSize;
+
+    private final long modifiedAfter;
+
+    private final long modifiedBefore;
+
+    /**
+     * Compiles a filter.
+     * @param includes the globs of which a path must match one
+     * @param excludes the globs of which a path must match none
+     * @param pathPattern the regex that must be found in the path, or null
+     * @param minSize the smallest size selected, in bytes
+     * @param maxSize the largest size selected, in bytes
+     * @param modifiedAfter the earliest modification time selected, in
+     *                      milliseconds since the epoch
+     * @param modifiedBefore the modification time from which files are no
+     *                       longer selected, in milliseconds since the epoch
+     */
+    public SourceFileFilter(
+            final List<String> includes,
+            final List<String> excludes,
+            final Pattern pathPattern,
+            final long minSize,
+            final long maxSize,
+            final long modifiedAfter,
+            final long modifiedBefore
+    ) {
+        this.includes = List.copyOf(includes);
+        this.includeGlobs = includes.stream().map(PathGlob::compile).collect(Collectors.toList());
+        this.excludeGlobs = excludes.stream().map(PathGlob::compile).collect(Collectors.toList());
+        this.pathPattern = pathPattern;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.modifiedAfter = modifiedAfter;
+        this.modifiedBefore = modifiedBefore;
+    }
+
+    /**
+     * Creates a filter that selects every file.
+     * @return the filter
+     */
+    public static SourceFileFilter all() {
+        return new SourceFileFilter(List.of("*"), List.of(), null, 0, Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Checks the attributes of a file that come with the listing.
+     * @param size the size of the file
+     * @param lastModified when the file was last modified, in milliseconds
+     *                     since the epoch
+     * @return true if both are within bounds
+     */
+    public boolean matchesAttributes(final long size, final long lastModified) {
+        return size >= minSize
+            && size <= maxSize
+            && lastModified >= modifiedAfter
+            && lastModified < modifiedBefore;
+    }
+
+    /**
+     * Checks the path of a file.
+     * @param relativePath the path relative to the source folder
+     * @return true if the path is selected by the globs and the regex
+     */
+    public boolean matchesPath(final String relativePath) {
+        return matchesPath("", relativePath);
+    }
+
+    /**
+     * Checks the path of a file given as the directory it was listed in
+     * and its name, which the globs match without joining.  Only the path
+     * regex, if any, needs the joined path.
+     * @param relativePrefix the directory relative to the source folder,
+     *                       ending with a slash, or empty for the folder
+     *                       itself
+     * @param filename the name of the file
+     * @return true if the path is selected by the globs and the regex
+     */
+    public boolean matchesPath(final String relativePrefix, final String filename) {
+        for (PathGlob exclude : excludeGlobs) {
+            if (exclude.matches(relativePrefix, filename)) {
+                return false;
+            }
+        }
+
+        if (pathPattern != null
+                && !pathPattern.matcher(relativePrefix.isEmpty() ? filename : relativePrefix + filename).find()) {
+            return false;
+        }
+
+        for (PathGlob include : includeGlobs) {
+            if (include.matches(relativePrefix, filename)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Checks a file.
+     * @param relativePath the path relative to the source folder
+     * @param size the size of the file
+     * @param lastModified when the file was last modified, in milliseconds
+     *                     since the epoch
+     * @return true if the file is selected
+     */
+    public boolean matches(final String relativePath, final long size, final long lastModified) {
+        return matchesAttributes(size, lastModified) && matchesPath(relativePath);
+    }
+
+    /**
+     * Returns a wildcard that the name of every selected file in the top
+     * level of the source folder matches, so an SFTP listing can leave the
+     * other entries out as it reads them.  SFTP wildcards never match names
+     * starting with a dot unless they start with one too, which would
+     * leave out files that the globs select, so only a single include glob
+     * starting with something other than a wildcard or a dot is used.
+     * @return the wildcard, or empty if the listing must not be narrowed
+     */
+    public Optional<String> getListingWildcard() {
+        if (includes.size() != 1 || !LISTING_WILDCARD.matcher(includes.get(0)).matches()) {
+            return Optional.empty();
+        }
+
+        return Optional.of(includes.get(0));
+    }
+
+}
@@ -0,0 +1,101 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A bounded hand-off between the thread listing the source and the thread
+ * starting the transfers, so transfers start as soon as the first file is
+ * found.  Listing blocks while the queue is full, which keeps the number of
+ * files held in memory bounded no matter how many files there are.
+ */
+public class SourceFileQueue {
+
+    private final BlockingQueue<Optional<SourceFile>> queue;
+
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * Creates a queue.
+     * @param capacity the maximum number of files waiting to be taken
+     */
+    public SourceFileQueue(final int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Adds a file, waiting while the queue is full.  May be called from
+     * several threads at once.
+     * @param file the file to add
+     * @return the number of files added so far
+     */
+    public int put(final SourceFile file) {
+        try {
+            queue.put(Optional.of(file));
+            return count.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing a file", e);
+        }
+    }
+
+    /**
+     * Marks the listing as finished.  Once the queued files have been
+     * taken, {@link #take(long)} returns an empty result, or throws the
+     * given failure if there is one.
+     * @param cause the reason the listing failed, or null if it succeeded
+     */
+    public void finish(final RuntimeException cause) {
+        failure.set(cause);
+
+        try {
+            queue.put(Optional.empty());
+        } catch (InterruptedException e) {
+            // The consumer already gave up, so nobody is waiting for the end
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the number of files waiting to be taken
+     */
+    public int size() {
+        return queue.size();
+    }
+
+    /**
+     * Takes the next file, waiting until one is available.
+     * @param deadline the {@link System#nanoTime()} after which to give up
+     * @return the file, or empty once the listing has finished
+     * @throws InterruptedException if interrupted while waiting
+     * @throws TimeoutException if the deadline passed while waiting
+     */
+    public Optional<SourceFile> take(final long deadline) throws InterruptedException, TimeoutException {
+        final Optional<SourceFile> file = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+
+        if (file == null) {
+            throw new TimeoutException("Timed out waiting for the next file");
+        }
+
+        if (file.isEmpty() && failure.get() != null) {
+            throw failure.get();
+        }
+
+        return file;
+    }
+
+    /**
+     * @return the number of files added so far
+     */
+    public int getCount() {
+        return count.get();
+    }
+
+}
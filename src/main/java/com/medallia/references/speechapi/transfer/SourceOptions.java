@@ -8,7 +8,7 @@ import picocli.CommandLine;
 
 /**
  * Options that relate to the source of the file transfer.  Sources are
- * either an SFTP remote server or a local directory.
+ * either an SFTP remote server, a local directory or a local archive.
  */
 @Getter
 @Builder
@@ -22,4 +22,7 @@ public class SourceOptions {
     @CommandLine.ArgGroup(exclusive = false, multiplicity = "1")
     private LocalOptions local;
 
+    @CommandLine.ArgGroup(exclusive = false, multiplicity = "1")
+    private ArchiveOptions archive;
+
 }
@@ -0,0 +1,49 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A payload that can only be read sequentially, such as a download that
+ * is still in progress.
+ */
+public class StreamPayload extends TransferPayload {
+
+    private final InputStream inputStream;
+
+    private final long contentLength;
+
+    /**
+     * Creates a payload for a stream of unknown length.
+     * @param inputStream the stream of the contents
+     */
+    public StreamPayload(final InputStream inputStream) {
+        this(inputStream, UNKNOWN_LENGTH);
+    }
+
+    /**
+     * Creates a payload for a stream.
+     * @param inputStream the stream of the contents
+     * @param contentLength the length in bytes, or {@link #UNKNOWN_LENGTH}
+     */
+    public StreamPayload(final InputStream inputStream, final long contentLength) {
+        this.inputStream = inputStream;
+        this.contentLength = contentLength;
+    }
+
+    @Override
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+
+}
@@ -0,0 +1,235 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded buffer that connects a producer writing to an
+ * {@link OutputStream} with a consumer reading from an {@link InputStream}
+ * on another thread.  The producer blocks while the buffer is full, so
+ * memory stays bounded no matter how large the data is.
+ *
+ * <p>Unlike {@link java.io.PipedInputStream}, failures on one side are
+ * propagated to the other: a producer failure is rethrown to the reader,
+ * and a reader that gives up makes further writes fail, so a download does
+ * not carry on for an upload that has already been abandoned.
+ */
+public class StreamingPipe {
+
+    private static final int BYTE_MASK = 0xFF;
+
+    private final byte[] buffer;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    private int readPosition = 0;
+    private int count = 0;
+    private long totalWritten = 0;
+
+    private boolean writerClosed = false;
+    private boolean readerClosed = false;
+    private Throwable failure = null;
+
+    private final InputStream inputStream = new PipeInputStream();
+    private final OutputStream outputStream = new PipeOutputStream();
+
+    /**
+     * Creates a pipe.
+     * @param capacity the maximum number of bytes buffered in the pipe
+     */
+    public StreamingPipe(final int capacity) {
+        this.buffer = new byte[capacity];
+    }
+
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    /**
+     * Marks the producer as failed.  The reader gets an {@link IOException}
+     * with the failure as its cause instead of a premature end of stream.
+     * @param cause the reason the producer failed
+     */
+    public void fail(final Throwable cause) {
+        lock.lock();
+        try {
+            failure = cause;
+            writerClosed = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of bytes written to the pipe so far
+     */
+    public long getBytesWritten() {
+        lock.lock();
+        try {
+            return totalWritten;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void write(final byte[] bytes, final int offset, final int length) throws IOException {
+        int written = 0;
+
+        lock.lock();
+        try {
+            while (written < length) {
+                while (count == buffer.length && !readerClosed) {
+                    notFull.await();
+                }
+
+                if (readerClosed) {
+                    throw new IOException("Pipe was closed by the reader");
+                }
+
+                if (writerClosed) {
+                    throw new IOException("Pipe was already closed by the writer");
+                }
+
+                // Copy as much as fits before wrapping around the buffer
+                final int writePosition = (readPosition + count) % buffer.length;
+                final int chunk = Math.min(
+                    length - written,
+                    Math.min(buffer.length - count, buffer.length - writePosition)
+                );
+
+                System.arraycopy(bytes, offset + written, buffer, writePosition, chunk);
+
+                count += chunk;
+                written += chunk;
+                totalWritten += chunk;
+
+                notEmpty.signalAll();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing to pipe");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int read(final byte[] bytes, final int offset, final int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+
+        lock.lock();
+        try {
+            while (count == 0 && !writerClosed && !readerClosed) {
+                notEmpty.await();
+            }
+
+            if (readerClosed) {
+                throw new IOException("Pipe was already closed by the reader");
+            }
+
+            if (failure != null) {
+                throw new IOException("Producer failed while writing to pipe", failure);
+            }
+
+            if (count == 0) {
+                return -1;
+            }
+
+            // Copy as much as is available before wrapping around the buffer
+            final int chunk = Math.min(length, Math.min(count, buffer.length - readPosition));
+
+            System.arraycopy(buffer, readPosition, bytes, offset, chunk);
+
+            readPosition = (readPosition + chunk) % buffer.length;
+            count -= chunk;
+
+            notFull.signalAll();
+
+            return chunk;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading from pipe");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void closeWriter() {
+        lock.lock();
+        try {
+            writerClosed = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void closeReader() {
+        lock.lock();
+        try {
+            readerClosed = true;
+            notFull.signalAll();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The reading end of the pipe.
+     */
+    private class PipeInputStream extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            final byte[] single = new byte[1];
+            return StreamingPipe.this.read(single, 0, 1) < 0 ? -1 : single[0] & BYTE_MASK;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+            return StreamingPipe.this.read(bytes, offset, length);
+        }
+
+        @Override
+        public void close() {
+            closeReader();
+        }
+
+    }
+
+    /**
+     * The writing end of the pipe.
+     */
+    private class PipeOutputStream extends OutputStream {
+
+        @Override
+        public void write(final int b) throws IOException {
+            StreamingPipe.this.write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+            StreamingPipe.this.write(bytes, offset, length);
+        }
+
+        @Override
+        public void close() {
+            closeWriter();
+        }
+
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarFile;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reads the entries of an uncompressed tar archive.  The headers of the
+ * entries are read up front, skipping over their contents, and each entry
+ * is then read straight from the archive as a slice of it, so several
+ * entries are read in parallel and none are copied onto the heap.
+ */
+@Slf4j
+public class TarArchiveReader extends ArchiveReader {
+
+    private final Path path;
+
+    private final TarFile tarFile;
+
+    private final Map<String, TarArchiveEntry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Opens the archive and reads the headers of its entries.
+     * @param path the archive
+     * @throws IOException if the archive cannot be opened
+     */
+    public TarArchiveReader(final Path path) throws IOException {
+        this.path = path;
+        this.tarFile = new TarFile(path);
+    }
+
+    @Override
+    public void listEntries(final SourceFileFilter filter, final Consumer<SourceFile> consumer) {
+        for (TarArchiveEntry entry : tarFile.getEntries()) {
+            if (!entry.isFile()) {
+                continue;
+            }
+
+            final String filename = getFilename(entry.getName());
+
+            if (!filter.matches(filename, entry.getSize(), entry.getLastModifiedDate().getTime())) {
+                continue;
+            }
+
+            // The contents of a sparse entry are not stored in one piece
+            if (entry.isSparse()) {
+                LOGGER.warn("Skipping {}, which is a sparse file", filename);
+                continue;
+            }
+
+            if (entries.putIfAbsent(filename, entry) != null) {
+                LOGGER.warn("Skipping {}, which is in the archive more than once", filename);
+                continue;
+            }
+
+            consumer.accept(new SourceFile(filename, entry.getSize(), entry.getLastModifiedDate().getTime()));
+        }
+    }
+
+    @Override
+    public TransferPayload getEntry(final SourceFile file) throws IOException {
+        final TarArchiveEntry entry = entries.get(file.getName());
+
+        return new FileChannelPayload(path, entry.getDataOffset(), entry.getSize());
+    }
+
+    @Override
+    public void close() throws IOException {
+        tarFile.close();
+    }
+
+}
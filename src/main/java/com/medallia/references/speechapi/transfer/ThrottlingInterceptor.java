@@ -0,0 +1,40 @@
+package com.medallia.references.speechapi.transfer;
+
+import com.medallia.references.speechapi.concurrency.ConcurrencyLimiter;
+import com.medallia.references.speechapi.concurrency.Outcome;
+
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+
+/**
+ * Tells the limiter of the current run about every response by which MMFT
+ * throttles a request.  The S3 client and the retries around it send a
+ * throttled request again, often successfully, so the limiter would
+ * otherwise only hear of throttling once every attempt had failed.
+ */
+public class ThrottlingInterceptor implements ExecutionInterceptor {
+
+    private volatile ConcurrencyLimiter limiter;
+
+    /**
+     * Sets the limiter to report to.
+     * @param limiter the limiter of the current run, or null for none
+     */
+    public void setLimiter(final ConcurrencyLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    @Override
+    public void afterTransmission(final Context.AfterTransmission context, final ExecutionAttributes executionAttributes) {
+        final ConcurrencyLimiter current = limiter;
+        final int statusCode = context.httpResponse().statusCode();
+
+        // Called once for each attempt, including those the client retries
+        if (current != null
+                && (statusCode == Outcome.HTTP_TOO_MANY_REQUESTS || statusCode == Outcome.HTTP_SERVICE_UNAVAILABLE)) {
+            current.throttled();
+        }
+    }
+
+}
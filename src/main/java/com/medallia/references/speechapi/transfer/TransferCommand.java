@@ -3,15 +3,33 @@ package com.medallia.references.speechapi.transfer;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
 import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.medallia.references.speechapi.TopMostCommand;
+import com.medallia.references.speechapi.metrics.MetricsExporter;
 
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -42,6 +60,20 @@ import picocli.CommandLine.Spec;
 public class TransferCommand implements Callable {
 
     public static final String DEFAULT_GLOB_PATTERN = "*";
+    public static final String DEFAULT_MAX_IN_FLIGHT = "200";
+    public static final Integer MAX_IN_FLIGHT = 2000;
+    public static final String DEFAULT_ORDER = "LISTING";
+    public static final String DEFAULT_MAX_BYTES_IN_FLIGHT = "0";
+    public static final String DEFAULT_SKIP_UNCHANGED = "NONE";
+    public static final String DEFAULT_MMFT_INDEX_MAX_AGE = "1d";
+    public static final String DEFAULT_TRANSFORM = "NONE";
+    public static final String DEFAULT_HEDGE_PERCENTILE = "0";
+    public static final String DEFAULT_DEADLINE_MULTIPLIER = "0";
+    public static final int MAX_HEDGE_PERCENTILE = 99;
+    public static final String DEFAULT_MIN_SIZE = "0";
+    public static final String DEFAULT_MAX_SIZE = "0";
+    public static final Pattern LOCAL_DATE_PATTERN = Pattern.compile("[0-9]{4}-[0-9]{2}-[0-9]{2}");
+    public static final Pattern AGE_PATTERN = Pattern.compile("([ ]*[0-9]+[ ]*[smhd][ ]*)+");
 
     @Autowired
     private SftpProcessStrategy sftpProcessStrategy;
@@ -49,6 +81,21 @@ public class TransferCommand implements Callable {
     @Autowired
     private LocalProcessStrategy localProcessStrategy;
 
+    @Autowired
+    private ArchiveProcessStrategy archiveProcessStrategy;
+
+    @Autowired
+    private MmftClientService mmftClientService;
+
+    @Autowired
+    private MmftService mmftService;
+
+    @Autowired
+    private FlacTransform flacTransform;
+
+    @Autowired
+    private MetricsExporter metricsExporter;
+
     @ParentCommand
     private TopMostCommand parent;
 
@@ -62,14 +109,122 @@ public class TransferCommand implements Callable {
     private MmftOptions mmft;
 
     @CommandLine.Option(
-        names = {"-g", "--glob"},
+        names = {"-g", "--glob", "--include"},
         defaultValue = DEFAULT_GLOB_PATTERN,
         required = false,
         description = ""
-            + "The glob pattern to use for selecting files to transfer. "
+            + "The glob pattern to use for selecting files to transfer. It "
+            + "is matched against the path of each file relative to the "
+            + "source folder, and may be repeated to select files matching "
+            + "any of the patterns. (default=${DEFAULT-VALUE})"
+    )
+    private List<String> globPatterns;
+
+    @CommandLine.Option(
+        names = {"--exclude"},
+        required = false,
+        description = ""
+            + "A glob pattern for files not to transfer, even if selected "
+            + "by --glob. May be repeated. (default=none)"
+    )
+    private List<String> excludePatterns;
+
+    private Pattern pathPattern;
+
+    /**
+     * Sets the regular expression that the path of a file must contain
+     * for the file to be transferred.
+     * @param value the regular expression, or blank for none
+     */
+    @CommandLine.Option(
+        names = {"--path-regex"},
+        defaultValue = "",
+        required = false,
+        description = ""
+            + "A regular expression that must be found in the path of each "
+            + "file relative to the source folder, such as '^2022/0[1-6]/'. "
+            + "(default=disabled)"
+    )
+    public void setPathRegex(final String value) {
+        try {
+            pathPattern = StringUtils.isNotBlank(value) ? Pattern.compile(value) : null;
+        } catch (PatternSyntaxException e) {
+            throw new CommandLine.ParameterException(
+                spec.commandLine(),
+                String.format("Invalid value for --path-regex: %s", e.getDescription())
+            );
+        }
+    }
+
+    @CommandLine.Option(
+        names = {"--min-size"},
+        defaultValue = DEFAULT_MIN_SIZE,
+        required = false,
+        converter = ByteSizeConverter.class,
+        description = ""
+            + "Only transfers files of at least this size, such as 1KB. "
             + "(default=${DEFAULT-VALUE})"
     )
-    private String globPattern;
+    private long minSize;
+
+    private long maxSize;
+
+    /**
+     * Sets the size above which files are not transferred.
+     * @param maxSize the largest size, in bytes, or 0 for no limit
+     */
+    @CommandLine.Option(
+        names = {"--max-size"},
+        defaultValue = DEFAULT_MAX_SIZE,
+        required = false,
+        converter = ByteSizeConverter.class,
+        description = ""
+            + "Only transfers files of at most this size, such as 2GB, or 0 "
+            + "for no limit. (default=${DEFAULT-VALUE})"
+    )
+    public void setMaxSize(final Long maxSize) {
+        this.maxSize = maxSize > 0 ? maxSize : Long.MAX_VALUE;
+    }
+
+    private long modifiedAfter;
+
+    /**
+     * Sets the time from which files must have been modified to be
+     * transferred.
+     * @param value the time, as described by {@link #parseModifiedTime}
+     */
+    @CommandLine.Option(
+        names = {"--modified-after"},
+        defaultValue = "",
+        required = false,
+        description = ""
+            + "Only transfers files last modified at or after this time, "
+            + "given as a date (2022-06-01), a date and time "
+            + "(2022-06-01T08:00:00, or with an offset such as Z), or an age "
+            + "in the same format as --timeout (7d). (default=disabled)"
+    )
+    public void setModifiedAfter(final String value) {
+        modifiedAfter = StringUtils.isNotBlank(value) ? parseModifiedTime("--modified-after", value) : Long.MIN_VALUE;
+    }
+
+    private long modifiedBefore;
+
+    /**
+     * Sets the time before which files must have been modified to be
+     * transferred.
+     * @param value the time, as described by {@link #parseModifiedTime}
+     */
+    @CommandLine.Option(
+        names = {"--modified-before"},
+        defaultValue = "",
+        required = false,
+        description = ""
+            + "Only transfers files last modified before this time, in the "
+            + "same format as --modified-after. (default=disabled)"
+    )
+    public void setModifiedBefore(final String value) {
+        modifiedBefore = StringUtils.isNotBlank(value) ? parseModifiedTime("--modified-before", value) : Long.MAX_VALUE;
+    }
 
     @CommandLine.Option(
         names = {"-o", "--output"},
@@ -81,6 +236,285 @@ public class TransferCommand implements Callable {
     )
     private String outputFilename;
 
+    @CommandLine.Option(
+        names = {"--journal"},
+        defaultValue = "",
+        required = false,
+        description = ""
+            + "Records completed transfers in the journal file (if set) and "
+            + "skips the files already recorded in it, so an interrupted "
+            + "transfer can be resumed by running it again. "
+            + "(default=disabled)"
+    )
+    private String journalFilename;
+
+    @CommandLine.Option(
+        names = {"--async"},
+        defaultValue = "false",
+        required = false,
+        description = ""
+            + "Uploads files with a non-blocking client, so many uploads can "
+            + "share a small event loop pool instead of one worker each. "
+            + "(default=${DEFAULT-VALUE})"
+    )
+    private boolean async;
+
+    @CommandLine.Option(
+        names = {"--order"},
+        defaultValue = DEFAULT_ORDER,
+        required = false,
+        description = ""
+            + "The order in which files are transferred: as they are found "
+            + "(LISTING), largest first (LARGEST_FIRST), or largest and "
+            + "smallest taking turns (INTERLEAVED). Sorting waits for the "
+            + "whole source to be listed. (default=${DEFAULT-VALUE})"
+    )
+    private TransferOrder order;
+
+    private long maxBytesInFlight;
+
+    /**
+     * Sets the budget of bytes in flight.  Files are only started while the
+     * sum of the sizes of the files being transferred fits in the budget;
+     * a file larger than the whole budget is transferred on its own.
+     * @param maxBytesInFlight the budget, in bytes, or 0 for no limit
+     */
+    @CommandLine.Option(
+        names = {"--max-bytes-in-flight"},
+        defaultValue = DEFAULT_MAX_BYTES_IN_FLIGHT,
+        required = false,
+        converter = ByteSizeConverter.class,
+        description = ""
+            + "The maximum total size of the files being transferred at "
+            + "once, such as 2GB; 0 means no limit. (default=${DEFAULT-VALUE})"
+    )
+    public void setMaxBytesInFlight(final Long maxBytesInFlight) {
+        if (maxBytesInFlight < 0) {
+            throw new CommandLine.ParameterException(
+                spec.commandLine(),
+                "Invalid max bytes in flight value: must not be negative"
+            );
+        }
+
+        this.maxBytesInFlight = maxBytesInFlight;
+    }
+
+    private int hedgePercentile;
+
+    /**
+     * Sets when a stalled transfer gets a second attempt, as a percentile
+     * of the recent transfers' times scaled to the size of the file.
+     * @param hedgePercentile the percentile, or 0 to never start one
+     */
+    @CommandLine.Option(
+        names = {"--hedge-percentile"},
+        defaultValue = DEFAULT_HEDGE_PERCENTILE,
+        required = false,
+        description = ""
+            + "Starts a second attempt at a transfer once it has taken longer "
+            + "than this percentile of recent transfers, scaled to its size, "
+            + "such as 95, keeping whichever attempt finishes first; 0 means "
+            + "never. (default=${DEFAULT-VALUE})"
+    )
+    public void setHedgePercentile(final Integer hedgePercentile) {
+        if (hedgePercentile < 0 || hedgePercentile > MAX_HEDGE_PERCENTILE) {
+            throw new CommandLine.ParameterException(
+                spec.commandLine(),
+                String.format("Invalid hedge percentile: must be between 0 and %d (inclusive)", MAX_HEDGE_PERCENTILE)
+            );
+        }
+
+        this.hedgePercentile = hedgePercentile;
+    }
+
+    private int deadlineMultiplier;
+
+    /**
+     * Sets the deadline of each transfer, as a multiple of the median of
+     * the recent transfers' times scaled to the size of the file.
+     * @param deadlineMultiplier the multiple, or 0 for no deadline
+     */
+    @CommandLine.Option(
+        names = {"--deadline-multiplier"},
+        defaultValue = DEFAULT_DEADLINE_MULTIPLIER,
+        required = false,
+        description = ""
+            + "Fails a transfer once it has taken this many times longer than "
+            + "the median of recent transfers, scaled to its size, and at "
+            + "least 60 seconds; 0 means no deadline. (default=${DEFAULT-VALUE})"
+    )
+    public void setDeadlineMultiplier(final Integer deadlineMultiplier) {
+        if (deadlineMultiplier < 0) {
+            throw new CommandLine.ParameterException(
+                spec.commandLine(),
+                "Invalid deadline multiplier: must not be negative"
+            );
+        }
+
+        this.deadlineMultiplier = deadlineMultiplier;
+    }
+
+    @CommandLine.Option(
+        names = {"--skip-unchanged"},
+        defaultValue = DEFAULT_SKIP_UNCHANGED,
+        required = false,
+        description = ""
+            + "Skips files already in MMFT with the same size (SIZE), or "
+            + "with the same size and checksum (ETAG). Valid values: "
+            + "${COMPLETION-CANDIDATES}. (default=${DEFAULT-VALUE})"
+    )
+    private SkipUnchanged skipUnchanged;
+
+    @CommandLine.Option(
+        names = {"--transform"},
+        defaultValue = DEFAULT_TRANSFORM,
+        required = false,
+        description = ""
+            + "Transforms files before uploading them: FLAC compresses PCM "
+            + "WAV files to FLAC, losslessly, and uploads them with a .flac "
+            + "extension instead. Valid values: ${COMPLETION-CANDIDATES}. "
+            + "(default=${DEFAULT-VALUE})"
+    )
+    private TransformType transform;
+
+    @CommandLine.Option(
+        names = {"--mmft-index-cache"},
+        defaultValue = "",
+        required = false,
+        description = ""
+            + "Caches the listing of the MMFT folder used by "
+            + "--skip-unchanged in this file (if set), so later runs "
+            + "do not have to list the folder again. (default=disabled)"
+    )
+    private String indexCacheFilename;
+
+    private Duration indexMaxAge;
+
+    /**
+     * Sets how long a cached listing of the MMFT folder is used before the
+     * folder is listed again.  Files uploaded in the meantime are added to
+     * the cache, but objects removed by others are only noticed by listing
+     * the folder again.
+     * @param value the maximum age, in the same format as {@code --timeout}
+     */
+    @CommandLine.Option(
+        names = {"--mmft-index-max-age"},
+        defaultValue = DEFAULT_MMFT_INDEX_MAX_AGE,
+        required = false,
+        description = ""
+            + "How long the cached listing of the MMFT folder is used before "
+            + "listing it again. (default=${DEFAULT-VALUE})"
+    )
+    public void setIndexMaxAge(final String value) {
+        try {
+            indexMaxAge = TopMostCommand.parseTimeSpecifier(value);
+        } catch (DateTimeException e) {
+            throw new CommandLine.ParameterException(
+                spec.commandLine(),
+                String.format("Invalid value for --mmft-index-max-age: %s", value)
+            );
+        }
+    }
+
+    private Integer maxInFlight;
+
+    /**
+     * Sets the maximum number of uploads in flight when using
+     * {@code --async}.  Unlike {@code --parallel}, this does not create
+     * a thread per upload, so it can go well beyond the worker limit.
+     * @param maxInFlight the maximum number of uploads in flight
+     */
+    @CommandLine.Option(
+        names = {"--max-in-flight"},
+        defaultValue = DEFAULT_MAX_IN_FLIGHT,
+        required = false,
+        description = ""
+            + "The maximum number of uploads in flight with --async. "
+            + "(default=${DEFAULT-VALUE})"
+    )
+    public void setMaxInFlight(final Integer maxInFlight) {
+        if (maxInFlight <= 0 || maxInFlight > MAX_IN_FLIGHT) {
+            throw new CommandLine.ParameterException(
+                spec.commandLine(),
+                String.format(
+                    "Invalid max in flight value: must be between 1 and %s (inclusive)",
+                    MAX_IN_FLIGHT
+                )
+            );
+        }
+
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Gets the index of the objects in the MMFT folder, from the cache if
+     * there is a recent enough one, or else by listing the folder.
+     * @return the index
+     */
+    private MmftBucketIndex getBucketIndex() {
+        final Optional<MmftBucketIndex> cached = StringUtils.isNotBlank(indexCacheFilename)
+            ? MmftBucketIndex.load(Paths.get(indexCacheFilename), MmftBucketIndex.getTarget(mmft), indexMaxAge)
+            : Optional.empty();
+
+        if (cached.isPresent()) {
+            System.out.println(String.format("Using cached listing of %d MMFT object(s)", cached.get().size()));
+            return cached.get();
+        }
+
+        System.out.println("Listing the objects already in MMFT");
+
+        final MmftBucketIndex index = mmftService.buildBucketIndex(mmft);
+
+        System.out.println(String.format("Found %d MMFT object(s)", index.size()));
+
+        return index;
+    }
+
+    /**
+     * Parses a modification time bound: a date, which is the start of
+     * that day in the local time zone; a date and time, in the local time
+     * zone unless it has an offset; or an age, which is that long before
+     * now.
+     * @param option the name of the option, for the error message
+     * @param value the time
+     * @return the time, in milliseconds since the epoch
+     */
+    private long parseModifiedTime(final String option, final String value) {
+        try {
+            if (LOCAL_DATE_PATTERN.matcher(value).matches()) {
+                return LocalDate.parse(value).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            }
+
+            if (value.contains("T")) {
+                final TemporalAccessor time = DateTimeFormatter.ISO_DATE_TIME.parse(value);
+
+                return time.isSupported(ChronoField.OFFSET_SECONDS)
+                    ? OffsetDateTime.from(time).toInstant().toEpochMilli()
+                    : LocalDateTime.from(time).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            }
+
+            if (!AGE_PATTERN.matcher(value.toLowerCase(Locale.ENGLISH)).matches()) {
+                throw new DateTimeException(String.format("Invalid age: %s", value));
+            }
+
+            return System.currentTimeMillis() - TopMostCommand.parseTimeSpecifier(value).toMillis();
+        } catch (DateTimeException e) {
+            throw new CommandLine.ParameterException(
+                spec.commandLine(),
+                String.format("Invalid value for %s: %s", option, value)
+            );
+        }
+    }
+
+    private PayloadTransform getTransform() {
+        switch (transform) {
+            case FLAC:
+                return flacTransform;
+            default:
+                return null;
+        }
+    }
+
     private GenericProcessStrategy getProcessStrategy() {
         if (source.getLocal() != null) {
             return localProcessStrategy;
@@ -90,38 +524,181 @@ public class TransferCommand implements Callable {
             return sftpProcessStrategy;
         }
 
-        throw new IllegalStateException("Must set source type as either local or SFTP");
+        if (source.getArchive() != null) {
+            return archiveProcessStrategy;
+        }
+
+        throw new IllegalStateException("Must set source type as either local, SFTP or archive");
     }
 
     @Override
     public Integer call() {
+        parent.validate();
+
         // Create the process strategy that will be used to execute the job
         final GenericProcessStrategy strategy = getProcessStrategy();
 
+        // Sorting waits for the listing to finish, which never happens
+        // while watching or polling, and which a compressed archive can
+        // only reach once its entries are transferred
+        if (!strategy.canSort(source) && order != TransferOrder.LISTING) {
+            throw new CommandLine.ParameterException(
+                spec.commandLine(),
+                "The --order option cannot be used with --watch, --sftp-poll-interval or a .tar.gz archive"
+            );
+        }
+
+        if (minSize > maxSize || modifiedAfter >= modifiedBefore) {
+            throw new CommandLine.ParameterException(
+                spec.commandLine(),
+                "The --min-size and --modified-after options must be below --max-size and --modified-before"
+            );
+        }
+
+        // The size of a transformed file is only known once it has been
+        // transformed, so it cannot be compared before reading the file
+        if (transform != TransformType.NONE && skipUnchanged == SkipUnchanged.SIZE) {
+            throw new CommandLine.ParameterException(
+                spec.commandLine(),
+                "The --transform option cannot be used with --skip-unchanged=SIZE, use ETAG instead"
+            );
+        }
+
         // Create a file stream that can be used to output filenames
-        // to a text file as a log
+        // to a text file as a log, flushed line by line so it stays
+        // current while watching
         final PrintStream filenameStream = Optional
             .ofNullable(StringUtils.isNotBlank(outputFilename) ? outputFilename : "/dev/null")
             .map(filename -> {
                 try {
-                    return new PrintStream(new FileOutputStream(new File(filename)));
+                    return new PrintStream(new FileOutputStream(new File(filename)), true);
                 } catch (FileNotFoundException e) {
                     throw new RuntimeException(e);
                 }
             })
             .get();
 
-        // Initiate the transfer process
-        strategy.process(
-            parent.getNumWorkers(),
-            parent.getExecutionTimeout(),
-            source,
-            mmft,
-            globPattern,
-            filenameStream
+        // Open the journal of completed transfers, which also loads the
+        // transfers completed by earlier runs
+        final TransferJournal journal = Optional
+            .ofNullable(StringUtils.isNotBlank(journalFilename) ? journalFilename : null)
+            .map(filename -> {
+                try {
+                    return new TransferJournal(Paths.get(filename));
+                } catch (IOException e) {
+                    throw new RuntimeException("Unable to open the transfer journal", e);
+                }
+            })
+            .orElse(null);
+
+        metricsExporter.start(
+            parent.isMetricsJmx(),
+            parent.getMetricsAddress(),
+            parent.getMetricsPort(),
+            parent.getMetricsFilename()
+        );
+
+        // Size the shared MMFT connection pool so that every worker, and
+        // every part each worker uploads, can hold a connection at once;
+        // asynchronous uploads send their parts one after another
+        mmftClientService.setMaxConnections(
+            async ? maxInFlight : parent.getNumWorkers() * mmft.getPartConcurrency()
         );
 
-        filenameStream.close();
+        if (parent.isVirtualThreads()) {
+            mmftService.useVirtualThreads();
+        }
+
+        // Likewise for the SFTP pool, where every worker holds a channel
+        // for as long as it downloads
+        if (source.getSftp() != null) {
+            source.getSftp().fitSessions(parent.getNumWorkers());
+
+            if (source.getSftp().getMaxChannels() < parent.getNumWorkers()) {
+                LOGGER.warning(String.format(
+                    "Only %d SFTP channel(s) can be open at once for %d workers, so the rest wait for one; "
+                        + "raise --sftp-max-sessions or --sftp-channels-per-session to download with all of them",
+                    source.getSftp().getMaxChannels(),
+                    parent.getNumWorkers()
+                ));
+            }
+        }
+
+        final MmftBucketIndex bucketIndex = skipUnchanged != SkipUnchanged.NONE
+            ? getBucketIndex()
+            : null;
+
+        final TransferSettings settings = TransferSettings.builder()
+            .threads(parent.getNumWorkers())
+            .timeout(parent.getExecutionTimeout())
+            .filter(new SourceFileFilter(
+                globPatterns,
+                excludePatterns != null ? excludePatterns : List.of(),
+                pathPattern,
+                minSize,
+                maxSize,
+                modifiedAfter,
+                modifiedBefore
+            ))
+            .filenameStream(filenameStream)
+            .async(async)
+            .maxInFlight(maxInFlight)
+            .adaptive(parent.isAdaptive())
+            .virtualThreads(parent.isVirtualThreads())
+            .order(order)
+            .maxBytesInFlight(maxBytesInFlight)
+            .journal(journal)
+            .skipUnchanged(skipUnchanged)
+            .bucketIndex(bucketIndex)
+            .transform(getTransform())
+            .hedgePercentile(hedgePercentile)
+            .deadlineMultiplier(deadlineMultiplier)
+            .build();
+
+        RuntimeException failure = null;
+
+        try {
+            // Initiate the transfer process
+            strategy.process(settings, source, mmft);
+        } catch (RuntimeException e) {
+            failure = e;
+        } finally {
+            filenameStream.close();
+
+            // The transfer's own error is the one to report; failing to
+            // record the last transfers is only reported on its own when
+            // the transfer itself succeeded
+            if (journal != null) {
+                try {
+                    journal.close();
+                } catch (IOException | UncheckedIOException e) {
+                    final RuntimeException closeFailure = new RuntimeException("Unable to close the transfer journal", e);
+
+                    if (failure == null) {
+                        failure = closeFailure;
+                    } else {
+                        failure.addSuppressed(closeFailure);
+                    }
+                }
+            }
+
+            // Keep what was uploaded, even if the transfer failed part way.
+            // The cache only saves listing MMFT again, so the run does not
+            // fail for it.
+            if (bucketIndex != null && StringUtils.isNotBlank(indexCacheFilename)) {
+                try {
+                    bucketIndex.save(Paths.get(indexCacheFilename));
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, String.format("Unable to save the MMFT index cache to %s", indexCacheFilename), e);
+                }
+            }
+
+            mmftClientService.close();
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
 
         return 0;
     }
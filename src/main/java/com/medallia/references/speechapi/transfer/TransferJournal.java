@@ -0,0 +1,206 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A file recording the MMFT keys of the files that were fully transferred,
+ * one per line, so that a rerun can skip them.
+ *
+ * <p>Keys are appended and synced to disk in groups, either once enough of
+ * them are waiting or after a short delay.  A crash loses at most the last
+ * group, whose files are simply transferred again.  A line cut short by a
+ * crash is dropped when the journal is next opened.
+ */
+@Slf4j
+public class TransferJournal implements Closeable {
+
+    public static final int GROUP_SIZE = 100;
+    public static final long GROUP_DELAY_MSEC = 1000;
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final byte NEWLINE = '\n';
+
+    private final FileChannel channel;
+
+    private final KeyFingerprintSet completedKeys = new KeyFingerprintSet();
+
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private int pendingCount = 0;
+
+    private final ScheduledExecutorService flushService;
+
+    /**
+     * Opens the journal, creating it if needed, and loads the keys that
+     * were already recorded.
+     * @param path the journal file
+     * @throws IOException if the journal cannot be read
+     */
+    public TransferJournal(final Path path) throws IOException {
+        this.channel = FileChannel.open(
+            path,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE
+        );
+
+        load();
+
+        LOGGER.debug("Loaded {} completed key(s) from {}", completedKeys.size(), path);
+
+        this.flushService = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder()
+                .setNameFormat("transfer-journal-%d")
+                .setDaemon(true)
+                .build()
+        );
+
+        flushService.scheduleWithFixedDelay(
+            this::flushQuietly,
+            GROUP_DELAY_MSEC,
+            GROUP_DELAY_MSEC,
+            TimeUnit.MILLISECONDS
+        );
+    }
+
+    /**
+     * Checks whether a key was recorded by an earlier run.
+     * @param key the MMFT key
+     * @return true if the file was already transferred
+     */
+    public boolean contains(final String key) {
+        return completedKeys.contains(key);
+    }
+
+    /**
+     * @return the number of keys recorded by earlier runs
+     */
+    public int getCompletedCount() {
+        return completedKeys.size();
+    }
+
+    /**
+     * Records a key as transferred.  The key is on disk once its group has
+     * been flushed.
+     * @param key the MMFT key
+     */
+    public void record(final String key) {
+        final boolean isGroupFull;
+
+        synchronized (pending) {
+            pending.writeBytes(key.getBytes(StandardCharsets.UTF_8));
+            pending.write(NEWLINE);
+            pendingCount++;
+
+            isGroupFull = pendingCount >= GROUP_SIZE;
+        }
+
+        if (isGroupFull) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the recorded keys to disk and waits for them to be synced.
+     */
+    public void flush() {
+        synchronized (channel) {
+            final ByteBuffer buffer;
+
+            synchronized (pending) {
+                if (pendingCount == 0) {
+                    return;
+                }
+
+                buffer = ByteBuffer.wrap(pending.toByteArray());
+                pending.reset();
+                pendingCount = 0;
+            }
+
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+
+                channel.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to write to the transfer journal", e);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushService.shutdownNow();
+
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (UncheckedIOException e) {
+            LOGGER.warn("Unable to flush the transfer journal", e);
+        }
+    }
+
+    /**
+     * Reads every complete line, then truncates whatever follows the last
+     * one so that new keys are appended on a line of their own.
+     */
+    private void load() throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        long position = 0;
+        long validLength = 0;
+
+        while (channel.read(buffer, position) > 0) {
+            buffer.flip();
+
+            while (buffer.hasRemaining()) {
+                final byte b = buffer.get();
+                position++;
+
+                if (b == NEWLINE) {
+                    if (line.size() > 0) {
+                        completedKeys.add(line.toString(StandardCharsets.UTF_8));
+                    }
+
+                    line.reset();
+                    validLength = position;
+                } else {
+                    line.write(b);
+                }
+            }
+
+            buffer.clear();
+        }
+
+        if (validLength < position) {
+            LOGGER.warn("Dropping an incomplete line at the end of the transfer journal");
+            channel.truncate(validLength);
+        }
+
+        channel.position(validLength);
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.util.Arrays;
+import java.util.OptionalLong;
+
+/**
+ * Keeps the times of the most recent file transfers, scaled by the size of
+ * each file, so the time a file of any size should take can be estimated
+ * from them.  The time of a small file is mostly request latency rather
+ * than bytes sent, so files smaller than {@link #MIN_SCALED_SIZE} count as
+ * being that size.
+ */
+public class TransferLatencyTracker {
+
+    public static final long MIN_SCALED_SIZE = 1024 * 1024;
+    public static final int WINDOW_SIZE = 256;
+
+    /** Estimates from fewer transfers than this are too noisy to act on. */
+    public static final int MIN_SAMPLES = 16;
+
+    public static final double MAX_PERCENTILE = 100.0;
+
+    private final double[] nanosPerByte = new double[WINDOW_SIZE];
+
+    private int count = 0;
+
+    private int next = 0;
+
+    /**
+     * Records a completed transfer.
+     * @param size the size of the file
+     * @param nanos how long the transfer took
+     */
+    public synchronized void record(final long size, final long nanos) {
+        nanosPerByte[next] = (double) nanos / Math.max(size, MIN_SCALED_SIZE);
+
+        next = (next + 1) % WINDOW_SIZE;
+        count = Math.min(count + 1, WINDOW_SIZE);
+    }
+
+    /**
+     * Estimates how long a file should take to transfer.
+     * @param size the size of the file
+     * @param percentile the percentile of recent transfers to estimate,
+     *                   such as 50 for the median
+     * @return the estimate in nanoseconds, or empty if too few transfers
+     *         have completed yet
+     */
+    public OptionalLong estimate(final long size, final double percentile) {
+        final double[] samples;
+
+        synchronized (this) {
+            if (count < MIN_SAMPLES) {
+                return OptionalLong.empty();
+            }
+
+            samples = Arrays.copyOf(nanosPerByte, count);
+        }
+
+        Arrays.sort(samples);
+
+        final int index = (int) Math.ceil(percentile / MAX_PERCENTILE * samples.length) - 1;
+        final double rate = samples[Math.max(0, Math.min(index, samples.length - 1))];
+
+        return OptionalLong.of((long) (rate * Math.max(size, MIN_SCALED_SIZE)));
+    }
+
+}
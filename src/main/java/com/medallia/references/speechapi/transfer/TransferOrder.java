@@ -0,0 +1,65 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The order in which files are transferred.  Any order other than
+ * {@link #LISTING} needs the complete listing, so transfers only start
+ * once the source has been listed.
+ */
+public enum TransferOrder {
+
+    /** Files are transferred as soon as they are found. */
+    LISTING {
+        @Override
+        public List<SourceFile> sort(final List<SourceFile> files) {
+            return files;
+        }
+    },
+
+    /**
+     * The largest files are transferred first, so no large file is left
+     * to run on its own at the end of a batch.
+     */
+    LARGEST_FIRST {
+        @Override
+        public List<SourceFile> sort(final List<SourceFile> files) {
+            final List<SourceFile> sorted = new ArrayList<>(files);
+            sorted.sort(Comparator.comparingLong(SourceFile::getSize).reversed());
+            return sorted;
+        }
+    },
+
+    /**
+     * Large and small files take turns, largest and smallest first, which
+     * spreads the load on the source and MMFT more evenly over the batch.
+     */
+    INTERLEAVED {
+        @Override
+        public List<SourceFile> sort(final List<SourceFile> files) {
+            final List<SourceFile> sorted = LARGEST_FIRST.sort(files);
+            final List<SourceFile> interleaved = new ArrayList<>(sorted.size());
+
+            int largest = 0;
+            int smallest = sorted.size() - 1;
+            while (largest <= smallest) {
+                interleaved.add(sorted.get(largest++));
+
+                if (largest <= smallest) {
+                    interleaved.add(sorted.get(smallest--));
+                }
+            }
+
+            return interleaved;
+        }
+    };
+
+    /**
+     * @param files the files in the order they were found
+     * @return the files in the order to transfer them
+     */
+    public abstract List<SourceFile> sort(List<SourceFile> files);
+
+}
@@ -0,0 +1,53 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * The contents of a single file being transferred, as provided by a
+ * source.  Every payload can be read sequentially; payloads that support
+ * random access can also hand out ranges independently of each other,
+ * which lets the parts of a multipart upload be read in parallel and
+ * re-read when a part is retried.
+ */
+public abstract class TransferPayload implements Closeable {
+
+    public static final long UNKNOWN_LENGTH = -1;
+
+    /**
+     * Returns the length of the contents, if known before reading them.
+     * @return the length in bytes, or {@link #UNKNOWN_LENGTH}
+     */
+    public abstract long getContentLength();
+
+    /**
+     * Returns the sequential stream of the contents.  The same stream is
+     * returned every time, so reads continue where the last one stopped.
+     * @return the stream of the contents
+     */
+    public abstract InputStream getInputStream();
+
+    /**
+     * Whether {@link #getRange} is supported.  Random access payloads
+     * always have a known content length.
+     * @return true if ranges can be read independently
+     */
+    public boolean isRandomAccess() {
+        return false;
+    }
+
+    /**
+     * Returns a range of the contents.  The buffer returned may be shared
+     * with the underlying storage, so it must be treated as read only.
+     * @param offset the offset of the range
+     * @param length the length of the range
+     * @return the contents of the range
+     * @throws IOException if the range cannot be read
+     */
+    public ByteBuffer getRange(final long offset, final int length) throws IOException {
+        throw new UnsupportedOperationException("This payload does not support random access");
+    }
+
+}
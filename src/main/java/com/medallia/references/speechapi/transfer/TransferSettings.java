@@ -0,0 +1,68 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.io.PrintStream;
+import java.time.Duration;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * The settings that control how a transfer is executed, as opposed to
+ * where the files come from ({@link SourceOptions}) and where they go
+ * ({@link MmftOptions}).
+ */
+@Getter
+@Builder
+@AllArgsConstructor
+public class TransferSettings {
+
+    /** The number of workers to use. */
+    private final Integer threads;
+
+    /** The maximum duration for the execution. */
+    private final Duration timeout;
+
+    /** Which source files are transferred. */
+    private final SourceFileFilter filter;
+
+    /** The stream for printing processed filenames. */
+    private final PrintStream filenameStream;
+
+    /** Whether uploads are sent with the non-blocking client. */
+    private final boolean async;
+
+    /** The maximum number of asynchronous uploads in flight. */
+    private final Integer maxInFlight;
+
+    /** Whether the number of transfers in flight adapts to MMFT. */
+    private final boolean adaptive;
+
+    /** Whether each file is transferred on a virtual thread of its own. */
+    private final boolean virtualThreads;
+
+    /** The order in which files are transferred. */
+    private final TransferOrder order;
+
+    /** The maximum number of bytes of files in flight, or 0 for no limit. */
+    private final long maxBytesInFlight;
+
+    /** The journal of completed transfers, or null if not resuming. */
+    private final TransferJournal journal;
+
+    /** How files already in MMFT are detected and skipped. */
+    private final SkipUnchanged skipUnchanged;
+
+    /** The objects already in MMFT, or null if nothing is skipped. */
+    private final MmftBucketIndex bucketIndex;
+
+    /** The transform applied to files before upload, or null for none. */
+    private final PayloadTransform transform;
+
+    /** The percentile after which a transfer is hedged, or 0 for never. */
+    private final int hedgePercentile;
+
+    /** How many times the median a transfer may take, or 0 for no limit. */
+    private final int deadlineMultiplier;
+
+}
@@ -0,0 +1,14 @@
+package com.medallia.references.speechapi.transfer;
+
+/**
+ * The transforms that can be applied to files before they are uploaded.
+ */
+public enum TransformType {
+
+    /** Files are uploaded as they are. */
+    NONE,
+
+    /** WAV files are compressed to FLAC, which is lossless. */
+    FLAC
+
+}
@@ -0,0 +1,118 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * One attempt at transferring a file, which can be aborted from another
+ * thread once it is no longer needed.  Aborting closes the payload being
+ * read, so the attempt fails as soon as it reads again, and interrupts
+ * the worker running it, so it stops waiting on its source or between
+ * retries.  An asynchronous attempt has its requests in flight cancelled
+ * through {@link #getCancellation()} instead.  A multipart upload that
+ * fails this way is aborted like any other failed upload.
+ */
+@Slf4j
+public class UploadAttempt {
+
+    private TransferPayload payload;
+
+    private Thread worker;
+
+    private boolean isAborted = false;
+
+    private final CompletableFuture<Void> cancellation = new CompletableFuture<>();
+
+    /**
+     * Registers the payload read by this attempt.
+     * @param payload the payload, which the attempt still closes itself
+     * @return the payload
+     */
+    public TransferPayload open(final TransferPayload payload) {
+        synchronized (this) {
+            this.payload = payload;
+
+            if (!isAborted) {
+                return payload;
+            }
+        }
+
+        closeQuietly(payload);
+        return payload;
+    }
+
+    /**
+     * Runs the blocking part of this attempt on the calling thread, which
+     * is interrupted if the attempt is aborted meanwhile.
+     * @param task the task to run
+     * @param <T> the result type
+     * @return the result of the task
+     */
+    public <T> T run(final Supplier<T> task) {
+        synchronized (this) {
+            worker = Thread.currentThread();
+        }
+
+        try {
+            return task.get();
+        } finally {
+            final boolean wasAborted;
+
+            synchronized (this) {
+                worker = null;
+                wasAborted = isAborted;
+            }
+
+            // Pooled workers must not carry the interrupt to their next task
+            if (wasAborted) {
+                Thread.interrupted();
+            }
+        }
+    }
+
+    /**
+     * Gets the signal that this attempt has been aborted.
+     * @return completes once this attempt is aborted
+     */
+    public CompletableFuture<Void> getCancellation() {
+        return cancellation;
+    }
+
+    /**
+     * Aborts this attempt.  Its outcome is ignored from now on.
+     */
+    public void abort() {
+        final TransferPayload openPayload;
+
+        synchronized (this) {
+            if (isAborted) {
+                return;
+            }
+
+            isAborted = true;
+            openPayload = payload;
+
+            if (worker != null) {
+                worker.interrupt();
+            }
+        }
+
+        if (openPayload != null) {
+            closeQuietly(openPayload);
+        }
+
+        cancellation.complete(null);
+    }
+
+    private static void closeQuietly(final TransferPayload payload) {
+        try {
+            payload.close();
+        } catch (IOException e) {
+            LOGGER.debug("Unable to close the payload of an aborted attempt", e);
+        }
+    }
+
+}
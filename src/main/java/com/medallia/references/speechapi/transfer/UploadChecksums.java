@@ -0,0 +1,231 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.google.common.hash.HashCode;
+import com.medallia.references.speechapi.exceptions.ChecksumMismatchException;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import software.amazon.awssdk.services.s3.model.ChecksumAlgorithm;
+
+/**
+ * The checksums of the parts of one upload, computed from each part while
+ * it is in memory to be sent, so files never need to be read a second time
+ * to be verified.
+ *
+ * <p>Each part is sent with its checksums, which MMFT checks on receipt,
+ * and the ETag and checksum MMFT returns for the part and for the whole
+ * object are checked against them.  Like MMFT, the checksums of a multipart
+ * object are the checksum of the checksums of its parts, followed by the
+ * number of parts.
+ */
+public class UploadChecksums {
+
+    /** ETags that are the MD5 of the contents, as opposed to encrypted objects. */
+    private static final Pattern MD5_ETAG = Pattern.compile("[0-9a-f]{32}(-[0-9]+)?");
+
+    /**
+     * The checksums of a single part.  They are all null if no checksum
+     * is computed.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static final class PartChecksum {
+
+        /** The MD5 of the part, in base 64, as sent in {@code Content-MD5}. */
+        private final String contentMd5;
+
+        /** The SHA-256 of the part, in base 64, or null if not computed. */
+        private final String sha256;
+
+    }
+
+    private final ChecksumType type;
+
+    private final String key;
+
+    private final boolean isMultipart;
+
+    private final Map<Integer, byte[]> md5s = new ConcurrentSkipListMap<>();
+
+    private final Map<Integer, byte[]> sha256s = new ConcurrentSkipListMap<>();
+
+    /**
+     * Creates the checksums of an upload.
+     * @param type the checksums to compute
+     * @param key the key being uploaded, for error messages
+     * @param isMultipart whether the upload is a multipart upload
+     */
+    public UploadChecksums(final ChecksumType type, final String key, final boolean isMultipart) {
+        this.type = type;
+        this.key = key;
+        this.isMultipart = isMultipart;
+    }
+
+    /**
+     * @return the algorithm to declare when starting a multipart upload,
+     *         or null if none
+     */
+    public ChecksumAlgorithm getAlgorithm() {
+        return type == ChecksumType.SHA256 ? ChecksumAlgorithm.SHA256 : null;
+    }
+
+    /**
+     * Computes the checksums of a part.  May be called from several
+     * threads at once, for different parts.
+     * @param partNumber the 1-based part number
+     * @param data the contents of the part, which are not consumed
+     * @return the checksums to send with the part
+     */
+    public PartChecksum addPart(final int partNumber, final ByteBuffer data) {
+        if (type == ChecksumType.NONE) {
+            return new PartChecksum(null, null);
+        }
+
+        final byte[] md5 = digest("MD5", data);
+        md5s.put(partNumber, md5);
+
+        String sha256 = null;
+        if (type == ChecksumType.SHA256) {
+            final byte[] digest = digest("SHA-256", data);
+            sha256s.put(partNumber, digest);
+            sha256 = Base64.getEncoder().encodeToString(digest);
+        }
+
+        return new PartChecksum(Base64.getEncoder().encodeToString(md5), sha256);
+    }
+
+    /**
+     * Checks what MMFT returned for a part of a multipart upload.
+     * @param partNumber the 1-based part number
+     * @param eTag the ETag of the part
+     * @param sha256 the SHA-256 checksum of the part, or null if none
+     * @throws ChecksumMismatchException if either does not match
+     */
+    public void verifyPart(final int partNumber, final String eTag, final String sha256) {
+        if (type == ChecksumType.NONE) {
+            return;
+        }
+
+        verify(
+            String.format("part %d of %s", partNumber, key),
+            eTag,
+            toHex(md5s.get(partNumber)),
+            sha256,
+            type == ChecksumType.SHA256 ? Base64.getEncoder().encodeToString(sha256s.get(partNumber)) : null
+        );
+    }
+
+    /**
+     * Checks what MMFT returned for the whole object.
+     * @param eTag the ETag of the object
+     * @param sha256 the SHA-256 checksum of the object, or null if none
+     * @throws ChecksumMismatchException if either does not match
+     */
+    public void verifyObject(final String eTag, final String sha256) {
+        if (type == ChecksumType.NONE) {
+            return;
+        }
+
+        verify(key, eTag, getETag(), sha256, getSha256());
+    }
+
+    /**
+     * @return the checksum to record for the object: its expected ETag, or
+     *         its SHA-256 checksum, or null if no checksum is computed
+     */
+    public String getChecksum() {
+        switch (type) {
+            case MD5:
+                return getETag();
+            case SHA256:
+                return getSha256();
+            default:
+                return null;
+        }
+    }
+
+    private String getETag() {
+        if (!isMultipart) {
+            return toHex(md5s.get(1));
+        }
+
+        final MessageDigest digest = newDigest("MD5");
+        md5s.values().forEach(digest::update);
+
+        return String.format("%s-%d", toHex(digest.digest()), md5s.size());
+    }
+
+    private String getSha256() {
+        if (type != ChecksumType.SHA256) {
+            return null;
+        }
+
+        if (!isMultipart) {
+            return Base64.getEncoder().encodeToString(sha256s.get(1));
+        }
+
+        final MessageDigest digest = newDigest("SHA-256");
+        sha256s.values().forEach(digest::update);
+
+        return String.format("%s-%d", Base64.getEncoder().encodeToString(digest.digest()), sha256s.size());
+    }
+
+    private static void verify(
+            final String what,
+            final String actualETag,
+            final String expectedETag,
+            final String actualSha256,
+            final String expectedSha256
+    ) {
+        final String eTag = StringUtils.strip(actualETag, "\"");
+
+        // Encrypted objects have ETags that are not their MD5, and are
+        // only checked by MMFT itself, on receipt
+        if (eTag != null && MD5_ETAG.matcher(eTag).matches() && !eTag.equals(expectedETag)) {
+            throw new ChecksumMismatchException(String.format(
+                "MMFT stored %s with ETag %s, but %s was sent",
+                what,
+                eTag,
+                expectedETag
+            ));
+        }
+
+        if (actualSha256 != null && expectedSha256 != null && !actualSha256.equals(expectedSha256)) {
+            throw new ChecksumMismatchException(String.format(
+                "MMFT stored %s with SHA-256 %s, but %s was sent",
+                what,
+                actualSha256,
+                expectedSha256
+            ));
+        }
+    }
+
+    private static byte[] digest(final String algorithm, final ByteBuffer data) {
+        final MessageDigest digest = newDigest(algorithm);
+        digest.update(data.duplicate());
+        return digest.digest();
+    }
+
+    private static MessageDigest newDigest(final String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(String.format("%s is not available", algorithm), e);
+        }
+    }
+
+    private static String toHex(final byte[] bytes) {
+        return HashCode.fromBytes(bytes).toString();
+    }
+
+}
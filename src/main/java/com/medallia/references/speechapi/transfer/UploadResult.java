@@ -0,0 +1,19 @@
+package com.medallia.references.speechapi.transfer;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * What MMFT reports about an uploaded object.
+ */
+@Getter
+@AllArgsConstructor
+public class UploadResult {
+
+    /** The ETag of the object. */
+    private final String eTag;
+
+    /** The verified checksum of the object, or null if not checked. */
+    private final String checksum;
+
+}
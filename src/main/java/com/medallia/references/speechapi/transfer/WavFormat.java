@@ -0,0 +1,205 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The format of the samples in a PCM WAV file, read from its header.  Only
+ * integer PCM of 8, 16 or 24 bits is supported, which is what lossless
+ * encoders can take as is.
+ */
+@Getter
+@AllArgsConstructor
+public class WavFormat {
+
+    public static final long UNKNOWN_LENGTH = -1;
+
+    private static final int FORMAT_PCM = 1;
+    private static final int FORMAT_EXTENSIBLE = 0xFFFE;
+
+    private static final int MIN_FMT_SIZE = 16;
+    private static final int EXTENSIBLE_FMT_SIZE = 40;
+
+    /** The part of the sub-format GUID after its format tag. */
+    private static final int GUID_REMAINDER = 14;
+    private static final int MAX_CHANNELS = 8;
+    private static final int[] SUPPORTED_BITS = {8, 16, 24};
+
+    /** Streaming writers leave the data size unset until they finish. */
+    private static final long UNSET_DATA_SIZE = 0xFFFFFFFFL;
+
+    private static final int BYTE_MASK = 0xFF;
+    private static final int BITS_PER_BYTE = 8;
+    private static final int ID_LENGTH = 4;
+
+    /** The number of interleaved channels. */
+    private final int channels;
+
+    /** The number of samples per second, per channel. */
+    private final int sampleRate;
+
+    /** The number of bits per sample. */
+    private final int bitsPerSample;
+
+    /** The number of bytes taken by one sample of every channel. */
+    private final int blockAlign;
+
+    /** The length of the sample data, in bytes, or {@link #UNKNOWN_LENGTH}. */
+    private final long dataLength;
+
+    /**
+     * Reads the header of a WAV file, leaving the stream at the first
+     * byte of sample data.
+     * @param inputStream the contents of the file
+     * @return the format of the samples
+     * @throws IOException if the file cannot be read or is not supported
+     */
+    public static WavFormat read(final InputStream inputStream) throws IOException {
+        if (!"RIFF".equals(readId(inputStream))) {
+            throw new IOException("Not a WAV file");
+        }
+
+        readInt(inputStream);
+
+        if (!"WAVE".equals(readId(inputStream))) {
+            throw new IOException("Not a WAV file");
+        }
+
+        WavFormat format = null;
+
+        while (true) {
+            final String chunkId = readId(inputStream);
+            final long chunkSize = Integer.toUnsignedLong(readInt(inputStream));
+
+            if ("fmt ".equals(chunkId)) {
+                format = readFormat(inputStream, chunkSize);
+            } else if ("data".equals(chunkId)) {
+                if (format == null) {
+                    throw new IOException("WAV file has no format before its data");
+                }
+
+                final long dataLength = chunkSize == 0 || chunkSize == UNSET_DATA_SIZE
+                    ? UNKNOWN_LENGTH
+                    : chunkSize;
+
+                return new WavFormat(
+                    format.getChannels(),
+                    format.getSampleRate(),
+                    format.getBitsPerSample(),
+                    format.getBlockAlign(),
+                    dataLength
+                );
+            } else {
+                // Chunks are padded to an even size
+                skip(inputStream, chunkSize + (chunkSize & 1));
+            }
+        }
+    }
+
+    /**
+     * @return the number of samples per channel, or 0 if not known
+     */
+    public long getTotalSamples() {
+        return dataLength == UNKNOWN_LENGTH ? 0 : dataLength / blockAlign;
+    }
+
+    private static WavFormat readFormat(final InputStream inputStream, final long chunkSize) throws IOException {
+        if (chunkSize < MIN_FMT_SIZE) {
+            throw new IOException("WAV format chunk is too short");
+        }
+
+        final int formatTag = readShort(inputStream);
+        final int channels = readShort(inputStream);
+        final int sampleRate = readInt(inputStream);
+        readInt(inputStream);
+        final int blockAlign = readShort(inputStream);
+        final int bitsPerSample = readShort(inputStream);
+
+        long remaining = chunkSize - MIN_FMT_SIZE;
+
+        int actualFormat = formatTag;
+        if (formatTag == FORMAT_EXTENSIBLE && chunkSize >= EXTENSIBLE_FMT_SIZE) {
+            readShort(inputStream);
+            final int validBits = readShort(inputStream);
+            readInt(inputStream);
+            actualFormat = readShort(inputStream);
+            remaining -= EXTENSIBLE_FMT_SIZE - MIN_FMT_SIZE - GUID_REMAINDER;
+
+            if (validBits != 0 && validBits != bitsPerSample) {
+                throw new IOException(String.format("WAV files with %d bits in %d are not supported", validBits, bitsPerSample));
+            }
+        }
+
+        skip(inputStream, remaining + (chunkSize & 1));
+
+        if (actualFormat != FORMAT_PCM) {
+            throw new IOException(String.format("WAV format %d is not supported, only integer PCM is", actualFormat));
+        }
+
+        if (channels < 1 || channels > MAX_CHANNELS) {
+            throw new IOException(String.format("WAV files with %d channels are not supported", channels));
+        }
+
+        boolean isSupportedBits = false;
+        for (int bits : SUPPORTED_BITS) {
+            isSupportedBits |= bits == bitsPerSample;
+        }
+
+        if (!isSupportedBits || blockAlign != channels * bitsPerSample / BITS_PER_BYTE || sampleRate <= 0) {
+            throw new IOException(String.format("WAV files with %d bit samples are not supported", bitsPerSample));
+        }
+
+        return new WavFormat(channels, sampleRate, bitsPerSample, blockAlign, UNKNOWN_LENGTH);
+    }
+
+    private static String readId(final InputStream inputStream) throws IOException {
+        return new String(readFully(inputStream, ID_LENGTH), StandardCharsets.US_ASCII);
+    }
+
+    private static int readShort(final InputStream inputStream) throws IOException {
+        final byte[] bytes = readFully(inputStream, Short.BYTES);
+        return (bytes[0] & BYTE_MASK) | (bytes[1] & BYTE_MASK) << BITS_PER_BYTE;
+    }
+
+    private static int readInt(final InputStream inputStream) throws IOException {
+        final byte[] bytes = readFully(inputStream, Integer.BYTES);
+
+        int value = 0;
+        for (int i = Integer.BYTES - 1; i >= 0; i--) {
+            value = value << BITS_PER_BYTE | (bytes[i] & BYTE_MASK);
+        }
+
+        return value;
+    }
+
+    private static byte[] readFully(final InputStream inputStream, final int length) throws IOException {
+        final byte[] bytes = inputStream.readNBytes(length);
+
+        if (bytes.length < length) {
+            throw new EOFException("WAV header is incomplete");
+        }
+
+        return bytes;
+    }
+
+    private static void skip(final InputStream inputStream, final long length) throws IOException {
+        long remaining = length;
+        while (remaining > 0) {
+            final long skipped = inputStream.skip(remaining);
+            if (skipped <= 0) {
+                if (inputStream.read() < 0) {
+                    throw new EOFException("WAV header is incomplete");
+                }
+                remaining--;
+            } else {
+                remaining -= skipped;
+            }
+        }
+    }
+
+}
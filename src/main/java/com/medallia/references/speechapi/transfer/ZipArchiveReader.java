@@ -0,0 +1,88 @@
+package com.medallia.references.speechapi.transfer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reads the entries of a zip archive.  Entries are found through the
+ * central directory at the end of the archive, so each of them can be
+ * read on its own, and several are read in parallel.  Entries stored
+ * without compression are read straight from the archive as a slice of
+ * it, while the others are inflated as they are read.
+ */
+@Slf4j
+public class ZipArchiveReader extends ArchiveReader {
+
+    private final Path path;
+
+    private final ZipFile zipFile;
+
+    private final Map<String, ZipArchiveEntry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Opens the archive and reads its central directory.
+     * @param path the archive
+     * @throws IOException if the archive cannot be opened
+     */
+    public ZipArchiveReader(final Path path) throws IOException {
+        this.path = path;
+        this.zipFile = new ZipFile(path.toFile());
+    }
+
+    @Override
+    public void listEntries(final SourceFileFilter filter, final Consumer<SourceFile> consumer) {
+        // Going through the entries in the order they are stored keeps
+        // the reads of the archive mostly sequential
+        for (ZipArchiveEntry entry : Collections.list(zipFile.getEntriesInPhysicalOrder())) {
+            if (entry.isDirectory()) {
+                continue;
+            }
+
+            final String filename = getFilename(entry.getName());
+
+            if (!filter.matches(filename, entry.getSize(), entry.getTime())) {
+                continue;
+            }
+
+            if (!zipFile.canReadEntryData(entry)) {
+                LOGGER.warn("Skipping {}, which is encrypted or compressed with an unsupported method", filename);
+                continue;
+            }
+
+            if (entries.putIfAbsent(filename, entry) != null) {
+                LOGGER.warn("Skipping {}, which is in the archive more than once", filename);
+                continue;
+            }
+
+            consumer.accept(new SourceFile(filename, entry.getSize(), entry.getTime()));
+        }
+    }
+
+    @Override
+    public TransferPayload getEntry(final SourceFile file) throws IOException {
+        final ZipArchiveEntry entry = entries.get(file.getName());
+
+        if (entry.getMethod() == ZipArchiveEntry.STORED) {
+            return new FileChannelPayload(path, entry.getDataOffset(), entry.getSize());
+        }
+
+        // The zip file reads each entry with positional reads of its own,
+        // so entries can be inflated on several threads at once
+        return new StreamPayload(zipFile.getInputStream(entry), entry.getSize());
+    }
+
+    @Override
+    public void close() throws IOException {
+        zipFile.close();
+    }
+
+}